@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.benchmarks;
+
+import com.lagodiuk.gp.symbolic.api.Dataset;
+import com.lagodiuk.gp.symbolic.api.Function;
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
+import com.lagodiuk.gp.symbolic.interpreter.Context;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible inputs of benchmarks: full syntax trees of given depth and
+ * training sets of given size.
+ */
+final class BenchmarkData {
+
+	static final long SEED = 42;
+
+	static final List<Function> FUNCTIONS = Arrays.<Function> asList(
+			SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.SUB, SymbolicRegressionFunctions.MUL,
+			SymbolicRegressionFunctions.SIN, SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT);
+
+	private BenchmarkData() {
+	}
+
+	/**
+	 * @return x0, x1, ...
+	 */
+	static List<String> variables(int count) {
+		List<String> variables = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			variables.add("x" + i);
+		}
+		return variables;
+	}
+
+	/**
+	 * Samples of f(x0, x1, ...) = sum(x_i^2 + sin(x_i)) at uniformly random
+	 * points of [-5, 5]
+	 */
+	static Dataset dataset(int variablesCount, int rows) {
+		Random random = new Random(SEED);
+		Dataset.Builder builder = new Dataset.Builder(variables(variablesCount), rows);
+		double[] values = new double[variablesCount];
+		for (int row = 0; row < rows; row++) {
+			double target = 0;
+			for (int i = 0; i < variablesCount; i++) {
+				values[i] = -5 + (10 * random.nextDouble());
+				target += (values[i] * values[i]) + Math.sin(values[i]);
+			}
+			builder.addRow(values, target);
+		}
+		return builder.build();
+	}
+
+	/**
+	 * Unlike {@link com.lagodiuk.gp.symbolic.interpreter.SyntaxTreeUtils#createTree(int, Context)}
+	 * (which stops growing branches at random) each branch of tree reaches
+	 * the given depth, so size of tree depends on depth only.
+	 */
+	static Expression fullTree(int depth, Context context) {
+		Function function = (depth > 0) ? context.getRandomNonTerminalFunction() : context.getRandomTerminalFunction();
+		Expression expr = new Expression(function);
+		for (int i = 0; i < function.argumentsCount(); i++) {
+			expr.addChild(fullTree(depth - 1, context));
+		}
+		if (function.isVariable()) {
+			int slot = context.getRandomVariableSlot();
+			expr.setVariable(context.getVariableName(slot), slot);
+		}
+		for (int i = 0; i < function.coefficientsCount(); i++) {
+			expr.addCoefficient(context.getRandomValue());
+		}
+		return expr;
+	}
+}
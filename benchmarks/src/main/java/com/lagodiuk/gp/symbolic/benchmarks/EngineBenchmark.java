@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.benchmarks;
+
+import com.lagodiuk.gp.symbolic.TabulatedFunctionFitness;
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionEngine;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One generation of evolution: genetic operators, optimization of new trees
+ * and evaluation of their fitness.
+ * <p>
+ * Engine is recreated for each iteration, so measurements are not dominated
+ * by population, which has already converged.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineBenchmark {
+
+	@Param({ "1", "4" })
+	public int variables;
+
+	@Param({ "100", "10000" })
+	public int rows;
+
+	@Param({ "true", "false" })
+	public boolean cache;
+
+	private TabulatedFunctionFitness fitness;
+
+	private SymbolicRegressionEngine engine;
+
+	@Setup
+	public void setUp() {
+		this.fitness = new TabulatedFunctionFitness(BenchmarkData.dataset(this.variables, this.rows));
+	}
+
+	@Setup(Level.Iteration)
+	public void setUpIteration() {
+		this.engine = new SymbolicRegressionEngine(this.fitness, this.fitness.getDataset().getVariables(), BenchmarkData.FUNCTIONS);
+		if (!this.cache) {
+			this.engine.setFitnessCacheSize(0);
+		}
+	}
+
+	@Benchmark
+	public SymbolicRegressionEngine evolve() {
+		this.engine.evolve(1);
+		return this.engine;
+	}
+}
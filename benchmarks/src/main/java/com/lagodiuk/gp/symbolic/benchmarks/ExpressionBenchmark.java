@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.benchmarks;
+
+import com.lagodiuk.gp.symbolic.TabulatedFunctionFitness;
+import com.lagodiuk.gp.symbolic.api.Dataset;
+import com.lagodiuk.gp.symbolic.interpreter.BytecodeCompiler;
+import com.lagodiuk.gp.symbolic.interpreter.BytecodeExpression;
+import com.lagodiuk.gp.symbolic.interpreter.Context;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Evaluation and traversal of a single syntax tree: interpreted, compiled and
+ * bytecode evaluation over all rows of training set, clone and listing of
+ * nodes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExpressionBenchmark {
+
+	@Param({ "4", "8", "12" })
+	public int depth;
+
+	@Param({ "1", "4" })
+	public int variables;
+
+	@Param({ "100", "10000" })
+	public int rows;
+
+	private Dataset dataset;
+
+	private Context context;
+
+	private int[] slots;
+
+	private Expression interpreted;
+
+	private Expression compiled;
+
+	private BytecodeExpression bytecode;
+
+	private double[] values;
+
+	private TabulatedFunctionFitness fitness;
+
+	@Setup
+	public void setUp() {
+		this.dataset = BenchmarkData.dataset(this.variables, this.rows);
+		this.context = new Grammar(BenchmarkData.FUNCTIONS, this.dataset.getVariables()).newContext();
+		this.slots = new int[this.variables];
+		for (int i = 0; i < this.variables; i++) {
+			this.slots[i] = this.context.getVariableSlot(this.dataset.getVariable(i));
+		}
+		this.interpreted = BenchmarkData.fullTree(this.depth, this.context);
+		this.compiled = this.interpreted.clone();
+		this.compiled.compile();
+		this.bytecode = new BytecodeCompiler(1).compile(this.interpreted, this.context);
+		int maxSlot = 0;
+		for (int slot : this.slots) {
+			maxSlot = Math.max(maxSlot, slot);
+		}
+		this.values = new double[maxSlot + 1];
+		this.fitness = new TabulatedFunctionFitness(this.dataset);
+	}
+
+	@Benchmark
+	public double evalInterpreted() {
+		return this.evalRows(this.interpreted);
+	}
+
+	@Benchmark
+	public double evalCompiled() {
+		return this.evalRows(this.compiled);
+	}
+
+	@Benchmark
+	public double evalBytecode() {
+		double sum = 0;
+		for (int row = 0; row < this.rows; row++) {
+			for (int i = 0; i < this.slots.length; i++) {
+				this.values[this.slots[i]] = this.dataset.getValue(row, i);
+			}
+			sum += this.bytecode.eval(this.values);
+		}
+		return sum;
+	}
+
+	private double evalRows(Expression tree) {
+		double sum = 0;
+		for (int row = 0; row < this.rows; row++) {
+			for (int i = 0; i < this.slots.length; i++) {
+				this.context.setVariable(this.slots[i], this.dataset.getValue(row, i));
+			}
+			sum += tree.eval(this.context);
+		}
+		return sum;
+	}
+
+	/**
+	 * Column-wise evaluation of compiled program, as it is done during evolution
+	 */
+	@Benchmark
+	public double fitness() {
+		return this.fitness.fitness(this.compiled, this.context);
+	}
+
+	@Benchmark
+	public Expression cloneTree() {
+		return this.interpreted.clone();
+	}
+
+	@Benchmark
+	public void getAllNodesAsList(Blackhole blackhole) {
+		List<Expression> nodes = this.interpreted.getAllNodesAsList();
+		blackhole.consume(nodes.get(nodes.size() - 1));
+	}
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.benchmarks;
+
+import com.lagodiuk.ga.api.Fitness;
+import com.lagodiuk.gp.symbolic.TabulatedFunctionFitness;
+import com.lagodiuk.gp.symbolic.core.GpChromosome;
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionEngine;
+import com.lagodiuk.gp.symbolic.interpreter.Context;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Genetic operators over full syntax trees, and optimization of tree
+ * (cutting, simplification and fitting of coefficients) as it is done by
+ * engine for each new chromosome.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeneticOperatorsBenchmark {
+
+	@Param({ "4", "8", "12" })
+	public int depth;
+
+	@Param({ "1", "4" })
+	public int variables;
+
+	@Param({ "100", "10000" })
+	public int rows;
+
+	private GpChromosome first;
+
+	private GpChromosome second;
+
+	private SymbolicRegressionEngine engine;
+
+	private GpChromosome unoptimized;
+
+	@Setup
+	public void setUp() {
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(BenchmarkData.dataset(this.variables, this.rows));
+		this.engine = new SymbolicRegressionEngine(fitness, fitness.getDataset().getVariables(), BenchmarkData.FUNCTIONS);
+		// caching would turn optimization of the same tree into lookup
+		this.engine.setFitnessCacheSize(0);
+		this.engine.evolve(1);
+
+		// operators do not evaluate fitness of offspring themselves
+		Context context = this.engine.getContext();
+		Fitness<GpChromosome, Double> unused = chromosome -> Double.NaN;
+		this.first = new GpChromosome(context, unused, BenchmarkData.fullTree(this.depth, context));
+		this.second = new GpChromosome(context, unused, BenchmarkData.fullTree(this.depth, context));
+	}
+
+	/**
+	 * Optimization happens in place (once per chromosome), so each invocation
+	 * gets a new offspring of the best chromosome of engine
+	 */
+	@Setup(Level.Invocation)
+	public void setUpInvocation() {
+		this.unoptimized = this.engine.getBest().mutate();
+	}
+
+	@Benchmark
+	public List<GpChromosome> crossover() {
+		return this.first.crossover(this.second);
+	}
+
+	@Benchmark
+	public GpChromosome mutate() {
+		return this.first.mutate();
+	}
+
+	@Benchmark
+	public GpChromosome optimizeTree() {
+		this.unoptimized.optimizeTree();
+		return this.unoptimized;
+	}
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.benchmarks;
+
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionParser;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionReader;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionWriter;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Binary encoding of a single syntax tree, compared to its printed form
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+	@Param({ "4", "8", "12" })
+	public int depth;
+
+	private Grammar grammar;
+
+	private Expression tree;
+
+	private byte[] encoded;
+
+	private String printed;
+
+	private ByteArrayOutputStream buffer;
+
+	@Setup
+	public void setUp() throws IOException {
+		this.grammar = new Grammar(BenchmarkData.FUNCTIONS, BenchmarkData.variables(2));
+		this.tree = BenchmarkData.fullTree(this.depth, this.grammar.newContext());
+		this.buffer = new ByteArrayOutputStream();
+		this.encoded = this.writeBinary();
+		this.printed = this.tree.print();
+	}
+
+	@Benchmark
+	public byte[] writeBinary() throws IOException {
+		this.buffer.reset();
+		new ExpressionWriter(this.grammar, new DataOutputStream(this.buffer)).write(this.tree);
+		return this.buffer.toByteArray();
+	}
+
+	@Benchmark
+	public Expression readBinary() throws IOException {
+		return new ExpressionReader(this.grammar, new DataInputStream(new ByteArrayInputStream(this.encoded))).read();
+	}
+
+	@Benchmark
+	public String print() {
+		return this.tree.print();
+	}
+
+	@Benchmark
+	public Expression parse() {
+		return new ExpressionParser(this.grammar).parse(this.printed);
+	}
+}
@@ -15,39 +15,41 @@
  ******************************************************************************/
 package com.lagodiuk.gp.symbolic;
 
-import com.lagodiuk.gp.symbolic.api.Target;
+import com.lagodiuk.gp.symbolic.api.DatasetReader;
 import com.lagodiuk.gp.symbolic.api.Function;
 import com.lagodiuk.gp.symbolic.api.SymbolicRegressionDefaults;
 import com.lagodiuk.gp.symbolic.api.SymbolicRegressionIterationListener;
 import com.lagodiuk.gp.symbolic.core.SymbolicRegressionEngine;
 import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
 import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.text.NumberFormat;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Set;
 
 public class Main {
 
-	private static final NumberFormat numberFormat = NumberFormat.getInstance(Locale.US);
-
 	private static FileInputStream fileIn;
 	private static PrintWriter     fileOut;
+	private static Path            checkpoint;
 
 	static {
 		try
 		{
-			fileIn  = new FileInputStream("bin\\_in.txt");
-			fileOut = new PrintWriter    ("bin\\_out.txt");
+			fileIn  = new FileInputStream(new File("bin", "_in.txt"));
+			fileOut = new PrintWriter    (new File("bin", "_out.txt"));
 		} catch(FileNotFoundException ex) {
 		}
 	}
@@ -63,13 +65,23 @@ public class Main {
 		System.out.println("Symbolic regression solver");
 
 		configureInputOutput(args);
-		BufferedReader inputReader = new BufferedReader(new InputStreamReader(fileIn));
+		DatasetReader inputReader = new DatasetReader(fileIn.getChannel());
 
 		List<Function> functions = getFunctions(inputReader);
 		List<String>   variables = getVariables(inputReader);
 		TabulatedFunctionFitness fitness = getTrainingData(inputReader, variables);
 
-		SymbolicRegressionEngine engine = new SymbolicRegressionEngine(fitness, variables, functions);
+		SymbolicRegressionEngine engine;
+		if ((checkpoint != null) && Files.exists(checkpoint)) {
+			engine = SymbolicRegressionEngine.resume(fitness, new Grammar(functions, variables), checkpoint);
+			iteration = engine.getIteration() + 1;
+			System.out.println("Resumed from " + checkpoint + " at iteration " + engine.getIteration());
+		} else {
+			engine = new SymbolicRegressionEngine(fitness, variables, functions);
+		}
+		if (checkpoint != null) {
+			engine.setCheckpoint(checkpoint, SymbolicRegressionDefaults.CHECKPOINT_INTERVAL);
+		}
 
 		final String prefix = makePrefix(variables);
 		engine.addIterationListener(new SymbolicRegressionIterationListener() {
@@ -111,6 +123,8 @@ public class Main {
 			}
 		}
 
+		engine.flushCheckpoint();
+
 		outPrintln();
 		outPrintln("Best function is:");
 		outPrintln(prefix + engine.getBestSyntaxTree().print());
@@ -127,12 +141,9 @@ public class Main {
 		return String.format("f(%s) = ", vars);
 	}
 
-	private static List<String> getVariables(BufferedReader inputReader) throws Exception {
+	private static List<String> getVariables(DatasetReader inputReader) throws Exception {
 		List<String> variables = new ArrayList<>();
-		String s = inputReader.readLine();
-		while ((s.startsWith("#")) || (s.trim().isEmpty())) {
-			s = inputReader.readLine();
-		}
+		String s = nextLine(inputReader);
 		s = s.replaceAll("f\\((.*)\\).*", "$1").trim();
 		for (String variableName : s.split("\\,")) {
 			variables.add(variableName.trim());
@@ -140,69 +151,38 @@ public class Main {
 		return variables;
 	}
 
-	private static List<Function> getFunctions(BufferedReader inputReader) throws Exception {
-		Set<Function> functions = new HashSet<>();
+	private static List<Function> getFunctions(DatasetReader inputReader) throws Exception {
+		// enum set keeps order of declaration, so checkpoint has the same grammar at each run
+		Set<SymbolicRegressionFunctions> functions = EnumSet.noneOf(SymbolicRegressionFunctions.class);
 		functions.add(SymbolicRegressionFunctions.CONSTANT);
 		functions.add(SymbolicRegressionFunctions.VARIABLE);
-		String s = inputReader.readLine();
-		while ((s.startsWith("#")) || (s.trim().isEmpty())) {
-			s = inputReader.readLine();
-		}
+		String s = nextLine(inputReader);
 		for (String functionName : s.split("\\s+")) {
-			Function f = SymbolicRegressionFunctions.valueOf(functionName);
+			SymbolicRegressionFunctions f = SymbolicRegressionFunctions.valueOf(functionName);
 			functions.add(f);
 		}
 		List<Function> functionsList = new ArrayList<>(functions);
 		return functionsList;
 	}
 
+	/**
+	 * Rows of training set look like <code>f(1, 2) = 3</code>, and they can
+	 * be mixed with parameters <code>threshold = 0.5</code> and
+	 * <code>iterations = 100</code>
+	 */
 	private static TabulatedFunctionFitness getTrainingData(
-			BufferedReader inputReader, List<String> variables) throws Exception {
-		List<Target> targets = new LinkedList<>();
-		String s = inputReader.readLine();
-		while ((s.startsWith("#")) || (s.trim().isEmpty())) {
-			s = inputReader.readLine();
-		}
-		int variablesCount = variables.size();
-		while (s != null) {
-			if ((s.startsWith("#")) || (s.trim().isEmpty())) {
-				s = inputReader.readLine();
-				continue;
-			}
-
-			if (s.matches("[Tt]hreshold.*")) {
-				s = s.replaceAll("[Tt]hreshold\\s*=(.*)", "$1").trim();
-				threshold = numberFormat.parse(s).doubleValue();
-				s = inputReader.readLine();
-				continue;
-			}
-
-			if (s.matches("[Ii]terations.*")) {
-				s = s.replaceAll("[Ii]terations\\s*=(.*)", "$1").trim();
-				iterations = numberFormat.parse(s).intValue();
-				s = inputReader.readLine();
-				continue;
-			}
-
-			String[] split = s.split("=");
-			String left = split[1].trim();
-			String right = split[0].trim();
-			right = right.replaceAll("f\\((.*)\\)", "$1");
-
-			double targetValue = numberFormat.parse(left).doubleValue();
-
-			String[] values = right.split("\\,");
-			Target target = new Target();
-			for (int i = 0; i < variablesCount; i++) {
-				double value = numberFormat.parse(values[i].trim()).doubleValue();
-				target.when(variables.get(i), value);
-			}
-			target.targetIs(targetValue);
-			targets.add(target);
+			DatasetReader inputReader, List<String> variables) throws Exception {
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(inputReader.readTargets(variables));
+		threshold = inputReader.getParameter("threshold", threshold);
+		iterations = (int) inputReader.getParameter("iterations", iterations);
+		return fitness;
+	}
 
-			s = inputReader.readLine();
+	private static String nextLine(DatasetReader inputReader) throws Exception {
+		if (!inputReader.nextLine()) {
+			throw new IOException("Unexpected end of input");
 		}
-		return new TabulatedFunctionFitness(targets);
+		return inputReader.getLine();
 	}
 
 	private static void configureInputOutput(String[] args) throws FileNotFoundException {
@@ -215,6 +195,12 @@ public class Main {
 				fileIn = new FileInputStream(args[0]);
 				fileOut = new PrintWriter(args[1]);
 				break;
+
+			case 3:
+				fileIn = new FileInputStream(args[0]);
+				fileOut = new PrintWriter(args[1]);
+				checkpoint = Paths.get(args[2]);
+				break;
 		}
 	}
 
@@ -15,41 +15,265 @@
  ******************************************************************************/
 package com.lagodiuk.gp.symbolic;
 
+import com.lagodiuk.gp.symbolic.api.Dataset;
 import com.lagodiuk.gp.symbolic.api.Target;
+import com.lagodiuk.gp.symbolic.interpreter.ColumnWorkspace;
+import com.lagodiuk.gp.symbolic.interpreter.CompiledExpression;
 import com.lagodiuk.gp.symbolic.interpreter.Context;
 import com.lagodiuk.gp.symbolic.interpreter.Expression;
-import com.lagodiuk.gp.symbolic.interpreter.ExpressionFitness;
+import com.lagodiuk.gp.symbolic.interpreter.LeastSquaresFitness;
+import com.lagodiuk.gp.symbolic.interpreter.SubsampledFitness;
 import java.util.Arrays;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.Random;
 
-public class TabulatedFunctionFitness implements ExpressionFitness
+public class TabulatedFunctionFitness implements LeastSquaresFitness, SubsampledFitness
 {
-	private final List<Target> targets = new LinkedList<>();
-	
+	/**
+	 * Count of rows, which are evaluated between checks of cutoff
+	 */
+	private final static int BLOCK_ROWS = 256;
+
+	private volatile Dataset dataset;
+	private volatile Dataset sample;
+	private volatile long    revision = 0;
+
+	private final Random random = new Random();
+	private       int    initialSubsampleSize;
+	private       int    subsampleGenerations;
+	private       int    sampleGeneration;
+	private       int[]  order;
+	private       int    cursor;
+
+	private final ThreadLocal<ColumnWorkspace> workspaces = ThreadLocal.withInitial(ColumnWorkspace::new);
+
 	public TabulatedFunctionFitness(Target... targets)
 	{
-		this.targets.addAll(Arrays.asList(targets));
+		this(Dataset.of(targets));
 	}
 	public TabulatedFunctionFitness(List<Target> targets)
 	{
-		this.targets.addAll(targets);
+		this(Dataset.of(targets));
+	}
+	public TabulatedFunctionFitness(Dataset dataset)
+	{
+		this.dataset = dataset;
+		this.sample  = dataset;
+	}
+	@Override
+	public Dataset getDataset()
+	{
+		return this.dataset;
+	}
+	/**
+	 * Replaces training set (cached values of fitness become outdated)
+	 */
+	public synchronized void setDataset(Dataset dataset)
+	{
+		this.dataset  = dataset;
+		this.sample   = dataset;
+		this.order    = null;
+		this.revision = this.revision + 1;
+		this.resample(this.sampleGeneration);
+	}
+	@Override
+	public Dataset getSample()
+	{
+		return this.sample;
+	}
+	/**
+	 * Scores expressions on random subsample of rows, which is replaced each
+	 * generation. Subsamples are taken one after another from random
+	 * permutation of rows, so each row is scored once per pass over training
+	 * set. Size of subsample grows linearly with generation, so early
+	 * generations are cheap, while later ones are scored more accurately.
+	 *
+	 * @param initialSize count of rows of subsample in the first generation
+	 *                    (0 disables subsampling)
+	 * @param generations count of generations, after which the whole training
+	 *                    set is used (0 keeps size of subsample constant)
+	 */
+	public synchronized void setSubsampling(int initialSize, int generations)
+	{
+		if(initialSize < 0 || generations < 0)
+			throw new IllegalArgumentException("Size and generations of subsampling must not be negative");
+		this.initialSubsampleSize = initialSize;
+		this.subsampleGenerations = generations;
+		this.resample(0);
+	}
+	/**
+	 * @return count of rows of subsample at given generation
+	 */
+	public synchronized int getSubsampleSize(int generation)
+	{
+		final int rows = this.dataset.getRowsCount();
+		if(this.initialSubsampleSize == 0 || this.initialSubsampleSize >= rows)
+			return rows;
+		if(this.subsampleGenerations == 0)
+			return this.initialSubsampleSize;
+		final long growth = (long) (rows - this.initialSubsampleSize) * generation / this.subsampleGenerations;
+		return (int) Math.min(rows, this.initialSubsampleSize + growth);
+	}
+	@Override
+	public boolean isSubsampled()
+	{
+		return this.sample != this.dataset;
+	}
+	@Override
+	public synchronized void nextSubsample(int generation)
+	{
+		if(generation != this.sampleGeneration)
+			this.resample(generation);
+	}
+	private void resample(int generation)
+	{
+		this.sampleGeneration = generation;
+		final Dataset dataset = this.dataset;
+		final int     rows    = dataset.getRowsCount();
+		final int     size    = this.getSubsampleSize(generation);
+		if(size >= rows)
+		{
+			if(this.sample != dataset)
+			{
+				this.sample   = dataset;
+				this.revision = this.revision + 1;
+			}
+			return;
+		}
+		if(this.order == null)
+		{
+			this.order = new int[rows];
+			for(int i = 0; i < rows; i++)
+				this.order[i] = i;
+			this.cursor = rows;
+		}
+		final int[] selected = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			if(this.cursor == rows)
+			{
+				this.shuffle(this.order);
+				this.cursor = 0;
+			}
+			selected[i] = this.order[this.cursor++];
+		}
+		// rows are copied in order of dataset, so columns are read sequentially
+		Arrays.sort(selected);
+		this.sample   = dataset.select(selected, size);
+		this.revision = this.revision + 1;
+	}
+	private void shuffle(int[] array)
+	{
+		for(int i = array.length - 1; i > 0; i--)
+		{
+			final int j = this.random.nextInt(i + 1);
+			final int t = array[i];
+			array[i] = array[j];
+			array[j] = t;
+		}
+	}
+	@Override
+	public long getRevision()
+	{
+		return this.revision;
 	}
 	@Override
 	public double fitness(Expression expression, Context context)
 	{
-		double diff = 0.0;
-		for(Target target : this.targets)
+		return this.fitness(expression, context, Double.POSITIVE_INFINITY);
+	}
+	/**
+	 * Rows are evaluated by blocks, and evaluation stops after the block,
+	 * where sum of squares exceeds cutoff
+	 */
+	@Override
+	public double fitness(Expression expression, Context context, double cutoff)
+	{
+		final CompiledExpression program = expression.compile();
+		return this.fitness(this.sample, program, program.getConstants(), context, cutoff);
+	}
+	@Override
+	public double fullFitness(Expression expression, Context context)
+	{
+		final CompiledExpression program = expression.compile();
+		return this.fitness(this.dataset, program, program.getConstants(), context, Double.POSITIVE_INFINITY);
+	}
+	/**
+	 * Candidate coefficients are evaluated by compiled program of expression
+	 * (which is compiled once for all candidates)
+	 */
+	@Override
+	public double fitness(Expression expression, double[] coefficients, Context context)
+	{
+		final CompiledExpression program = expression.compile();
+		if(program.hasCalls() || program.getConstantsCount() != coefficients.length)
+			// coefficients of subtrees of CALL instructions are not constants of program
+			return LeastSquaresFitness.super.fitness(expression, coefficients, context);
+		return this.fitness(this.sample, program, coefficients, context, Double.POSITIVE_INFINITY);
+	}
+	/**
+	 * Sum of squares on subsample is scaled to size of training set, so it
+	 * estimates sum of squares on the whole training set
+	 */
+	private double fitness(Dataset sample, CompiledExpression program, double[] constants, Context context, double cutoff)
+	{
+		final double scale = (double) this.dataset.getRowsCount() / Math.max(sample.getRowsCount(), 1);
+		final double limit = cutoff / scale;
+		final double sum   = this.sumOfSquares(sample, program, constants, context, limit);
+		// rounding of scaled sum must not hide, that sum exceeds cutoff
+		return (sum > limit) ? Math.max(scale * sum, Math.nextUp(cutoff)) : scale * sum;
+	}
+	private double sumOfSquares(Dataset dataset, CompiledExpression program, double[] constants, Context context, double cutoff)
+	{
+		if(program.hasCalls())
+			return this.fitnessByRows(dataset, program, constants, context, cutoff);
+
+		final int        rows    = dataset.getRowsCount();
+		final double[][] columns = new double[program.getVariablesCount()][];
+		for(int i = 0; i < columns.length; i++)
 		{
-			for(Map.Entry<String, Double> entry : target.getContextState().entrySet())
+			final String variable = program.getVariable(i);
+			columns[i] = dataset.getColumn(variable);
+			if(columns[i] == null)
 			{
-				String variableName  = entry.getKey();
-				Double variableValue = entry.getValue();
-				context.setVariable(variableName, variableValue);
+				// variable is not defined by training set
+				columns[i] = new double[rows];
+				Arrays.fill(columns[i], context.lookupVariable(program.getVariableSlot(i, context)));
 			}
-			double targetValue     = target.getTargetValue();
-			double calculatedValue = expression.eval(context);
+		}
+		final ColumnWorkspace workspace    = this.workspaces.get();
+		final double[]        targetValues = dataset.getTargetValues();
+		final int             block        = (cutoff < Double.POSITIVE_INFINITY) ? BLOCK_ROWS : rows;
+		double diff = 0.0;
+		// sum, which became NaN, is final as well
+		for(int offset = 0; offset < rows && diff <= cutoff; offset += block)
+		{
+			final int      count            = Math.min(block, rows - offset);
+			final double[] calculatedValues = program.evalColumns(columns, offset, count, constants, workspace);
+			for(int i = 0; i < count; i++)
+				diff += this.sqr(targetValues[offset + i] - calculatedValues[i]);
+		}
+		return diff;
+	}
+	private double fitnessByRows(Dataset dataset, CompiledExpression program, double[] constants, Context context, double cutoff)
+	{
+		final int[]    datasetSlots = new int[dataset.getVariablesCount()];
+		final int[]    programSlots = new int[program.getVariablesCount()];
+		final double[] values       = new double[program.getVariablesCount()];
+		final double[] stack        = new double[program.getMaxStackSize()];
+		for(int i = 0; i < datasetSlots.length; i++)
+			datasetSlots[i] = context.defineVariable(dataset.getVariable(i));
+		for(int i = 0; i < programSlots.length; i++)
+			programSlots[i] = program.getVariableSlot(i, context);
+		double diff = 0.0;
+		for(int row = 0; row < dataset.getRowsCount() && diff <= cutoff; row++)
+		{
+			for(int i = 0; i < datasetSlots.length; i++)
+				context.setVariable(datasetSlots[i], dataset.getValue(row, i));
+			for(int i = 0; i < values.length; i++)
+				values[i] = context.lookupVariable(programSlots[i]);
+			double targetValue     = dataset.getTargetValue(row);
+			double calculatedValue = program.eval(values, constants, stack, context);
 			diff += this.sqr(targetValue - calculatedValue);
 		}
 		return diff;
@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Training set, which stores values of each variable in a contiguous column.
+ * <p>
+ * Columns are exposed without copying and must not be modified.
+ */
+public final class Dataset
+{
+	private final List<String>         variables;
+	private final Map<String, Integer> indexes = new HashMap<>();
+	private final double[][]           columns;
+	private final double[]             targetValues;
+	private final int                  rowsCount;
+
+	Dataset(List<String> variables, double[][] columns, double[] targetValues, int rowsCount)
+	{
+		this.variables    = Collections.unmodifiableList(new ArrayList<>(variables));
+		this.columns      = columns;
+		this.targetValues = targetValues;
+		this.rowsCount    = rowsCount;
+		for(int i = 0; i < this.variables.size(); i++)
+			if(this.indexes.put(this.variables.get(i), i) != null)
+				throw new IllegalArgumentException("Duplicated variable " + this.variables.get(i));
+	}
+	public static Dataset of(Target... targets)
+	{
+		return of(Arrays.asList(targets));
+	}
+	/**
+	 * Variables, which are missing in some target, are treated as 0 for it
+	 */
+	public static Dataset of(Collection<Target> targets)
+	{
+		final Set<String> variables = new LinkedHashSet<>();
+		for(Target target : targets)
+			variables.addAll(target.getContextState().keySet());
+
+		final Builder  builder = new Builder(variables, targets.size());
+		final double[] values  = new double[variables.size()];
+		for(Target target : targets)
+		{
+			int i = 0;
+			for(String variable : variables)
+			{
+				final Double value = target.getContextState().get(variable);
+				values[i++] = (value != null) ? value : 0.0;
+			}
+			builder.addRow(values, target.getTargetValue());
+		}
+		return builder.build();
+	}
+	public int getRowsCount()
+	{
+		return this.rowsCount;
+	}
+	public int getVariablesCount()
+	{
+		return this.variables.size();
+	}
+	public List<String> getVariables()
+	{
+		return this.variables;
+	}
+	public String getVariable(int index)
+	{
+		return this.variables.get(index);
+	}
+	/**
+	 * @return index of column, or -1 if there is no such variable
+	 */
+	public int indexOf(String variable)
+	{
+		final Integer index = this.indexes.get(variable);
+		return (index != null) ? index : -1;
+	}
+	public double[] getColumn(int index)
+	{
+		return this.columns[index];
+	}
+	public double[] getColumn(String variable)
+	{
+		final int index = this.indexOf(variable);
+		return (index >= 0) ? this.columns[index] : null;
+	}
+	public double getValue(int row, int index)
+	{
+		return this.columns[index][row];
+	}
+	public double[] getTargetValues()
+	{
+		return this.targetValues;
+	}
+	public double getTargetValue(int row)
+	{
+		return this.targetValues[row];
+	}
+	/**
+	 * @param rows  indexes of rows, which are copied into new dataset
+	 * @param count count of rows to copy (prefix of array of indexes)
+	 */
+	public Dataset select(int[] rows, int count)
+	{
+		final double[][] columns      = new double[this.columns.length][count];
+		final double[]   targetValues = new double[count];
+		for(int i = 0; i < count; i++)
+		{
+			for(int column = 0; column < columns.length; column++)
+				columns[column][i] = this.columns[column][rows[i]];
+			targetValues[i] = this.targetValues[rows[i]];
+		}
+		return new Dataset(this.variables, columns, targetValues, count);
+	}
+
+	public static class Builder
+	{
+		private final List<String> variables;
+		private       double[][]   columns;
+		private       double[]     targetValues;
+		private       int          rowsCount = 0;
+
+		public Builder(Collection<String> variables)
+		{
+			this(variables, 16);
+		}
+		public Builder(Collection<String> variables, int expectedRowsCount)
+		{
+			final int capacity = Math.max(expectedRowsCount, 1);
+			this.variables    = new ArrayList<>(variables);
+			this.columns      = new double[this.variables.size()][capacity];
+			this.targetValues = new double[capacity];
+		}
+		/**
+		 * @param values values of variables, in order of variables of builder
+		 *               (array is copied, so it can be reused by caller)
+		 */
+		public Builder addRow(double[] values, double targetValue)
+		{
+			if(values.length != this.columns.length)
+				throw new IllegalArgumentException("Expected " + this.columns.length + " values, but was " + values.length);
+			if(this.rowsCount == this.targetValues.length)
+				this.grow();
+			for(int i = 0; i < values.length; i++)
+				this.columns[i][this.rowsCount] = values[i];
+			this.targetValues[this.rowsCount] = targetValue;
+			this.rowsCount += 1;
+			return this;
+		}
+		public int getRowsCount()
+		{
+			return this.rowsCount;
+		}
+		private void grow()
+		{
+			final int capacity = this.targetValues.length + (this.targetValues.length >> 1) + 1;
+			for(int i = 0; i < this.columns.length; i++)
+				this.columns[i] = Arrays.copyOf(this.columns[i], capacity);
+			this.targetValues = Arrays.copyOf(this.targetValues, capacity);
+		}
+		public Dataset build()
+		{
+			final double[][] columns = new double[this.columns.length][];
+			for(int i = 0; i < columns.length; i++)
+				columns[i] = this.trim(this.columns[i]);
+			return new Dataset(this.variables, columns, this.trim(this.targetValues), this.rowsCount);
+		}
+		private double[] trim(double[] column)
+		{
+			// exactly sized arrays are shared: next added row reallocates them
+			return (column.length == this.rowsCount) ? column : Arrays.copyOf(column, this.rowsCount);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.api;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary column format of training set, which is reloaded without parsing:
+ * <ul>
+ * <li>header: magic number, version, count of rows, count of variables and
+ * names of variables (see {@link DataOutputStream})</li>
+ * <li>columns of variables, followed by column of target values, as raw
+ * little-endian doubles</li>
+ * </ul>
+ * Columns are copied from memory-mapped file by bulk operations.
+ */
+public final class DatasetFiles
+{
+	final static int MAGIC   = 0x47504453;
+	final static int VERSION = 1;
+
+	/**
+	 * Count of doubles, which are written through one buffer, or read from one
+	 * mapped region
+	 */
+	private final static int CHUNK        = 1 << 16;
+	private final static int MAPPED_CHUNK = 1 << 24;
+
+	private DatasetFiles()
+	{
+	}
+	public static Dataset readCsv(Path file) throws IOException
+	{
+		try(DatasetReader reader = DatasetReader.open(file))
+		{
+			return reader.readCsv();
+		}
+	}
+	public static void writeBinary(Dataset dataset, Path file) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			// stream is not buffered, so header is written before columns
+			final DataOutputStream out = new DataOutputStream(Channels.newOutputStream(channel));
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.writeInt(dataset.getRowsCount());
+			out.writeInt(dataset.getVariablesCount());
+			for(String variable : dataset.getVariables())
+				out.writeUTF(variable);
+
+			final ByteBuffer   bytes   = ByteBuffer.allocate(CHUNK * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			final DoubleBuffer doubles = bytes.asDoubleBuffer();
+			for(int i = 0; i <= dataset.getVariablesCount(); i++)
+			{
+				final double[] column = (i < dataset.getVariablesCount()) ? dataset.getColumn(i) : dataset.getTargetValues();
+				for(int offset = 0; offset < dataset.getRowsCount(); offset += CHUNK)
+				{
+					final int count = Math.min(CHUNK, dataset.getRowsCount() - offset);
+					doubles.clear();
+					doubles.put(column, offset, count);
+					bytes.clear();
+					bytes.limit(count * Double.BYTES);
+					while(bytes.hasRemaining())
+						channel.write(bytes);
+				}
+			}
+		}
+	}
+	/**
+	 * @throws IOException if file is not written by {@link #writeBinary(Dataset, Path)}
+	 */
+	public static Dataset readBinary(Path file) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			final DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+			if(in.readInt() != MAGIC)
+				throw new IOException("Not a binary dataset: " + file);
+			final int version = in.readUnsignedByte();
+			if(version != VERSION)
+				throw new IOException("Unsupported version of binary dataset: " + version);
+			final int rowsCount      = in.readInt();
+			final int variablesCount = in.readInt();
+			if(rowsCount < 0 || variablesCount < 0)
+				throw new IOException("Malformed binary dataset: " + file);
+			final List<String> variables = new ArrayList<>();
+			for(int i = 0; i < variablesCount; i++)
+				variables.add(in.readUTF());
+
+			final long columnSize = (long) rowsCount * Double.BYTES;
+			long       position   = channel.position();
+			if(position + (variablesCount + 1) * columnSize != channel.size())
+				throw new IOException("Size of binary dataset doesn't match its header: " + file);
+
+			final double[][] columns = new double[variablesCount + 1][];
+			for(int i = 0; i < columns.length; i++)
+			{
+				columns[i] = new double[rowsCount];
+				for(int offset = 0; offset < rowsCount; offset += MAPPED_CHUNK)
+				{
+					final int count = Math.min(MAPPED_CHUNK, rowsCount - offset);
+					channel.map(FileChannel.MapMode.READ_ONLY, position, (long) count * Double.BYTES)
+						.order(ByteOrder.LITTLE_ENDIAN)
+						.asDoubleBuffer()
+						.get(columns[i], offset, count);
+					position += (long) count * Double.BYTES;
+				}
+			}
+			return new Dataset(variables, Arrays.copyOf(columns, variablesCount), columns[variablesCount], rowsCount);
+		}
+	}
+}
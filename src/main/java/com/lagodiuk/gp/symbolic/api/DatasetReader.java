@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads training set from memory-mapped text file, line by line. Empty lines
+ * and lines, which start with <code>#</code>, are skipped.
+ * <p>
+ * Supported formats of rows:
+ * <ul>
+ * <li>targets: <code>f(1.5, 2) = 7</code> (see {@link #readTargets(List)}),
+ * mixed with parameters <code>threshold = 0.5</code></li>
+ * <li>CSV: header with names of columns, followed by rows of numbers, where
+ * the last column is target value (see {@link #readCsv()})</li>
+ * </ul>
+ * Numbers are parsed directly from mapped bytes into columns of dataset, so
+ * no objects are allocated per row. Only numbers with more than 15
+ * significant digits or with large exponent, as well as <code>NaN</code> and
+ * <code>Infinity</code>, are delegated to {@link Double#parseDouble(String)}.
+ */
+public final class DatasetReader implements Closeable
+{
+	/**
+	 * Size of mapped region: larger files are mapped window by window
+	 */
+	private final static int WINDOW = 1 << 28;
+
+	private final static int      MAX_FAST_DIGITS   = 18;
+	private final static long     MAX_FAST_MANTISSA = 1L << 53;
+	private final static double[] POWERS_OF_TEN     = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+		1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final FileChannel         channel;
+	private final long                size;
+	private final Map<String, Double> parameters = new HashMap<>();
+	private       MappedByteBuffer    buffer;
+	private       long                base;
+	private       int                 position;
+	private       int                 lineStart;
+	private       int                 cursor;
+	private       int                 lineEnd;
+	private       int                 lineNumber;
+
+	/**
+	 * Channel is read from its current position, and it is closed by
+	 * {@link #close()}
+	 */
+	public DatasetReader(FileChannel channel) throws IOException
+	{
+		this.channel = channel;
+		this.size    = channel.size();
+		this.map(channel.position());
+	}
+	public static DatasetReader open(Path file) throws IOException
+	{
+		return new DatasetReader(FileChannel.open(file, StandardOpenOption.READ));
+	}
+	/**
+	 * Moves to the next line, which is neither empty nor comment
+	 *
+	 * @return false at the end of file
+	 */
+	public boolean nextLine() throws IOException
+	{
+		for(;;)
+		{
+			if(this.base + this.position >= this.size)
+				return false;
+			int end = this.position;
+			while(end < this.buffer.limit() && this.buffer.get(end) != '\n')
+				end++;
+			if(end == this.buffer.limit() && this.base + end < this.size)
+			{
+				// line is split by the end of window
+				if(this.position == 0)
+					throw new IOException("Line " + (this.lineNumber + 1) + " is longer than " + WINDOW + " bytes");
+				this.map(this.base + this.position);
+				continue;
+			}
+			this.lineNumber++;
+			this.lineStart = this.position;
+			this.cursor    = this.position;
+			this.lineEnd   = (end > this.position && this.buffer.get(end - 1) == '\r') ? end - 1 : end;
+			this.position  = end + 1;
+			this.skipSpaces();
+			if(this.cursor < this.lineEnd && this.buffer.get(this.cursor) != '#')
+				return true;
+		}
+	}
+	/**
+	 * @return rest of current line (without leading and trailing spaces)
+	 */
+	public String getLine()
+	{
+		int end = this.lineEnd;
+		while(end > this.cursor && this.buffer.get(end - 1) <= ' ')
+			end--;
+		return this.text(this.cursor, end);
+	}
+	public int getLineNumber()
+	{
+		return this.lineNumber;
+	}
+	/**
+	 * Reads the rest of file, where rows look like <code>f(1, 2) = 3</code>
+	 * (name of function is arbitrary), and other lines look like
+	 * <code>name = value</code> (see {@link #getParameter(String, double)})
+	 *
+	 * @param variables names of arguments of function, in order of arguments
+	 */
+	public Dataset readTargets(List<String> variables) throws IOException
+	{
+		final Dataset.Builder builder = new Dataset.Builder(variables);
+		final double[]        values  = new double[variables.size()];
+		while(this.nextLine())
+		{
+			final int nameStart = this.cursor;
+			while(this.cursor < this.lineEnd && isNameChar(this.buffer.get(this.cursor)))
+				this.cursor++;
+			final int nameEnd = this.cursor;
+			this.skipSpaces();
+			if(this.cursor < this.lineEnd && this.buffer.get(this.cursor) == '(')
+			{
+				this.cursor++;
+				for(int i = 0; i < values.length; i++)
+				{
+					if(i > 0)
+						this.expect(',');
+					values[i] = this.parseNumber();
+				}
+				this.expect(')');
+				this.expect('=');
+				builder.addRow(values, this.parseNumber());
+			}
+			else
+			{
+				if(nameStart == nameEnd)
+					throw this.error("Expected row or parameter");
+				final String name = this.text(nameStart, nameEnd).toLowerCase(Locale.ROOT);
+				this.expect('=');
+				this.parameters.put(name, this.parseNumber());
+			}
+			this.expectEnd();
+		}
+		return builder.build();
+	}
+	/**
+	 * Reads the rest of file, where the first line is header with names of
+	 * columns, and the last column is target value
+	 */
+	public Dataset readCsv() throws IOException
+	{
+		if(!this.nextLine())
+			throw new IOException("CSV has no header");
+		final List<String> variables = new ArrayList<>();
+		for(String column : this.getLine().split(","))
+			variables.add(column.trim());
+		if(variables.size() < 2)
+			throw this.error("CSV must have at least one variable and target");
+		variables.remove(variables.size() - 1);
+
+		final Dataset.Builder builder = new Dataset.Builder(variables);
+		final double[]        values  = new double[variables.size()];
+		while(this.nextLine())
+		{
+			for(int i = 0; i < values.length; i++)
+			{
+				values[i] = this.parseNumber();
+				this.expect(',');
+			}
+			builder.addRow(values, this.parseNumber());
+			this.expectEnd();
+		}
+		return builder.build();
+	}
+	/**
+	 * Parameters, which were found by {@link #readTargets(List)}
+	 *
+	 * @param name case insensitive
+	 */
+	public double getParameter(String name, double defaultValue)
+	{
+		final Double value = this.parameters.get(name.toLowerCase(Locale.ROOT));
+		return (value != null) ? value : defaultValue;
+	}
+	public Map<String, Double> getParameters()
+	{
+		return Collections.unmodifiableMap(this.parameters);
+	}
+	@Override
+	public void close() throws IOException
+	{
+		this.channel.close();
+	}
+
+	private void map(long offset) throws IOException
+	{
+		this.buffer   = this.channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(WINDOW, this.size - offset));
+		this.base     = offset;
+		this.position = 0;
+	}
+	/**
+	 * Parses decimal number as <code>mantissa * 10^exponent</code>, which is
+	 * exact (and correctly rounded) when both of mantissa and power of ten are
+	 * exactly representable by double
+	 */
+	private double parseNumber() throws IOException
+	{
+		this.skipSpaces();
+		final int start = this.cursor;
+		int       i     = start;
+
+		boolean negative = false;
+		if(i < this.lineEnd && (this.buffer.get(i) == '-' || this.buffer.get(i) == '+'))
+			negative = this.buffer.get(i++) == '-';
+
+		long    mantissa = 0;
+		int     digits   = 0;
+		int     exponent = 0;
+		boolean any      = false;
+		for(boolean fraction = false; i < this.lineEnd; i++)
+		{
+			final byte b = this.buffer.get(i);
+			if(b >= '0' && b <= '9')
+			{
+				any = true;
+				if(mantissa != 0 || b != '0')
+				{
+					mantissa = mantissa * 10 + (b - '0');
+					digits++;
+				}
+				if(fraction)
+					exponent--;
+			}
+			else if(b == '.' && !fraction)
+				fraction = true;
+			else
+				break;
+		}
+		if(any && i < this.lineEnd && (this.buffer.get(i) == 'e' || this.buffer.get(i) == 'E'))
+		{
+			i++;
+			boolean negativeExponent = false;
+			if(i < this.lineEnd && (this.buffer.get(i) == '-' || this.buffer.get(i) == '+'))
+				negativeExponent = this.buffer.get(i++) == '-';
+			int     value     = 0;
+			boolean anyDigits = false;
+			for(; i < this.lineEnd && this.buffer.get(i) >= '0' && this.buffer.get(i) <= '9'; i++)
+			{
+				value     = Math.min(value * 10 + (this.buffer.get(i) - '0'), 100000);
+				anyDigits = true;
+			}
+			if(!anyDigits)
+				throw this.error("Malformed number");
+			exponent += negativeExponent ? -value : value;
+		}
+		if(!any || digits > MAX_FAST_DIGITS || mantissa > MAX_FAST_MANTISSA || Math.abs(exponent) >= POWERS_OF_TEN.length)
+			return this.parseSlow(start);
+
+		this.cursor = i;
+		final double value = (exponent >= 0) ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+		return negative ? -value : value;
+	}
+	private double parseSlow(int start) throws IOException
+	{
+		int end = start;
+		while(end < this.lineEnd && this.buffer.get(end) > ' ' && this.buffer.get(end) != ',' && this.buffer.get(end) != ')')
+			end++;
+		final String text = this.text(start, end);
+		try
+		{
+			final double value = Double.parseDouble(text);
+			this.cursor = end;
+			return value;
+		}
+		catch(NumberFormatException e)
+		{
+			throw this.error("Malformed number " + text);
+		}
+	}
+	private void expect(char c) throws IOException
+	{
+		this.skipSpaces();
+		if(this.cursor >= this.lineEnd || this.buffer.get(this.cursor) != c)
+			throw this.error("Expected " + c);
+		this.cursor++;
+	}
+	private void expectEnd() throws IOException
+	{
+		this.skipSpaces();
+		if(this.cursor < this.lineEnd)
+			throw this.error("Unexpected " + (char) this.buffer.get(this.cursor));
+	}
+	private void skipSpaces()
+	{
+		while(this.cursor < this.lineEnd && this.buffer.get(this.cursor) <= ' ')
+			this.cursor++;
+	}
+	private static boolean isNameChar(byte b)
+	{
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+	}
+	private String text(int start, int end)
+	{
+		final byte[] bytes = new byte[end - start];
+		for(int i = 0; i < bytes.length; i++)
+			bytes[i] = this.buffer.get(start + i);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	private IOException error(String message)
+	{
+		return new IOException(message + " at line " + this.lineNumber + ": " + this.text(this.lineStart, this.lineEnd));
+	}
+}
@@ -17,6 +17,8 @@ package com.lagodiuk.gp.symbolic.api;
 
 import com.lagodiuk.gp.symbolic.interpreter.Context;
 import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.Opcodes;
+import java.util.ArrayList;
 import java.util.List;
 
 public interface Function
@@ -30,4 +32,32 @@ public interface Function
 	List<Double> getCoefficients(Expression expression);
 	void         setCoefficients(Expression expression, List<Double> coefficients, int startIndex);
 	int          coefficientsCount();
+	default int  opcode()
+	{
+		return Opcodes.CALL;
+	}
+	/**
+	 * Copies {@link #coefficientsCount()} coefficients of node to vector of
+	 * coefficients of tree. Default implementation boxes coefficients (by
+	 * {@link #getCoefficients(Expression)}), so it should be overridden.
+	 */
+	default void getCoefficients(Expression expression, double[] coefficients, int startIndex)
+	{
+		final List<Double> coefficientsOfNode = this.getCoefficients(expression);
+		for(int i = 0; i < this.coefficientsCount(); i++)
+			coefficients[startIndex + i] = coefficientsOfNode.get(i);
+	}
+	/**
+	 * Sets coefficients of node from vector of coefficients of tree. Default
+	 * implementation boxes coefficients (by
+	 * {@link #setCoefficients(Expression, List, int)}), so it should be
+	 * overridden.
+	 */
+	default void setCoefficients(Expression expression, double[] coefficients, int startIndex)
+	{
+		final List<Double> coefficientsOfNode = new ArrayList<>(this.coefficientsCount());
+		for(int i = 0; i < this.coefficientsCount(); i++)
+			coefficientsOfNode.add(coefficients[startIndex + i]);
+		this.setCoefficients(expression, coefficientsOfNode, 0);
+	}
 }
@@ -19,8 +19,13 @@ public final class SymbolicRegressionDefaults
 {
 	public static final int    ITERATIONS = 30000;
 	public static final double THRESHOLD  = 1.0;
+
+	public static final int    CHECKPOINT_INTERVAL = 100;
 	
 	public static final int    INITIAL_PARENT_SURVIVE_COUNT = 1;
 	public static final int    DEFAULT_POPULATION_SIZE      = 10;
 	public static final int    INITIAL_TREE_DEPTH       = 1;
+	public static final int    MAX_TREE_DEPTH           = 6;
+	public static final int    MAX_TREE_SIZE            = Integer.MAX_VALUE;
+	public static final double PARSIMONY_COEFFICIENT    = 0.01;
 }
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.api.SymbolicRegressionDefaults;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionReader;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionWriter;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Snapshot of state of {@link SymbolicRegressionEngine}: iteration, settings,
+ * seed of random generators and syntax trees of population.
+ * <p>
+ * Trees are persistent, so snapshot only references them and can be written
+ * by another thread, while evolution goes on.
+ */
+final class Checkpoint
+{
+	private final static int MAGIC   = 0x4750434B;
+	private final static int VERSION = 4;
+
+	final int               iteration;
+	final int               parentSurviveCount;
+	final NodeSelection     nodeSelection;
+	final int               fitnessCacheSize;
+	final int               maxTreeDepth;
+	final int               maxTreeSize;
+	final ParsimonyPressure parsimonyPressure;
+	final double            parsimonyCoefficient;
+	final long              seed;
+	final List<Expression>  trees;
+	final boolean[]         optimized;
+
+	Checkpoint(int iteration, int parentSurviveCount, NodeSelection nodeSelection, int fitnessCacheSize,
+		int maxTreeDepth, int maxTreeSize, ParsimonyPressure parsimonyPressure, double parsimonyCoefficient,
+		long seed, List<Expression> trees, boolean[] optimized)
+	{
+		this.iteration            = iteration;
+		this.parentSurviveCount   = parentSurviveCount;
+		this.nodeSelection        = nodeSelection;
+		this.fitnessCacheSize     = fitnessCacheSize;
+		this.maxTreeDepth         = maxTreeDepth;
+		this.maxTreeSize          = maxTreeSize;
+		this.parsimonyPressure    = parsimonyPressure;
+		this.parsimonyCoefficient = parsimonyCoefficient;
+		this.seed                 = seed;
+		this.trees                = trees;
+		this.optimized            = optimized;
+	}
+	/**
+	 * Snapshot is written to temporary file, which replaces the previous one
+	 * only when it is complete, so crash during writing keeps the previous
+	 * snapshot
+	 */
+	void write(Path file, Grammar grammar) throws IOException
+	{
+		final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			final DataOutputStream out    = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+			final ExpressionWriter writer = new ExpressionWriter(grammar, out);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writer.writeHeader();
+			out.writeInt(this.iteration);
+			out.writeInt(this.parentSurviveCount);
+			out.writeByte(this.nodeSelection.ordinal());
+			out.writeInt(this.fitnessCacheSize);
+			out.writeInt(this.maxTreeDepth);
+			out.writeInt(this.maxTreeSize);
+			out.writeByte(this.parsimonyPressure.ordinal());
+			out.writeDouble(this.parsimonyCoefficient);
+			out.writeLong(this.seed);
+			out.writeInt(this.trees.size());
+			for(boolean optimizedTree : this.optimized)
+				out.writeBoolean(optimizedTree);
+			writer.writeAll(this.trees);
+			out.flush();
+			channel.force(false);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	/**
+	 * Checkpoints of earlier versions are read as well: settings, which they
+	 * don't contain, get default values
+	 */
+	static Checkpoint read(Path file, Grammar grammar) throws IOException
+	{
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			final DataInputStream  in     = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+			final ExpressionReader reader = new ExpressionReader(grammar, in);
+			if(in.readInt() != MAGIC)
+				throw new IOException("Not a checkpoint: " + file);
+			final int version = in.readInt();
+			if(version < 1 || version > VERSION)
+				throw new IOException("Unsupported version of checkpoint: " + version);
+			reader.readHeader();
+			final int iteration            = in.readInt();
+			final int parentSurviveCount   = in.readInt();
+			final int nodeSelection        = in.readUnsignedByte();
+			if(nodeSelection >= NodeSelection.values().length)
+				throw new IOException("Unknown node selection " + nodeSelection);
+			final int fitnessCacheSize     = in.readInt();
+			int       maxTreeDepth         = SymbolicRegressionDefaults.MAX_TREE_DEPTH;
+			int       maxTreeSize          = SymbolicRegressionDefaults.MAX_TREE_SIZE;
+			int       parsimonyPressure    = ParsimonyPressure.NONE.ordinal();
+			double    parsimonyCoefficient = SymbolicRegressionDefaults.PARSIMONY_COEFFICIENT;
+			// random choices of engine, which wrote checkpoint without seed, can't be repeated
+			long      seed                 = new SplittableRandom().nextLong();
+			if(version >= 2)
+			{
+				maxTreeDepth      = in.readInt();
+				maxTreeSize       = in.readInt();
+				parsimonyPressure = in.readUnsignedByte();
+				if(parsimonyPressure >= ParsimonyPressure.values().length)
+					throw new IOException("Unknown parsimony pressure " + parsimonyPressure);
+			}
+			if(version >= 3)
+			{
+				parsimonyCoefficient = in.readDouble();
+				if(!(parsimonyCoefficient >= 0) || Double.isInfinite(parsimonyCoefficient))
+					throw new IOException("Invalid parsimony coefficient " + parsimonyCoefficient);
+			}
+			if(version >= 4)
+				seed = in.readLong();
+			final int populationSize       = in.readInt();
+			if(populationSize <= 0)
+				throw new IOException("Checkpoint has no population");
+			// each chromosome takes at least a byte of its flag, so corrupt size doesn't allocate huge array
+			if(populationSize > channel.size())
+				throw new IOException("Checkpoint is too short for population of " + populationSize);
+
+			final boolean[] optimized = new boolean[populationSize];
+			for(int i = 0; i < populationSize; i++)
+				optimized[i] = in.readBoolean();
+			final List<Expression> trees = reader.readAll();
+			if(trees.size() != populationSize)
+				throw new IOException("Checkpoint has " + trees.size() + " trees instead of " + populationSize);
+			return new Checkpoint(iteration, parentSurviveCount, NodeSelection.values()[nodeSelection], fitnessCacheSize,
+				maxTreeDepth, maxTreeSize, ParsimonyPressure.values()[parsimonyPressure], parsimonyCoefficient, seed, trees, optimized);
+		}
+	}
+}
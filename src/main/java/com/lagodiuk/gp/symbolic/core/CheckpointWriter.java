@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes snapshots of engine by background thread, so evolution only takes
+ * references to trees of population. When snapshots are taken faster than
+ * they are written, the latest one replaces the pending one.
+ */
+final class CheckpointWriter
+{
+	private final    Path                        file;
+	private final    int                         interval;
+	private final    Grammar                     grammar;
+	private final    AtomicReference<Checkpoint> pending = new AtomicReference<>();
+	private final    ExecutorService             executor;
+	private volatile IOException                 failure;
+
+	CheckpointWriter(Path file, int interval, Grammar grammar)
+	{
+		this.file     = file;
+		this.interval = interval;
+		this.grammar  = grammar;
+		this.executor = Executors.newSingleThreadExecutor(runnable ->
+		{
+			final Thread thread = new Thread(runnable, "checkpoint-" + file.getFileName());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+	Path getFile()
+	{
+		return this.file;
+	}
+	boolean isDue(int iteration)
+	{
+		return iteration % this.interval == 0;
+	}
+	/**
+	 * @throws UncheckedIOException if previous snapshot was not written
+	 */
+	void submit(Checkpoint checkpoint)
+	{
+		this.checkFailure();
+		// task, which is already scheduled, writes the latest snapshot
+		if(this.pending.getAndSet(checkpoint) == null)
+			this.executor.execute(this::writePending);
+	}
+	private void writePending()
+	{
+		final Checkpoint checkpoint = this.pending.getAndSet(null);
+		if(checkpoint == null)
+			return;
+		try
+		{
+			checkpoint.write(this.file, this.grammar);
+		}
+		catch(IOException e)
+		{
+			this.failure = e;
+		}
+	}
+	/**
+	 * Waits until all submitted snapshots are written
+	 */
+	void flush()
+	{
+		try
+		{
+			this.executor.submit(() -> {}).get();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		catch(ExecutionException e)
+		{
+			throw new IllegalStateException(e.getCause());
+		}
+		this.checkFailure();
+	}
+	/**
+	 * Writes pending snapshot and stops background thread
+	 */
+	void close()
+	{
+		this.executor.shutdown();
+	}
+	private void checkFailure()
+	{
+		final IOException failure = this.failure;
+		if(failure != null)
+		{
+			this.failure = null;
+			throw new UncheckedIOException("Checkpoint was not written to " + this.file, failure);
+		}
+	}
+}
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.interpreter.Context;
+
+/**
+ * Strategy of tuning of coefficients of syntax tree of new chromosome
+ */
+public interface CoefficientOptimizer
+{
+	/**
+	 * Replaces coefficients of syntax tree of chromosome with optimized ones
+	 *
+	 * @param context context of evaluating thread
+	 */
+	void optimize(GpChromosome chromosome, Context context);
+}
@@ -16,20 +16,26 @@
 package com.lagodiuk.gp.symbolic.core;
 
 import com.lagodiuk.ga.api.Chromosome;
+import com.lagodiuk.gp.symbolic.interpreter.Context;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 
 class CoefficientsChromosome implements Chromosome<CoefficientsChromosome>, Cloneable
 {
 	private final GpChromosome gpc;
-	private final List<Double> coefficients;
+	private final Context      context;
+	private final double[]     coefficients;
 	private final double pMutation;
 	private final double pCrossover;
 
-	public CoefficientsChromosome(GpChromosome gpc, List<Double> coefficients, double pMutation, double pCrossover)
+	/**
+	 * @param context context of thread, which optimizes coefficients
+	 */
+	public CoefficientsChromosome(GpChromosome gpc, Context context, double[] coefficients, double pMutation, double pCrossover)
 	{
 		this.gpc = gpc;
+		this.context = context;
 		this.coefficients = coefficients;
 		this.pMutation = pMutation;
 		this.pCrossover = pCrossover;
@@ -42,11 +48,11 @@ class CoefficientsChromosome implements Chromosome<CoefficientsChromosome>, Clon
 		CoefficientsChromosome thisClone    = this.clone();
 		CoefficientsChromosome anotherClone = anotherChromosome.clone();
 
-		for(int i = 0; i < thisClone.coefficients.size(); i++)
-			if(this.gpc.random.nextDouble() > this.pCrossover)
+		for(int i = 0; i < thisClone.coefficients.length; i++)
+			if(this.context.getRandom().nextDouble() > this.pCrossover)
 			{
-				thisClone.coefficients.set(i, anotherChromosome.coefficients.get(i));
-				anotherClone.coefficients.set(i, this.coefficients.get(i));
+				thisClone.coefficients[i]    = anotherChromosome.coefficients[i];
+				anotherClone.coefficients[i] = this.coefficients[i];
 			}
 		ret.add(thisClone);
 		ret.add(anotherClone);
@@ -56,30 +62,30 @@ class CoefficientsChromosome implements Chromosome<CoefficientsChromosome>, Clon
 	public CoefficientsChromosome mutate()
 	{
 		CoefficientsChromosome result = this.clone();
-		for(int i = 0; i < result.coefficients.size(); i++)
-			if(this.gpc.random.nextDouble() > this.pMutation)
-			{
-				double coeff = result.coefficients.get(i);
-				coeff += this.gpc.context.getRandomMutationValue();
-				result.coefficients.set(i, coeff);
-			}
+		for(int i = 0; i < result.coefficients.length; i++)
+			if(this.context.getRandom().nextDouble() > this.pMutation)
+				result.coefficients[i] += this.context.getRandomMutationValue();
 		return result;
 	}
 	@Override
 	@SuppressWarnings({ "CloneDoesntCallSuperClone", "CloneDeclaresCloneNotSupported" })
 	protected CoefficientsChromosome clone()
 	{
-		final List<Double> clonedCoefficients = new ArrayList<>(this.coefficients);
-		return new CoefficientsChromosome(gpc, clonedCoefficients, this.pMutation, this.pCrossover);
+		final double[] clonedCoefficients = this.coefficients.clone();
+		return new CoefficientsChromosome(gpc, context, clonedCoefficients, this.pMutation, this.pCrossover);
 	}
-	public List<Double> getCoefficients()
+	/**
+	 * @return coefficients in order of vector of coefficients of tree (must
+	 *         not be modified)
+	 */
+	public double[] getCoefficients()
 	{
 		return this.coefficients;
 	}
 	@Override
 	public int hashCode()
 	{
-		int hash = 129 + Objects.hashCode(this.coefficients);
+		int hash = 129 + Arrays.hashCode(this.coefficients);
 		// hash = 43 * hash + Objects.hashCode(this.gpc);
 		// hash = 43 * hash + (int)(Double.doubleToLongBits(this.pMutation)  ^ (Double.doubleToLongBits(this.pMutation)  >>> 32));
 		// hash = 43 * hash + (int)(Double.doubleToLongBits(this.pCrossover) ^ (Double.doubleToLongBits(this.pCrossover) >>> 32));
@@ -101,6 +107,6 @@ class CoefficientsChromosome implements Chromosome<CoefficientsChromosome>, Clon
 		if(!Objects.equals(this.gpc, other.gpc))
 			return false;
 		*/
-		return Objects.equals(this.coefficients, other.coefficients);
+		return Arrays.equals(this.coefficients, other.coefficients);
 	}
 }
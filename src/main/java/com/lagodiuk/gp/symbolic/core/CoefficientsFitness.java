@@ -16,20 +16,43 @@
 package com.lagodiuk.gp.symbolic.core;
 
 import com.lagodiuk.ga.api.Fitness;
+import com.lagodiuk.gp.symbolic.interpreter.Context;
 import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionFitness;
 
+/**
+ * Scores candidate coefficients of syntax tree of chromosome. Tree is not
+ * modified: coefficients are evaluated directly by
+ * {@link ExpressionFitness#fitness(Expression, double[], Context)}
+ * (so compiled program of tree is shared by all candidates).
+ */
 class CoefficientsFitness implements Fitness<CoefficientsChromosome, Double>
 {
 	private final GpChromosome chromosome;
+	private final GpFitness    fitness;
 	CoefficientsFitness(GpChromosome chromosome)
 	{
 		this.chromosome = chromosome;
+		this.fitness    = (chromosome.fitnessFunction instanceof GpFitness) ? (GpFitness)chromosome.fitnessFunction : null;
 	}
 	@Override
 	public Double calculate(CoefficientsChromosome coefficientsChromosome)
 	{
-		final Expression clonedSyntaxTree = chromosome.syntaxTree.clone();
-		clonedSyntaxTree.setCoefficientsOfTree(coefficientsChromosome.getCoefficients());
-		return chromosome.fitnessFunction.calculate(chromosome);
+		final double[] coefficients = coefficientsChromosome.getCoefficients();
+		if(this.fitness == null)
+			return this.calculateByChromosome(coefficients);
+		// candidates are evaluated by threads of nested genetic algorithm, each with own context
+		return this.fitness.getExpressionFitness().fitness(this.chromosome.syntaxTree, coefficients, this.fitness.getContext());
+	}
+	/**
+	 * Arbitrary fitness function can score only chromosomes
+	 */
+	private Double calculateByChromosome(double[] coefficients)
+	{
+		final Expression candidateSyntaxTree = chromosome.syntaxTree.withCoefficientsOfTree(coefficients);
+		// temporary chromosome is not submitted, so it never waits for evaluation of optimized one
+		final GpChromosome candidate = new GpChromosome(chromosome.context, chromosome.fitnessFunction, candidateSyntaxTree);
+		candidate.isTreeOptimized = true;
+		return chromosome.fitnessFunction.calculate(candidate);
 	}
 }
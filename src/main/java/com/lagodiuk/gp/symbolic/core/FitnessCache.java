@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of results of evaluation of new syntax trees: optimized tree
+ * and its fitness, keyed by tree before optimization (which is compared
+ * structurally, by its memoized hash and {@link Expression#equals(Object)}).
+ * Least recently used entries are evicted.
+ * <p>
+ * All entries are discarded, when revision of fitness function changes.
+ * Cache is shared by evaluating threads.
+ */
+public final class FitnessCache
+{
+	private final int                              maxSize;
+	private final LinkedHashMap<Expression, Entry> entries;
+	private long revision  = 0;
+	private long hits      = 0;
+	private long misses    = 0;
+	private long evictions = 0;
+
+	public FitnessCache(int maxSize)
+	{
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<Expression, Entry>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Expression, Entry> eldest)
+			{
+				final boolean evict = this.size() > FitnessCache.this.maxSize;
+				if(evict)
+					FitnessCache.this.evictions++;
+				return evict;
+			}
+		};
+	}
+	/**
+	 * @return cached result, or null
+	 */
+	synchronized Entry get(Expression key, long revision)
+	{
+		this.checkRevision(revision);
+		final Entry entry = this.entries.get(key);
+		if(entry != null)
+			this.hits++;
+		else
+			this.misses++;
+		return entry;
+	}
+	/**
+	 * @param key  tree before optimization, which must not be modified later
+	 * @param tree optimized tree, which is owned by cache from now on
+	 */
+	synchronized void put(Expression key, long revision, Expression tree, double fitness)
+	{
+		this.put(key, revision, tree, fitness, Double.POSITIVE_INFINITY);
+	}
+	/**
+	 * @param cutoff cutoff of evaluation of fitness (see
+	 *               {@link com.lagodiuk.gp.symbolic.interpreter.ExpressionFitness#fitness(Expression, com.lagodiuk.gp.symbolic.interpreter.Context, double)})
+	 */
+	synchronized void put(Expression key, long revision, Expression tree, double fitness, double cutoff)
+	{
+		this.checkRevision(revision);
+		this.entries.put(key, new Entry(tree, fitness, cutoff));
+	}
+	private void checkRevision(long revision)
+	{
+		if(this.revision != revision)
+		{
+			this.entries.clear();
+			this.revision = revision;
+		}
+	}
+	public synchronized void clear()
+	{
+		this.entries.clear();
+	}
+	public synchronized void resetStatistics()
+	{
+		this.hits      = 0;
+		this.misses    = 0;
+		this.evictions = 0;
+	}
+	public int getMaxSize()
+	{
+		return this.maxSize;
+	}
+	public synchronized int size()
+	{
+		return this.entries.size();
+	}
+	public synchronized long getHits()
+	{
+		return this.hits;
+	}
+	public synchronized long getMisses()
+	{
+		return this.misses;
+	}
+	public synchronized long getEvictions()
+	{
+		return this.evictions;
+	}
+	public synchronized double getHitRate()
+	{
+		final long requests = this.hits + this.misses;
+		return (requests > 0) ? (double)this.hits / requests : 0.0;
+	}
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("FitnessCache[size = %s/%s, hits = %s, misses = %s, evictions = %s]",
+			this.entries.size(), this.maxSize, this.hits, this.misses, this.evictions);
+	}
+
+	static final class Entry
+	{
+		final Expression tree;
+		final double     fitness;
+		final double     cutoff;
+
+		Entry(Expression tree, double fitness, double cutoff)
+		{
+			this.tree    = tree;
+			this.fitness = fitness;
+			this.cutoff  = cutoff;
+		}
+		/**
+		 * @return false, if evaluation was stopped by cutoff, so fitness is
+		 *         only a lower bound
+		 */
+		boolean isExact()
+		{
+			return !(this.fitness > this.cutoff);
+		}
+	}
+}
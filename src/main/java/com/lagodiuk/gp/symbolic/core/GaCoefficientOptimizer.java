@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.interpreter.Context;
+
+/**
+ * Evolves coefficients by nested genetic algorithm. Works with any fitness
+ * function, but needs a lot of fitness evaluations.
+ */
+public class GaCoefficientOptimizer implements CoefficientOptimizer
+{
+	private final int iterations;
+
+	public GaCoefficientOptimizer()
+	{
+		this(GpDefaults.OPTIMIZING_TREE_ITERATIONS);
+	}
+	public GaCoefficientOptimizer(int iterations)
+	{
+		this.iterations = iterations;
+	}
+	@Override
+	public void optimize(GpChromosome chromosome, Context context)
+	{
+		final double[] coefficientsOfTree = chromosome.syntaxTree.getCoefficientsOfTreeArray();
+
+		if(coefficientsOfTree.length > 0)
+		{
+			final CoefficientsPopulation population   = new CoefficientsPopulation();
+			final CoefficientsChromosome coefficients = new CoefficientsChromosome(chromosome, context, coefficientsOfTree,
+				GpDefaults.OPTIMIZING_TREE_PMUTATION, GpDefaults.OPTIMIZING_TREE_PCROSSOVER);
+			population.add(coefficients);
+
+			for (int i = 0; i < GpDefaults.OPTIMIZING_TREE_MUTATED; i++)
+				population.add(coefficients.mutate());
+
+			final CoefficientsFitness fitness = new CoefficientsFitness(chromosome);
+			final CoefficientsEngine  engine  = new CoefficientsEngine(population, fitness);
+			engine.getSettings().setAsync(GpDefaults.OPTIMIZING_TREE_ASYNC);
+
+			engine.evolve(this.iterations);
+
+			final double[] optimizedCoefficients = engine.getBest().getCoefficients();
+			chromosome.syntaxTree = chromosome.syntaxTree.withCoefficientsOfTree(optimizedCoefficients);
+		}
+	}
+}
@@ -20,20 +20,30 @@ import com.lagodiuk.ga.api.Fitness;
 import com.lagodiuk.gp.symbolic.api.Function;
 import com.lagodiuk.gp.symbolic.interpreter.Context;
 import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.Simplifier;
 import com.lagodiuk.gp.symbolic.interpreter.SyntaxTreeUtils;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class GpChromosome implements Chromosome<GpChromosome> {
 	Expression syntaxTree;
 	final Fitness<GpChromosome, Double> fitnessFunction;
 	boolean isTreeOptimized = false;
 
+	// random choices of genetic operators are made by generator of context
 	Context context;
-	final Random random = new Random();
+
+	/**
+	 * Background evaluation of fitness (see {@link GpFitness#submit(GpChromosome)}),
+	 * which owns syntax tree until it is completed
+	 */
+	volatile CompletableFuture<Double> evaluation;
+
+	private static final CoefficientOptimizer DEFAULT_COEFFICIENT_OPTIMIZER = new GaCoefficientOptimizer();
 
 	public GpChromosome(Context context, Fitness<GpChromosome, Double> fitnessFunction, Expression syntaxTree) {
 		this.context = context;
@@ -41,69 +51,145 @@ public class GpChromosome implements Chromosome<GpChromosome> {
 		this.syntaxTree = syntaxTree;
 	}
 
+	/**
+	 * Offspring share all nodes with parents, except of the paths from roots
+	 * to exchanged subtrees (see {@link Expression#replaceNode(int, Expression)}).
+	 * Offspring, which exceeds limits of depth or size of tree, is produced
+	 * again by another pair of nodes, and after several attempts it is
+	 * replaced by copy of parent.
+	 */
 	@Override
 	public List<GpChromosome> crossover(GpChromosome anotherChromosome) {
+		this.awaitEvaluation();
+		anotherChromosome.awaitEvaluation();
 		List<GpChromosome> ret = new ArrayList<>(2);
 
-		GpChromosome thisClone    = new GpChromosome(this.context, this.fitnessFunction, this.syntaxTree.clone());
-		GpChromosome anotherClone = new GpChromosome(this.context, this.fitnessFunction, anotherChromosome.syntaxTree.clone());
+		Expression thisTree    = this.syntaxTree;
+		Expression anotherTree = anotherChromosome.syntaxTree;
+
+		Expression thisOffspringTree    = null;
+		Expression anotherOffspringTree = null;
+		for (int attempt = 0; (attempt < GpDefaults.LIMITED_OPERATOR_ATTEMPTS)
+				&& ((thisOffspringTree == null) || (anotherOffspringTree == null)); attempt++) {
 
-		Expression thisRandomNode    = this.getRandomNode(thisClone.syntaxTree);
-		Expression anotherRandomNode = this.getRandomNode(anotherClone.syntaxTree);
+			int thisRandomIndex    = this.getRandomNodeIndex(thisTree);
+			int anotherRandomIndex = this.getRandomNodeIndex(anotherTree);
 
-		Expression thisRandomSubTreeClone    = thisRandomNode.clone();
-		Expression anotherRandomSubTreeClone = anotherRandomNode.clone();
+			Expression thisRandomSubTree    = thisTree.getNode(thisRandomIndex);
+			Expression anotherRandomSubTree = anotherTree.getNode(anotherRandomIndex);
+
+			if (thisOffspringTree == null) {
+				Expression tree = thisTree.replaceNode(thisRandomIndex, anotherRandomSubTree);
+				thisOffspringTree = this.isWithinLimits(tree) ? tree : null;
+			}
+			if (anotherOffspringTree == null) {
+				Expression tree = anotherTree.replaceNode(anotherRandomIndex, thisRandomSubTree);
+				anotherOffspringTree = this.isWithinLimits(tree) ? tree : null;
+			}
+		}
 
-		this.swapNode(thisRandomNode,    anotherRandomSubTreeClone);
-		this.swapNode(anotherRandomNode, thisRandomSubTreeClone);
+		GpChromosome thisOffspring    = new GpChromosome(this.context, this.fitnessFunction, (thisOffspringTree != null) ? thisOffspringTree : thisTree);
+		GpChromosome anotherOffspring = new GpChromosome(this.context, this.fitnessFunction, (anotherOffspringTree != null) ? anotherOffspringTree : anotherTree);
 
-		ret.add(thisClone);
-		ret.add(anotherClone);
+		ret.add(thisOffspring);
+		ret.add(anotherOffspring);
 
-		thisClone.isTreeOptimized    = false;
-		anotherClone.isTreeOptimized = false;
-		// thisClone.optimizeTree();
-		// anotherClone.optimizeTree();
+		thisOffspring.submitEvaluation();
+		anotherOffspring.submitEvaluation();
+		// thisOffspring.optimizeTree();
+		// anotherOffspring.optimizeTree();
 
 		return ret;
 	}
 
+	/**
+	 * Mutant shares all nodes with this chromosome, except of the path from
+	 * root to the changed node. Mutant, which exceeds limits of depth or size
+	 * of tree, is mutated again, and after several attempts it is replaced by
+	 * copy of this chromosome.
+	 */
 	@Override
 	public GpChromosome mutate() {
-		GpChromosome ret = new GpChromosome(this.context, this.fitnessFunction, this.syntaxTree.clone());
+		this.awaitEvaluation();
+		GpChromosome ret = new GpChromosome(this.context, this.fitnessFunction, this.syntaxTree);
+		for (int attempt = 0; attempt < GpDefaults.LIMITED_OPERATOR_ATTEMPTS; attempt++) {
+			ret.mutateByRandomOperator();
+			if (this.isWithinLimits(ret.syntaxTree)) {
+				break;
+			}
+			ret.syntaxTree = this.syntaxTree;
+		}
 
-		int type = this.random.nextInt(7);
+		ret.submitEvaluation();
+		// ret.optimizeTree();
+		return ret;
+	}
+
+	private void mutateByRandomOperator() {
+		int type = this.context.getRandom().nextInt(7);
 		switch (type) {
 			case 0:
-				ret.mutateByRandomChangeOfFunction();
+				this.mutateByRandomChangeOfFunction();
 				break;
 			case 1:
-				ret.mutateByRandomChangeOfChild();
+				this.mutateByRandomChangeOfChild();
 				break;
 			case 2:
-				ret.mutateByRandomChangeOfNodeToChild();
+				this.mutateByRandomChangeOfNodeToChild();
 				break;
 			case 3:
-				ret.mutateByReverseOfChildsList();
+				this.mutateByReverseOfChildsList();
 				break;
 			case 4:
-				ret.mutateByRootGrowth();
+				this.mutateByRootGrowth();
 				break;
 			case 5:
-				ret.syntaxTree = SyntaxTreeUtils.createTree(2, this.context);
+				this.syntaxTree = SyntaxTreeUtils.createTree(2, this.context);
 				break;
 			case 6:
-				ret.mutateByReplaceEntireTreeWithAnySubTree();
+				this.mutateByReplaceEntireTreeWithAnySubTree();
 				break;
 		}
+	}
 
-		ret.isTreeOptimized = false;
-		// ret.optimizeTree();
-		return ret;
+	/**
+	 * Limits are enforced by genetic operators, so evaluation never gets
+	 * bloated trees
+	 */
+	private boolean isWithinLimits(Expression tree) {
+		return !(this.fitnessFunction instanceof GpFitness)
+			|| ((GpFitness) this.fitnessFunction).isWithinLimits(tree);
+	}
+
+	void submitEvaluation() {
+		if (this.fitnessFunction instanceof GpFitness) {
+			((GpFitness) this.fitnessFunction).submit(this);
+		}
+	}
+
+	/**
+	 * @return result of background evaluation, or null if it was not submitted
+	 */
+	Double awaitEvaluation() {
+		CompletableFuture<Double> pending = this.evaluation;
+		if (pending == null) {
+			return null;
+		}
+		try {
+			return pending.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e;
+		}
 	}
 
 	private void mutateByReplaceEntireTreeWithAnySubTree() {
-		this.syntaxTree = this.getRandomNode(this.syntaxTree);
+		this.syntaxTree = this.syntaxTree.getNode(this.getRandomNodeIndex(this.syntaxTree));
 	}
 
 	private void mutateByRootGrowth() {
@@ -120,13 +206,14 @@ public class GpChromosome implements Chromosome<GpChromosome> {
 	}
 
 	private void mutateByRandomChangeOfFunction() {
-		Expression mutatingNode = this.getRandomNode(this.syntaxTree);
+		int mutatingIndex = this.getRandomNodeIndex(this.syntaxTree);
+		Expression mutatingNode = this.syntaxTree.getNode(mutatingIndex).copyNode();
 
 		Function oldFunction = mutatingNode.getFunction();
 		Function newFunction = oldFunction;
 
 		while(newFunction == oldFunction) {
-			newFunction = (this.random.nextDouble() > 0.5)
+			newFunction = (this.context.getRandom().nextDouble() > 0.5)
 				? this.context.getRandomNonTerminalFunction()
 				: this.context.getRandomTerminalFunction();
 		}
@@ -134,7 +221,8 @@ public class GpChromosome implements Chromosome<GpChromosome> {
 		mutatingNode.setFunction(newFunction);
 
 		if (newFunction.isVariable()) {
-			mutatingNode.setVariable(this.context.getRandomVariableName());
+			int slot = this.context.getRandomVariableSlot();
+			mutatingNode.setVariable(this.context.getVariableName(slot), slot);
 		}
 
 		int functionArgumentsCount = newFunction.argumentsCount();
@@ -153,28 +241,33 @@ public class GpChromosome implements Chromosome<GpChromosome> {
 		}
 
 		int functionCoefficientsCount = newFunction.coefficientsCount();
-		int mutatingNodeCoefficientsCount = mutatingNode.getCoefficientsOfNode().size();
+		int mutatingNodeCoefficientsCount = mutatingNode.getCoefficientsCount();
 		if (functionCoefficientsCount > mutatingNodeCoefficientsCount) {
 			for (int i = 0; i < ((functionCoefficientsCount - mutatingNodeCoefficientsCount) + 1); i++) {
 				mutatingNode.addCoefficient(this.context.getRandomValue());
 			}
 		} else if (functionCoefficientsCount < mutatingNodeCoefficientsCount) {
-			List<Double> subList = new ArrayList<>(functionCoefficientsCount);
+			double[] subArray = new double[functionCoefficientsCount];
 			for (int i = 0; i < functionCoefficientsCount; i++) {
-				subList.add(mutatingNode.getCoefficientsOfNode().get(i));
+				subArray[i] = mutatingNode.getCoefficient(i);
 			}
-			mutatingNode.setCoefficientsOfNode(subList);
+			mutatingNode.setCoefficientsOfNode(subArray);
 		}
+
+		this.syntaxTree = this.syntaxTree.replaceNode(mutatingIndex, mutatingNode);
 	}
 
 	private void mutateByReverseOfChildsList() {
-		Expression mutatingNode = this.getRandomNode(this.syntaxTree);
+		int mutatingIndex = this.getRandomNodeIndex(this.syntaxTree);
+		Expression mutatingNode = this.syntaxTree.getNode(mutatingIndex);
 		Function mutatingNodeFunction = mutatingNode.getFunction();
 
 		if ((mutatingNode.getChilds().size() > 1)
 				&& (!mutatingNodeFunction.isCommutative())) {
 
-			Collections.reverse(mutatingNode.getChilds());
+			Expression reversed = mutatingNode.copyNode();
+			Collections.reverse(reversed.getChilds());
+			this.syntaxTree = this.syntaxTree.replaceNode(mutatingIndex, reversed);
 
 		} else {
 			this.mutateByRandomChangeOfFunction();
@@ -182,13 +275,16 @@ public class GpChromosome implements Chromosome<GpChromosome> {
 	}
 
 	private void mutateByRandomChangeOfChild() {
-		Expression mutatingNode = this.getRandomNode(this.syntaxTree);
+		int mutatingIndex = this.getRandomNodeIndex(this.syntaxTree);
+		Expression mutatingNode = this.syntaxTree.getNode(mutatingIndex);
 
 		if (!mutatingNode.getChilds().isEmpty()) {
 
-			int indx = this.random.nextInt(mutatingNode.getChilds().size());
+			int indx = this.context.getRandom().nextInt(mutatingNode.getChilds().size());
 
-			mutatingNode.getChilds().set(indx, SyntaxTreeUtils.createTree(1, this.context));
+			Expression changed = mutatingNode.copyNode();
+			changed.getChilds().set(indx, SyntaxTreeUtils.createTree(1, this.context));
+			this.syntaxTree = this.syntaxTree.replaceNode(mutatingIndex, changed);
 
 		} else {
 			this.mutateByRandomChangeOfFunction();
@@ -196,70 +292,70 @@ public class GpChromosome implements Chromosome<GpChromosome> {
 	}
 
 	private void mutateByRandomChangeOfNodeToChild() {
-		Expression mutatingNode = this.getRandomNode(this.syntaxTree);
+		int mutatingIndex = this.getRandomNodeIndex(this.syntaxTree);
+		Expression mutatingNode = this.syntaxTree.getNode(mutatingIndex);
 
 		if (!mutatingNode.getChilds().isEmpty()) {
 
-			int indx = this.random.nextInt(mutatingNode.getChilds().size());
+			int indx = this.context.getRandom().nextInt(mutatingNode.getChilds().size());
 
 			Expression child = mutatingNode.getChilds().get(indx);
 
-			this.swapNode(mutatingNode, child.clone());
+			this.syntaxTree = this.syntaxTree.replaceNode(mutatingIndex, child);
 
 		} else {
 			this.mutateByRandomChangeOfFunction();
 		}
 	}
 
-	private Expression getRandomNode(Expression tree) {
-		List<Expression> allNodesOfTree = tree.getAllNodesAsList();
-		int allNodesOfTreeCount = allNodesOfTree.size();
-		int indx = this.random.nextInt(allNodesOfTreeCount);
-		return allNodesOfTree.get(indx);
-	}
-
-	private void swapNode(Expression oldNode, Expression newNode) {
-		oldNode.setChilds(newNode.getChilds());
-		oldNode.setFunction(newNode.getFunction());
-		oldNode.setCoefficientsOfNode(newNode.getCoefficientsOfNode());
-		oldNode.setVariable(newNode.getVariable());
+	/**
+	 * @return index of node in pre-order of tree (see {@link Expression#getNode(int)})
+	 */
+	private int getRandomNodeIndex(Expression tree) {
+		// O(depth) descent by sizes of subtrees, which are memoized by nodes of persistent trees
+		NodeSelection selection = (this.fitnessFunction instanceof GpFitness)
+			? ((GpFitness) this.fitnessFunction).getNodeSelection()
+			: NodeSelection.UNIFORM;
+		if (selection == NodeSelection.KOZA) {
+			int internalCount = tree.size() - tree.getLeavesCount();
+			if ((internalCount > 0) && (this.context.getRandom().nextDouble() < GpDefaults.KOZA_INTERNAL_NODE_PROBABILITY)) {
+				return tree.indexOfInternalNode(this.context.getRandom().nextInt(internalCount));
+			}
+			return tree.indexOfLeaf(this.context.getRandom().nextInt(tree.getLeavesCount()));
+		}
+		return this.context.getRandom().nextInt(tree.size());
 	}
 
 	public void optimizeTree()
 	{
-		this.optimizeTree(GpDefaults.OPTIMIZING_TREE_ITERATIONS);
+		this.awaitEvaluation();
+		this.optimizeTree(this.context);
 	}
-	private synchronized void optimizeTree(int iterations)
+	/**
+	 * @param context context of evaluating thread
+	 */
+	synchronized void optimizeTree(Context context)
 	{
 
 		isTreeOptimized = true;
-		SyntaxTreeUtils.cutTree     (this.syntaxTree, this.context, 6);
-		SyntaxTreeUtils.simplifyTree(this.syntaxTree, this.context);
-		optimizeCoefficients(iterations);
+		// tree may share nodes with other chromosomes, so it is never edited in place
+		this.syntaxTree = Simplifier.simplify(this.syntaxTree, context);
+		optimizeCoefficients(context);
 	}
-	private void optimizeCoefficients(int iterations)
+	/**
+	 * @param tree result of optimization of the same tree
+	 */
+	synchronized void setOptimizedTree(Expression tree)
 	{
-		final List<Double> coefficientsOfTree = this.syntaxTree.getCoefficientsOfTree();
-
-		if(!coefficientsOfTree.isEmpty())
-		{
-			final CoefficientsPopulation population   = new CoefficientsPopulation();
-			final CoefficientsChromosome coefficients = new CoefficientsChromosome(this, coefficientsOfTree,
-				GpDefaults.OPTIMIZING_TREE_PMUTATION, GpDefaults.OPTIMIZING_TREE_PCROSSOVER);
-			population.add(coefficients);
-
-			for (int i = 0; i < GpDefaults.OPTIMIZING_TREE_MUTATED; i++)
-				population.add(coefficients.mutate());
-
-			final CoefficientsFitness fitness = new CoefficientsFitness(this);
-			final CoefficientsEngine  engine  = new CoefficientsEngine(population, fitness);
-			engine.getSettings().setAsync(GpDefaults.OPTIMIZING_TREE_ASYNC);
-
-			engine.evolve(iterations);
-
-			final List<Double> optimizedCoefficients = engine.getBest().getCoefficients();
-			this.syntaxTree.setCoefficientsOfTree(optimizedCoefficients);
-		}
+		this.syntaxTree      = tree;
+		this.isTreeOptimized = true;
+	}
+	private void optimizeCoefficients(Context context)
+	{
+		final CoefficientOptimizer optimizer = (this.fitnessFunction instanceof GpFitness)
+			? ((GpFitness)this.fitnessFunction).getCoefficientOptimizer()
+			: DEFAULT_COEFFICIENT_OPTIMIZER;
+		optimizer.optimize(this, context);
 	}
 	public Context getContext()
 	{
@@ -271,11 +367,13 @@ public class GpChromosome implements Chromosome<GpChromosome> {
 	}
 	public Expression getSyntaxTree()
 	{
+		this.awaitEvaluation();
 		return this.syntaxTree;
 	}
 	@Override
 	public int hashCode()
 	{
+		this.awaitEvaluation();
 		int hash = 7;
 		hash = 89 * hash + Objects.hashCode(this.syntaxTree);
 		hash = 89 * hash + (this.isTreeOptimized ? 1 : 0);
@@ -291,6 +389,8 @@ public class GpChromosome implements Chromosome<GpChromosome> {
 		if(obj == null || getClass() != obj.getClass())
 			return false;
 		final GpChromosome other = (GpChromosome)obj;
+		this.awaitEvaluation();
+		other.awaitEvaluation();
 		if(this.isTreeOptimized != other.isTreeOptimized)
 			return false;
 		/*
@@ -17,9 +17,15 @@ package com.lagodiuk.gp.symbolic.core;
 
 final class GpDefaults
 {
-	final static int     OPTIMIZING_TREE_ITERATIONS = 50;
-	final static int     OPTIMIZING_TREE_MUTATED    = 5;
-	final static boolean OPTIMIZING_TREE_ASYNC      = true;
-	final static double  OPTIMIZING_TREE_PMUTATION  = 0.6;
-	final static double  OPTIMIZING_TREE_PCROSSOVER = 0.8;
+	final static int     OPTIMIZING_TREE_ITERATIONS     = 50;
+	final static int     OPTIMIZING_TREE_LM_ITERATIONS  = 20;
+	final static int     OPTIMIZING_TREE_MUTATED        = 5;
+	final static boolean OPTIMIZING_TREE_ASYNC          = true;
+	final static double  OPTIMIZING_TREE_PMUTATION      = 0.6;
+	final static double  OPTIMIZING_TREE_PCROSSOVER     = 0.8;
+	final static int     FITNESS_CACHE_SIZE             = 10000;
+	final static double  KOZA_INTERNAL_NODE_PROBABILITY = 0.9;
+	final static int     LIMITED_OPERATOR_ATTEMPTS      = 10;
+	final static int     MIGRATION_INTERVAL             = 10;
+	final static int     MIGRATION_TIMEOUT              = 600000;
 }
@@ -16,27 +16,351 @@
 package com.lagodiuk.gp.symbolic.core;
 
 import com.lagodiuk.ga.api.Fitness;
+import com.lagodiuk.gp.symbolic.api.SymbolicRegressionDefaults;
 import com.lagodiuk.gp.symbolic.interpreter.Context;
 import com.lagodiuk.gp.symbolic.interpreter.Expression;
 import com.lagodiuk.gp.symbolic.interpreter.ExpressionFitness;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 class GpFitness implements Fitness<GpChromosome, Double>
 {
-	private final ExpressionFitness expressionFitness;
+	private final    ExpressionFitness    expressionFitness;
+	private final    ThreadLocal<Context> contexts;
+	// seeds of contexts of evaluating threads (guarded by contexts)
+	private          SplittableRandom     seeds = new SplittableRandom();
+	private volatile Executor             executor;
+	private volatile CoefficientOptimizer coefficientOptimizer = new LevenbergMarquardtOptimizer();
+	private volatile FitnessCache         cache = new FitnessCache(GpDefaults.FITNESS_CACHE_SIZE);
+	private volatile NodeSelection        nodeSelection = NodeSelection.UNIFORM;
+	private volatile double               cutoff = Double.POSITIVE_INFINITY;
+	private volatile int                  maxTreeDepth = SymbolicRegressionDefaults.MAX_TREE_DEPTH;
+	private volatile int                  maxTreeSize  = SymbolicRegressionDefaults.MAX_TREE_SIZE;
+	private volatile ParsimonyPressure    parsimonyPressure = ParsimonyPressure.NONE;
+	private volatile double               parsimonyCoefficient = SymbolicRegressionDefaults.PARSIMONY_COEFFICIENT;
+	// offspring of current generation (trees of chromosomes are replaced by optimization, so they are compared by identity)
+	private final    Set<GpChromosome>    offspring = Collections.newSetFromMap(new IdentityHashMap<>());
+	private          int                  offspringSurviveCount;
+	private          boolean              offspringRanked;
 
-	public GpFitness(ExpressionFitness expressionFitness)
+	public GpFitness(ExpressionFitness expressionFitness, Grammar grammar)
 	{
 		this.expressionFitness = expressionFitness;
+		// fitness functions write variables into context, so each thread evaluates with own frame
+		this.contexts = ThreadLocal.withInitial(() -> this.newContext(grammar));
+	}
+	private Context newContext(Grammar grammar)
+	{
+		final Context context = grammar.newContext();
+		synchronized(this.contexts)
+		{
+			context.setSeed(this.seeds.nextLong());
+		}
+		return context;
+	}
+	/**
+	 * Contexts of evaluating threads are seeded by this seed, when they are
+	 * created
+	 */
+	void setSeed(long seed)
+	{
+		synchronized(this.contexts)
+		{
+			this.seeds = new SplittableRandom(seed);
+		}
+	}
+	ExpressionFitness getExpressionFitness()
+	{
+		return this.expressionFitness;
+	}
+	/**
+	 * @return context of calling thread
+	 */
+	Context getContext()
+	{
+		return this.contexts.get();
+	}
+	CoefficientOptimizer getCoefficientOptimizer()
+	{
+		return this.coefficientOptimizer;
+	}
+	void setCoefficientOptimizer(CoefficientOptimizer coefficientOptimizer)
+	{
+		this.coefficientOptimizer = coefficientOptimizer;
+	}
+	FitnessCache getCache()
+	{
+		return this.cache;
+	}
+	void setCache(FitnessCache cache)
+	{
+		this.cache = cache;
+	}
+	NodeSelection getNodeSelection()
+	{
+		return this.nodeSelection;
+	}
+	void setNodeSelection(NodeSelection nodeSelection)
+	{
+		this.nodeSelection = nodeSelection;
+	}
+	int getMaxTreeDepth()
+	{
+		return this.maxTreeDepth;
+	}
+	void setMaxTreeDepth(int maxTreeDepth)
+	{
+		this.maxTreeDepth = maxTreeDepth;
+	}
+	int getMaxTreeSize()
+	{
+		return this.maxTreeSize;
+	}
+	void setMaxTreeSize(int maxTreeSize)
+	{
+		this.maxTreeSize = maxTreeSize;
+	}
+	/**
+	 * @return true if genetic operators may produce the tree
+	 */
+	boolean isWithinLimits(Expression tree)
+	{
+		return tree.getDepth() <= this.maxTreeDepth && tree.size() <= this.maxTreeSize;
+	}
+	ParsimonyPressure getParsimonyPressure()
+	{
+		return this.parsimonyPressure;
+	}
+	void setParsimonyPressure(ParsimonyPressure parsimonyPressure)
+	{
+		this.parsimonyPressure = parsimonyPressure;
+	}
+	double getParsimonyCoefficient()
+	{
+		return this.parsimonyCoefficient;
+	}
+	void setParsimonyCoefficient(double parsimonyCoefficient)
+	{
+		this.parsimonyCoefficient = parsimonyCoefficient;
+	}
+	/**
+	 * @return fitness, which ranks chromosome with the tree by selection
+	 */
+	double addParsimony(Expression tree, double fitness)
+	{
+		if(this.parsimonyPressure == ParsimonyPressure.LINEAR)
+			return fitness + this.parsimonyCoefficient * tree.size();
+		return fitness;
+	}
+	/**
+	 * @param treeSize size of tree, which was ranked with parsimony pressure
+	 * @param fitness  fitness of chromosome, which includes parsimony pressure
+	 * @return fitness of the tree itself
+	 */
+	double removeParsimony(int treeSize, double fitness)
+	{
+		if(this.parsimonyPressure == ParsimonyPressure.LINEAR)
+			return fitness - this.parsimonyCoefficient * treeSize;
+		return fitness;
+	}
+	/**
+	 * @return fitness of tree of chromosome, which doesn't include parsimony
+	 *         pressure (it is kept by chromosome, when it is ranked)
+	 */
+	double rawFitness(GpChromosome chromosome)
+	{
+		final Double fitness = chromosome.awaitEvaluation();
+		if(fitness != null)
+			return fitness;
+		this.calculate(chromosome);
+		return chromosome.awaitEvaluation();
+	}
+	double getCutoff()
+	{
+		return this.cutoff;
+	}
+	/**
+	 * @param cutoff fitness of tree (without parsimony pressure), which new
+	 *               chromosomes must not exceed to survive selection
+	 *               (infinity evaluates fitness completely)
+	 */
+	void setCutoff(double cutoff)
+	{
+		this.cutoff = cutoff;
+	}
+	Executor getExecutor()
+	{
+		return this.executor;
+	}
+	void setExecutor(Executor executor)
+	{
+		this.executor = executor;
+	}
+	/**
+	 * @param offspringSurviveCount count of offspring, which survive
+	 *                              selection of the next generation (along
+	 *                              with elites)
+	 */
+	synchronized void startGeneration(int offspringSurviveCount)
+	{
+		this.offspring.clear();
+		this.offspringSurviveCount = offspringSurviveCount;
+		this.offspringRanked       = false;
+	}
+	/**
+	 * Starts evaluation of new chromosome in background (when executor is set),
+	 * so it runs while genetic algorithm produces the rest of generation
+	 */
+	void submit(GpChromosome chromosome)
+	{
+		if(this.cutoff < Double.POSITIVE_INFINITY)
+			synchronized(this)
+			{
+				this.offspring.add(chromosome);
+			}
+		final Executor executor = this.executor;
+		if(executor != null && chromosome.evaluation == null)
+			chromosome.evaluation = CompletableFuture.supplyAsync(() -> this.evaluate(chromosome), executor);
 	}
-
 	@Override
 	public Double calculate(GpChromosome chromosome)
 	{
+		Double fitness = chromosome.awaitEvaluation();
+		if(fitness == null)
+			fitness = this.evaluate(chromosome);
+		if(fitness > this.cutoff)
+			fitness = this.rank(chromosome, fitness);
+		// fitness of tree is kept for cutoff, which doesn't include parsimony pressure
+		chromosome.evaluation = CompletableFuture.completedFuture(fitness);
+		// optimized tree replaces tree of chromosome by evaluation
+		return this.addParsimony(chromosome.syntaxTree, fitness);
+	}
+	private Double evaluate(GpChromosome chromosome)
+	{
+		final Context context = this.getContext();
+		final double  cutoff  = this.cutoff;
 		if(chromosome.isTreeOptimized == false)
-			chromosome.optimizeTree();
-
-		Expression expression = chromosome.getSyntaxTree();
-		Context context = chromosome.getContext();
-		return this.expressionFitness.fitness(expression, context);
+		{
+			final FitnessCache cache = this.cache;
+			if(cache != null)
+				return this.evaluate(chromosome, context, cache, cutoff);
+			chromosome.optimizeTree(context);
+		}
+		return this.fitness(chromosome.syntaxTree, context, cutoff);
+	}
+	/**
+	 * Lower bounds of fitness don't rank chromosomes among themselves, so
+	 * they are kept only for chromosomes, which can't survive selection.
+	 * Chromosome, which is not offspring of current generation (e.g.
+	 * immigrant), is scored completely.
+	 */
+	private synchronized Double rank(GpChromosome chromosome, Double lowerBound)
+	{
+		if(!this.offspring.contains(chromosome))
+			return this.exactFitness(chromosome);
+		if(chromosome.evaluation == null)
+			chromosome.evaluation = CompletableFuture.completedFuture(lowerBound);
+		if(!this.offspringRanked)
+		{
+			this.offspringRanked = true;
+			this.rankOffspring();
+		}
+		return chromosome.awaitEvaluation();
+	}
+	/**
+	 * Elites have fitness within cutoff, so they survive along with the best
+	 * offspring. When too few offspring are within cutoff, the rest of
+	 * survivors is chosen among offspring over cutoff: they are evaluated
+	 * again against fitness of the worst survivor found so far, so each of
+	 * them is either scored exactly, or it is worse than all survivors.
+	 * Survivors are ranked with parsimony pressure, like by selection, and
+	 * fitness of each tree is bounded by fitness of the worst survivor less
+	 * parsimony pressure on the tree.
+	 */
+	private void rankOffspring()
+	{
+		final List<GpChromosome>    pending   = new ArrayList<>();
+		final PriorityQueue<Double> survivors = new PriorityQueue<>(Collections.reverseOrder());
+		for(GpChromosome candidate : this.offspring)
+		{
+			Double fitness = candidate.awaitEvaluation();
+			if(fitness == null)
+			{
+				fitness = this.evaluate(candidate);
+				candidate.evaluation = CompletableFuture.completedFuture(fitness);
+			}
+			if(fitness <= this.cutoff)
+				survivors.add(this.addParsimony(candidate.syntaxTree, fitness));
+			else
+				pending.add(candidate);
+		}
+		if(survivors.size() >= this.offspringSurviveCount)
+			// offspring over cutoff are discarded
+			return;
+		final Context context = this.getContext();
+		for(GpChromosome candidate : pending)
+		{
+			final Expression tree    = candidate.getSyntaxTree();
+			final double     limit   = (survivors.size() < this.offspringSurviveCount)
+				? Double.POSITIVE_INFINITY
+				: this.removeParsimony(tree.size(), survivors.peek());
+			final double     fitness = this.fitness(tree, context, limit);
+			candidate.evaluation = CompletableFuture.completedFuture(fitness);
+			if(fitness <= limit)
+			{
+				survivors.add(this.addParsimony(tree, fitness));
+				if(survivors.size() > this.offspringSurviveCount)
+					survivors.poll();
+			}
+		}
+	}
+	/**
+	 * Fitness of chromosome, which was evaluated only partially (because it
+	 * exceeded cutoff), but survived selection
+	 */
+	double exactFitness(GpChromosome chromosome)
+	{
+		return this.fitness(chromosome.getSyntaxTree(), this.getContext(), Double.POSITIVE_INFINITY);
+	}
+	/**
+	 * Structurally identical trees get the same optimized tree and fitness,
+	 * so optimization runs once for all of them
+	 */
+	private Double evaluate(GpChromosome chromosome, Context context, FitnessCache cache, double cutoff)
+	{
+		final long               revision = this.expressionFitness.getRevision();
+		final Expression         key      = chromosome.syntaxTree;
+		final FitnessCache.Entry cached   = cache.get(key, revision);
+		if(cached != null)
+		{
+			// trees are persistent, so cached tree is shared
+			chromosome.setOptimizedTree(cached.tree);
+			if(cached.isExact() || cached.fitness > cutoff)
+				return cached.fitness;
+			// lower bound of fitness doesn't exceed current cutoff, but
+			// optimization of tree is reused
+			final double fitness = this.fitness(cached.tree, context, cutoff);
+			cache.put(key, revision, cached.tree, fitness, cutoff);
+			return fitness;
+		}
+		// optimization replaces tree of chromosome, the original one is the key
+		chromosome.optimizeTree(context);
+		final double fitness = this.fitness(chromosome.syntaxTree, context, cutoff);
+		cache.put(key, revision, chromosome.syntaxTree, fitness, cutoff);
+		return fitness;
+	}
+	private double fitness(Expression expression, Context context, double cutoff)
+	{
+		// evaluations of the tree will use compiled program from now on
+		expression.compile();
+		return this.expressionFitness.fitness(expression, context, cutoff);
 	}
 }
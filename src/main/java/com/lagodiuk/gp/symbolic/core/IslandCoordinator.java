@@ -0,0 +1,277 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionReader;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionWriter;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Coordinator of distributed island model: each {@link IslandWorker} (which
+ * may run in another process) evolves its own island and sends the best tree
+ * to coordinator after each epoch of migration. In response it receives
+ * the latest migrants of other workers, which are chosen by
+ * {@link MigrationTopology} over currently connected workers.
+ * <p>
+ * Workers are not synchronized with each other, so loss of a worker (closed
+ * connection or silence for longer than {@link #getTimeout()}) only removes
+ * it from topology.
+ */
+public class IslandCoordinator implements Closeable
+{
+	final static int MAGIC   = 0x47504953;
+	final static int VERSION = 1;
+
+	private final    Grammar                   grammar;
+	private final    ServerSocket              serverSocket;
+	private final    TreeMap<Integer, Migrant> migrants    = new TreeMap<>();
+	private final    Set<Socket>               connections = new HashSet<>();
+	private          Migrant                   best;
+	private          int                       nextWorkerId;
+	private volatile MigrationTopology         topology = MigrationTopology.RING;
+	private volatile int                       timeout  = GpDefaults.MIGRATION_TIMEOUT;
+	private volatile boolean                   terminated;
+
+	/**
+	 * @param grammar grammar of all workers
+	 * @param port    port to listen, or 0 for any free port
+	 */
+	public IslandCoordinator(Grammar grammar, int port) throws IOException
+	{
+		this.grammar      = grammar;
+		this.serverSocket = new ServerSocket(port);
+	}
+	/**
+	 * Starts to accept workers in background
+	 */
+	public void start()
+	{
+		final Thread acceptor = new Thread(this::acceptWorkers, "island-coordinator-" + this.getPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+	public int getPort()
+	{
+		return this.serverSocket.getLocalPort();
+	}
+	public MigrationTopology getTopology()
+	{
+		return this.topology;
+	}
+	public void setTopology(MigrationTopology topology)
+	{
+		this.topology = topology;
+	}
+	public int getTimeout()
+	{
+		return this.timeout;
+	}
+	/**
+	 * @param timeout milliseconds, which worker may spend for an epoch of
+	 *                migration, before it is treated as lost
+	 */
+	public void setTimeout(int timeout)
+	{
+		this.timeout = timeout;
+	}
+	/**
+	 * Workers stop evolution after their next migration
+	 */
+	public void terminate()
+	{
+		this.terminated = true;
+	}
+	public synchronized int getWorkersCount()
+	{
+		return this.migrants.size();
+	}
+	/**
+	 * @return the best tree, which was received from any worker (including
+	 *         lost ones), or null
+	 */
+	public synchronized Expression getBestSyntaxTree()
+	{
+		return (this.best != null) ? this.best.tree : null;
+	}
+	/**
+	 * @return fitness of {@link #getBestSyntaxTree()}, as evaluated by worker
+	 */
+	public synchronized double getBestFitness()
+	{
+		return (this.best != null) ? this.best.fitness : Double.NaN;
+	}
+	@Override
+	public void close() throws IOException
+	{
+		this.serverSocket.close();
+		final List<Socket> connections;
+		synchronized(this)
+		{
+			connections = new ArrayList<>(this.connections);
+		}
+		for(Socket connection : connections)
+			connection.close();
+	}
+	private void acceptWorkers()
+	{
+		while(!this.serverSocket.isClosed())
+		{
+			final Socket socket;
+			try
+			{
+				socket = this.serverSocket.accept();
+			}
+			catch(IOException e)
+			{
+				// coordinator is closed
+				return;
+			}
+			final Thread handler = new Thread(() -> this.serveWorker(socket), "island-coordinator-" + socket.getRemoteSocketAddress());
+			handler.setDaemon(true);
+			handler.start();
+		}
+	}
+	private void serveWorker(Socket socket)
+	{
+		int workerId = -1;
+		try(Socket connection = socket)
+		{
+			synchronized(this)
+			{
+				if(this.serverSocket.isClosed())
+					return;
+				this.connections.add(connection);
+			}
+			connection.setSoTimeout(this.timeout);
+			connection.setTcpNoDelay(true);
+			final DataInputStream  in     = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+			final DataOutputStream out    = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+			final ExpressionReader reader = new ExpressionReader(this.grammar, in);
+
+			if(in.readInt() != MAGIC || in.readInt() != VERSION)
+				throw new IOException("Unknown protocol");
+			reader.readHeader();
+			// worker reads trees without header, so they are written by its order of functions
+			final ExpressionWriter writer = new ExpressionWriter(reader.getHeaderGrammar(), out);
+			workerId = this.register();
+			out.writeInt(workerId);
+			out.flush();
+
+			// the latest migrant of each source, which was sent to this worker
+			final Map<Integer, Migrant> delivered = new HashMap<>();
+			while(true)
+			{
+				final double     fitness = in.readDouble();
+				final Expression tree    = reader.read();
+
+				final List<Expression> received = this.exchange(workerId, new Migrant(tree, fitness), delivered);
+				out.writeBoolean(this.terminated);
+				out.writeInt(received.size());
+				for(Expression migrant : received)
+					writer.write(migrant);
+				out.flush();
+			}
+		}
+		catch(EOFException e)
+		{
+			// worker has finished evolution
+		}
+		catch(IOException e)
+		{
+			// worker is lost, evolution continues without it
+		}
+		finally
+		{
+			this.unregister(workerId, socket);
+		}
+	}
+	private synchronized int register()
+	{
+		final int workerId = this.nextWorkerId++;
+		this.migrants.put(workerId, null);
+		return workerId;
+	}
+	private synchronized void unregister(int workerId, Socket connection)
+	{
+		this.migrants.remove(workerId);
+		this.connections.remove(connection);
+	}
+	/**
+	 * Stores migrant of worker and chooses migrants of other workers, which
+	 * were not delivered to it yet
+	 */
+	private synchronized List<Expression> exchange(int workerId, Migrant migrant, Map<Integer, Migrant> delivered)
+	{
+		this.migrants.put(workerId, migrant);
+		if(this.best == null || migrant.fitness < this.best.fitness)
+			this.best = migrant;
+
+		final List<Integer> sources = new ArrayList<>();
+		switch(this.topology)
+		{
+			case RING:
+				// predecessor by order of connection (the last one for the first one)
+				Integer source = this.migrants.lowerKey(workerId);
+				if(source == null)
+					source = this.migrants.lastKey();
+				if(source != workerId)
+					sources.add(source);
+				break;
+			case FULLY_CONNECTED:
+				for(Integer id : this.migrants.keySet())
+					if(id != workerId)
+						sources.add(id);
+				break;
+		}
+		final List<Expression> result = new ArrayList<>(sources.size());
+		for(Integer id : sources)
+		{
+			final Migrant sourceMigrant = this.migrants.get(id);
+			if(sourceMigrant != null && delivered.put(id, sourceMigrant) != sourceMigrant)
+				result.add(sourceMigrant.tree);
+		}
+		return result;
+	}
+
+	private static class Migrant
+	{
+		final Expression tree;
+		final double     fitness;
+
+		Migrant(Expression tree, double fitness)
+		{
+			this.tree    = tree;
+			this.fitness = fitness;
+		}
+	}
+}
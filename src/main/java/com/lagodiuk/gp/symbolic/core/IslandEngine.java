@@ -0,0 +1,305 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.api.Function;
+import com.lagodiuk.gp.symbolic.api.SymbolicRegressionIterationListener;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionFitness;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import com.lagodiuk.gp.symbolic.interpreter.SubsampledFitness;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Island model: independent populations (each one is evolved by own
+ * {@link SymbolicRegressionEngine} in own thread), which exchange their best
+ * chromosomes after each epoch of {@link #getMigrationInterval()} generations.
+ * <p>
+ * Migrant replaces the worst chromosome of receiving island (see
+ * {@link MigrationTopology}).
+ */
+public class IslandEngine
+{
+	private final    ExpressionFitness                         fitness;
+	private final    List<SymbolicRegressionEngine>            islands;
+	private final    List<SymbolicRegressionIterationListener> listeners = new LinkedList<>();
+	private volatile MigrationTopology                         topology = MigrationTopology.RING;
+	private volatile int                                       migrationInterval = GpDefaults.MIGRATION_INTERVAL;
+	private volatile ExecutorService                           executor;
+	private volatile boolean                                   terminated;
+
+	public IslandEngine(ExpressionFitness fitness, Collection<String> variables, List<? extends Function> baseFunctions, int islandsCount)
+	{
+		this(fitness, new Grammar(baseFunctions, variables), islandsCount);
+	}
+	/**
+	 * @param grammar configuration, which is shared by all islands
+	 */
+	public IslandEngine(ExpressionFitness fitness, Grammar grammar, int islandsCount)
+	{
+		if(islandsCount < 1)
+			throw new IllegalArgumentException("Count of islands must be positive, but was " + islandsCount);
+		final List<SymbolicRegressionEngine> islands = new ArrayList<>(islandsCount);
+		for(int i = 0; i < islandsCount; i++)
+		{
+			final SymbolicRegressionEngine island = new SymbolicRegressionEngine(fitness, grammar);
+			island.addIterationListener(this::onNewGeneration);
+			island.shareSubsample();
+			islands.add(island);
+		}
+		this.fitness = fitness;
+		this.islands = Collections.unmodifiableList(islands);
+	}
+	/**
+	 * Listeners are notified about each generation of each island (one at a
+	 * time), with the island as argument. Termination of any island
+	 * terminates all of them.
+	 */
+	private void onNewGeneration(SymbolicRegressionEngine island)
+	{
+		synchronized(this.listeners)
+		{
+			for(SymbolicRegressionIterationListener listener : this.listeners)
+				listener.onNewGeneration(island);
+		}
+		if(island.isTerminated())
+			this.terminate();
+	}
+	public void addIterationListener(SymbolicRegressionIterationListener listener)
+	{
+		synchronized(this.listeners)
+		{
+			this.listeners.add(listener);
+		}
+	}
+	public void removeIterationListener(SymbolicRegressionIterationListener listener)
+	{
+		synchronized(this.listeners)
+		{
+			this.listeners.remove(listener);
+		}
+	}
+	/**
+	 * Islands can be configured separately (e.g. by different coefficient
+	 * optimizers), but must not be evolved directly
+	 */
+	public List<SymbolicRegressionEngine> getIslands()
+	{
+		return this.islands;
+	}
+	public int getIslandsCount()
+	{
+		return this.islands.size();
+	}
+	public MigrationTopology getTopology()
+	{
+		return this.topology;
+	}
+	public void setTopology(MigrationTopology topology)
+	{
+		this.topology = topology;
+	}
+	public int getMigrationInterval()
+	{
+		return this.migrationInterval;
+	}
+	/**
+	 * @param migrationInterval count of generations between migrations
+	 */
+	public void setMigrationInterval(int migrationInterval)
+	{
+		if(migrationInterval < 1)
+			throw new IllegalArgumentException("Migration interval must be positive, but was " + migrationInterval);
+		this.migrationInterval = migrationInterval;
+	}
+	public ExecutorService getExecutor()
+	{
+		return this.executor;
+	}
+	/**
+	 * @param executor executor, which evolves islands (it should have a
+	 *                 thread per island), or null to start own threads by
+	 *                 each call of {@link #evolve(int)} (default)
+	 */
+	public void setExecutor(ExecutorService executor)
+	{
+		this.executor = executor;
+	}
+	public void evolve(int count)
+	{
+		this.terminated = false;
+		final ExecutorService executor = (this.executor != null)
+			? this.executor
+			: Executors.newFixedThreadPool(this.islands.size());
+		try
+		{
+			int evolved = 0;
+			while(evolved < count && !this.terminated)
+			{
+				final int epoch = Math.min(this.migrationInterval, count - evolved);
+				this.evolveEpoch(executor, epoch);
+				evolved += epoch;
+				if(!this.terminated)
+				{
+					this.migrate();
+					this.nextSubsample();
+				}
+			}
+		}
+		finally
+		{
+			if(executor != this.executor)
+				executor.shutdown();
+		}
+	}
+	public void evolve()
+	{
+		this.evolve(1);
+	}
+	private void evolveEpoch(ExecutorService executor, int generations)
+	{
+		final List<Future<?>> epoch = new ArrayList<>(this.islands.size());
+		for(SymbolicRegressionEngine island : this.islands)
+			epoch.add(executor.submit(() ->
+			{
+				// island, which was not started yet, would reset its termination
+				if(!this.terminated)
+					island.evolve(generations);
+			}));
+		try
+		{
+			for(Future<?> future : epoch)
+				future.get();
+		}
+		catch(InterruptedException e)
+		{
+			this.terminate();
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Evolution of islands was interrupted", e);
+		}
+		catch(ExecutionException e)
+		{
+			this.terminate();
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException)e.getCause();
+			if(e.getCause() instanceof Error)
+				throw (Error)e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+	/**
+	 * Islands share fitness, so its subsample is changed once per epoch, when
+	 * none of them is evolved (see {@link SubsampledFitness})
+	 */
+	private void nextSubsample()
+	{
+		if(!(this.fitness instanceof SubsampledFitness))
+			return;
+		((SubsampledFitness) this.fitness).nextSubsample(this.getIteration());
+		for(SymbolicRegressionEngine island : this.islands)
+			island.syncSubsample();
+	}
+	/**
+	 * Migrants are chosen before any island receives them, so migration
+	 * doesn't depend on order of islands
+	 */
+	void migrate()
+	{
+		final int count = this.islands.size();
+		if(count < 2)
+			return;
+		final List<Expression> migrants = new ArrayList<>(count);
+		for(SymbolicRegressionEngine island : this.islands)
+			migrants.add(island.getBestSyntaxTree());
+
+		for(int j = 0; j < count; j++)
+		{
+			final List<Expression> received = new ArrayList<>();
+			switch(this.topology)
+			{
+				case RING:
+					received.add(migrants.get((j + count - 1) % count));
+					break;
+				case FULLY_CONNECTED:
+					for(int i = 0; i < count; i++)
+						if(i != j)
+							received.add(migrants.get(i));
+					break;
+			}
+			this.islands.get(j).immigrate(received);
+		}
+	}
+	public void terminate()
+	{
+		this.terminated = true;
+		for(SymbolicRegressionEngine island : this.islands)
+			island.terminate();
+	}
+	/**
+	 * @return count of generations of the most advanced island
+	 */
+	public int getIteration()
+	{
+		int iteration = 0;
+		for(SymbolicRegressionEngine island : this.islands)
+			iteration = Math.max(iteration, island.getIteration());
+		return iteration;
+	}
+	public void resetIterations()
+	{
+		for(SymbolicRegressionEngine island : this.islands)
+			island.resetIterations();
+	}
+	/**
+	 * @return island, which has the best chromosome
+	 */
+	public SymbolicRegressionEngine getBestIsland()
+	{
+		SymbolicRegressionEngine bestIsland  = null;
+		double                   bestFitness = Double.POSITIVE_INFINITY;
+		for(SymbolicRegressionEngine island : this.islands)
+		{
+			final double fitness = island.getBestFitness();
+			if(bestIsland == null || fitness < bestFitness)
+			{
+				bestIsland  = island;
+				bestFitness = fitness;
+			}
+		}
+		return bestIsland;
+	}
+	public GpChromosome getBest()
+	{
+		return this.getBestIsland().getBest();
+	}
+	public Expression getBestSyntaxTree()
+	{
+		return this.getBestIsland().getBestSyntaxTree();
+	}
+	public void clearCache()
+	{
+		for(SymbolicRegressionEngine island : this.islands)
+			island.clearCache();
+	}
+}
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionReader;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Island of distributed island model, which exchanges migrants with
+ * {@link IslandCoordinator} after each epoch of {@link #getMigrationInterval()}
+ * generations of its engine.
+ * <p>
+ * When coordinator is unreachable, island keeps evolving in isolation and
+ * connects again at the next migration.
+ */
+public class IslandWorker implements Closeable
+{
+	private final    SymbolicRegressionEngine engine;
+	private final    InetSocketAddress        coordinator;
+	private volatile int                      migrationInterval = GpDefaults.MIGRATION_INTERVAL;
+	private volatile int                      timeout           = GpDefaults.MIGRATION_TIMEOUT;
+	private          Socket                   socket;
+	private          DataInputStream          in;
+	private          DataOutputStream         out;
+	private          ExpressionReader         reader;
+	private          ExpressionWriter         writer;
+	private          int                      workerId = -1;
+
+	public IslandWorker(SymbolicRegressionEngine engine, String host, int port)
+	{
+		this.engine      = engine;
+		this.coordinator = new InetSocketAddress(host, port);
+	}
+	public SymbolicRegressionEngine getEngine()
+	{
+		return this.engine;
+	}
+	public int getMigrationInterval()
+	{
+		return this.migrationInterval;
+	}
+	/**
+	 * @param migrationInterval count of generations between migrations
+	 */
+	public void setMigrationInterval(int migrationInterval)
+	{
+		if(migrationInterval < 1)
+			throw new IllegalArgumentException("Migration interval must be positive, but was " + migrationInterval);
+		this.migrationInterval = migrationInterval;
+	}
+	public int getTimeout()
+	{
+		return this.timeout;
+	}
+	/**
+	 * @param timeout milliseconds to wait for connection and response of
+	 *                coordinator
+	 */
+	public void setTimeout(int timeout)
+	{
+		this.timeout = timeout;
+	}
+	/**
+	 * @return id, which was assigned by coordinator, or -1 when worker is not
+	 *         connected
+	 */
+	public synchronized int getWorkerId()
+	{
+		return this.workerId;
+	}
+	/**
+	 * Evolves island until count of generations is reached, engine is
+	 * terminated or coordinator asks to stop
+	 */
+	public void evolve(int count)
+	{
+		int evolved = 0;
+		while(evolved < count)
+		{
+			final int epoch = Math.min(this.migrationInterval, count - evolved);
+			this.engine.evolve(epoch);
+			evolved += epoch;
+			if(this.engine.isTerminated() || !this.migrate())
+				break;
+		}
+	}
+	/**
+	 * @return false, if coordinator asks to stop evolution
+	 */
+	private synchronized boolean migrate()
+	{
+		final List<Expression> received = new ArrayList<>();
+		final boolean          terminated;
+		try
+		{
+			if(this.socket == null)
+				this.connect();
+			final Expression best = this.engine.getBestSyntaxTree();
+			this.out.writeDouble(this.engine.getBestFitness());
+			this.writer.write(best);
+			this.out.flush();
+
+			terminated = this.in.readBoolean();
+			final int count = this.in.readInt();
+			for(int i = 0; i < count; i++)
+				received.add(this.reader.read());
+		}
+		catch(IOException e)
+		{
+			// coordinator is lost, island evolves in isolation
+			this.disconnect();
+			return true;
+		}
+		this.engine.immigrate(received);
+		return !terminated;
+	}
+	private void connect() throws IOException
+	{
+		final Socket socket = new Socket();
+		try
+		{
+			socket.connect(this.coordinator, this.timeout);
+			socket.setSoTimeout(this.timeout);
+			socket.setTcpNoDelay(true);
+			this.socket = socket;
+			this.in     = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			this.out    = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			this.reader = new ExpressionReader(this.engine.getGrammar(), this.in);
+			this.writer = new ExpressionWriter(this.engine.getGrammar(), this.out);
+
+			this.out.writeInt(IslandCoordinator.MAGIC);
+			this.out.writeInt(IslandCoordinator.VERSION);
+			this.writer.writeHeader();
+			this.out.flush();
+			this.workerId = this.in.readInt();
+		}
+		catch(IOException e)
+		{
+			socket.close();
+			throw e;
+		}
+	}
+	private void disconnect()
+	{
+		if(this.socket != null)
+		{
+			try
+			{
+				this.socket.close();
+			}
+			catch(IOException e)
+			{
+				// connection is lost anyway
+			}
+		}
+		this.socket   = null;
+		this.in       = null;
+		this.out      = null;
+		this.reader   = null;
+		this.writer   = null;
+		this.workerId = -1;
+	}
+	/**
+	 * Closes connection, so coordinator removes this island from topology
+	 */
+	@Override
+	public synchronized void close()
+	{
+		this.disconnect();
+	}
+}
@@ -0,0 +1,271 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.api.Dataset;
+import com.lagodiuk.gp.symbolic.interpreter.AutoDiff;
+import com.lagodiuk.gp.symbolic.interpreter.CompiledExpression;
+import com.lagodiuk.gp.symbolic.interpreter.Context;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionFitness;
+import com.lagodiuk.gp.symbolic.interpreter.LeastSquaresFitness;
+import java.util.Arrays;
+
+/**
+ * Fits coefficients to dataset of {@link LeastSquaresFitness} by
+ * Levenberg-Marquardt method. Jacobian is calculated by automatic
+ * differentiation of compiled program, so coefficients usually converge in a
+ * few iterations.
+ * <p>
+ * Chromosomes, which can not be optimized this way (other fitness functions,
+ * or trees with functions unknown to stack machine), are passed to fallback
+ * optimizer.
+ */
+public class LevenbergMarquardtOptimizer implements CoefficientOptimizer
+{
+	private final static double INITIAL_DAMPING = 1e-3;
+	private final static double MIN_DAMPING     = 1e-12;
+	private final static double MAX_DAMPING     = 1e12;
+	private final static double TOLERANCE       = 1e-12;
+
+	private final int                  iterations;
+	private final CoefficientOptimizer fallback;
+
+	public LevenbergMarquardtOptimizer()
+	{
+		this(GpDefaults.OPTIMIZING_TREE_LM_ITERATIONS, new GaCoefficientOptimizer());
+	}
+	public LevenbergMarquardtOptimizer(int iterations, CoefficientOptimizer fallback)
+	{
+		this.iterations = iterations;
+		this.fallback   = fallback;
+	}
+	@Override
+	public void optimize(GpChromosome chromosome, Context context)
+	{
+		final ExpressionFitness fitness = (chromosome.fitnessFunction instanceof GpFitness)
+			? ((GpFitness)chromosome.fitnessFunction).getExpressionFitness()
+			: null;
+		final Expression         tree    = chromosome.syntaxTree;
+		final CompiledExpression program = tree.compile();
+		if(!(fitness instanceof LeastSquaresFitness) || program.hasCalls())
+		{
+			this.fallback.optimize(chromosome, context);
+			return;
+		}
+		if(program.getConstantsCount() == 0)
+			return;
+
+		final double[] optimized = this.fit(program, ((LeastSquaresFitness)fitness).getSample(), context);
+		chromosome.syntaxTree = tree.withCoefficientsOfTree(optimized);
+	}
+	/**
+	 * @return optimized values of constants of program
+	 */
+	double[] fit(CompiledExpression program, Dataset dataset, Context context)
+	{
+		final Problem  problem = new Problem(program, dataset, context);
+		final int      n       = program.getConstantsCount();
+		final double[] jtj     = new double[n * n];
+		final double[] jtr     = new double[n];
+		final double[] matrix  = new double[n * n];
+		final double[] delta   = new double[n];
+
+		double[] coefficients = program.getConstants();
+		double   error        = problem.sumOfSquares(coefficients);
+		double   damping      = INITIAL_DAMPING;
+		for(int iteration = 0; iteration < this.iterations; iteration++)
+		{
+			if(!problem.normalEquations(coefficients, jtj, jtr))
+				break;
+
+			boolean improved = false;
+			while(!improved && damping < MAX_DAMPING)
+			{
+				System.arraycopy(jtj, 0, matrix, 0, matrix.length);
+				for(int i = 0; i < n; i++)
+					matrix[(i * n) + i] += damping * Math.max(jtj[(i * n) + i], TOLERANCE);
+
+				if(solve(matrix, jtr, delta, n))
+				{
+					final double[] candidate = new double[n];
+					for(int i = 0; i < n; i++)
+						candidate[i] = coefficients[i] + delta[i];
+					final double candidateError = problem.sumOfSquares(candidate);
+					if(candidateError < error)
+					{
+						final double previousError = error;
+						coefficients = candidate;
+						error        = candidateError;
+						damping      = Math.max(damping / 10, MIN_DAMPING);
+						improved     = true;
+						if(previousError - error <= TOLERANCE * previousError)
+							return coefficients;
+						continue;
+					}
+				}
+				damping *= 10;
+			}
+			if(!improved)
+				break;
+		}
+		return coefficients;
+	}
+	/**
+	 * Solves system of linear equations by Gaussian elimination with partial
+	 * pivoting (matrix is destroyed)
+	 *
+	 * @return false, when matrix is singular
+	 */
+	private static boolean solve(double[] matrix, double[] rightSide, double[] result, int n)
+	{
+		final double[] b = rightSide.clone();
+		for(int col = 0; col < n; col++)
+		{
+			int pivot = col;
+			for(int row = col + 1; row < n; row++)
+				if(Math.abs(matrix[(row * n) + col]) > Math.abs(matrix[(pivot * n) + col]))
+					pivot = row;
+			final double pivotValue = matrix[(pivot * n) + col];
+			if(!(Math.abs(pivotValue) > Double.MIN_NORMAL))
+				return false;
+			if(pivot != col)
+			{
+				for(int k = 0; k < n; k++)
+				{
+					final double tmp = matrix[(col * n) + k];
+					matrix[(col * n) + k]   = matrix[(pivot * n) + k];
+					matrix[(pivot * n) + k] = tmp;
+				}
+				final double tmp = b[col];
+				b[col]   = b[pivot];
+				b[pivot] = tmp;
+			}
+			for(int row = col + 1; row < n; row++)
+			{
+				final double factor = matrix[(row * n) + col] / pivotValue;
+				if(factor != 0)
+				{
+					for(int k = col; k < n; k++)
+						matrix[(row * n) + k] -= factor * matrix[(col * n) + k];
+					b[row] -= factor * b[col];
+				}
+			}
+		}
+		for(int row = n - 1; row >= 0; row--)
+		{
+			double sum = b[row];
+			for(int k = row + 1; k < n; k++)
+				sum -= matrix[(row * n) + k] * result[k];
+			result[row] = sum / matrix[(row * n) + row];
+			if(!Double.isFinite(result[row]))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Residuals of program over rows of dataset
+	 */
+	private static class Problem
+	{
+		private final CompiledExpression program;
+		private final AutoDiff           autoDiff;
+		private final Dataset            dataset;
+		private final Context            context;
+		private final double[][]         columns;
+		private final double[]           values;
+		private final double[]           stack;
+		private final double[]           derivatives;
+
+		Problem(CompiledExpression program, Dataset dataset, Context context)
+		{
+			this.program     = program;
+			this.autoDiff    = new AutoDiff(program);
+			this.dataset     = dataset;
+			this.context     = context;
+			this.columns     = new double[program.getVariablesCount()][];
+			this.values      = new double[program.getVariablesCount()];
+			this.stack       = new double[program.getMaxStackSize()];
+			this.derivatives = new double[program.getConstantsCount()];
+			for(int i = 0; i < this.columns.length; i++)
+			{
+				this.columns[i] = dataset.getColumn(program.getVariable(i));
+				if(this.columns[i] == null)
+					// variable is not defined by training set
+					this.values[i] = context.lookupVariable(program.getVariableSlot(i, context));
+			}
+		}
+		private void loadRow(int row)
+		{
+			for(int i = 0; i < this.columns.length; i++)
+				if(this.columns[i] != null)
+					this.values[i] = this.columns[i][row];
+		}
+		/**
+		 * @return sum of squared residuals, or infinity when it is not a number
+		 */
+		double sumOfSquares(double[] coefficients)
+		{
+			double sum = 0.0;
+			for(int row = 0; row < this.dataset.getRowsCount(); row++)
+			{
+				this.loadRow(row);
+				final double residual = this.dataset.getTargetValue(row)
+					- this.program.eval(this.values, coefficients, this.stack, this.context);
+				sum += residual * residual;
+			}
+			return Double.isNaN(sum) ? Double.POSITIVE_INFINITY : sum;
+		}
+		/**
+		 * Accumulates J'J and J'r, where J is jacobian of program by coefficients
+		 *
+		 * @return false, when they are not finite
+		 */
+		boolean normalEquations(double[] coefficients, double[] jtj, double[] jtr)
+		{
+			final int      n = coefficients.length;
+			final double[] g = this.derivatives;
+			Arrays.fill(jtj, 0.0);
+			Arrays.fill(jtr, 0.0);
+			for(int row = 0; row < this.dataset.getRowsCount(); row++)
+			{
+				this.loadRow(row);
+				final double residual = this.dataset.getTargetValue(row)
+					- this.autoDiff.eval(this.values, coefficients, null, g);
+				for(int i = 0; i < n; i++)
+				{
+					if(g[i] == 0)
+						continue;
+					jtr[i] += g[i] * residual;
+					for(int j = 0; j <= i; j++)
+						jtj[(i * n) + j] += g[i] * g[j];
+				}
+			}
+			for(int i = 0; i < n; i++)
+			{
+				if(!Double.isFinite(jtr[i]))
+					return false;
+				for(int j = 0; j < i; j++)
+					jtj[(j * n) + i] = jtj[(i * n) + j];
+			}
+			for(double value : jtj)
+				if(!Double.isFinite(value))
+					return false;
+			return true;
+		}
+	}
+}
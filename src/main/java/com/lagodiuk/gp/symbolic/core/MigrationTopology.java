@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+/**
+ * Islands, which receive the best chromosome of each island of
+ * {@link IslandEngine} after each epoch of migration
+ */
+public enum MigrationTopology
+{
+	/**
+	 * Island i sends migrant to island i + 1 (and the last one to the first
+	 * one), so good trees spread slowly and islands stay diverse
+	 */
+	RING,
+	/**
+	 * Each island sends migrant to all other islands
+	 */
+	FULLY_CONNECTED;
+}
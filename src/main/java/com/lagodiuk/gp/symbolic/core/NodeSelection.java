@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+/**
+ * Choice of node of syntax tree, which is replaced by crossover or changed
+ * by mutation
+ */
+public enum NodeSelection
+{
+	/**
+	 * Each node is chosen with the same probability, so leaves (which are
+	 * about a half of nodes) are chosen most often
+	 */
+	UNIFORM,
+	/**
+	 * Koza's selection: node with childs is chosen with probability 0.9 and
+	 * leaf - with probability 0.1, so crossover exchanges larger building
+	 * blocks
+	 */
+	KOZA;
+}
@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+/**
+ * Preference of smaller syntax trees by selection
+ */
+public enum ParsimonyPressure
+{
+	/**
+	 * Chromosomes are ranked only by fitness
+	 */
+	NONE,
+	/**
+	 * Fitness of chromosome is increased by size of syntax tree, multiplied
+	 * by parsimony coefficient (see
+	 * {@link SymbolicRegressionEngine#setParsimonyCoefficient(double)}), so
+	 * larger tree survives only when it fits data better by more than the
+	 * coefficient per each additional node.
+	 */
+	LINEAR;
+}
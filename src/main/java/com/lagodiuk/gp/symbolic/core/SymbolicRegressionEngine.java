@@ -29,28 +29,111 @@ import com.lagodiuk.gp.symbolic.api.SymbolicRegressionIterationListener;
 import com.lagodiuk.gp.symbolic.interpreter.Context;
 import com.lagodiuk.gp.symbolic.interpreter.Expression;
 import com.lagodiuk.gp.symbolic.interpreter.ExpressionFitness;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import com.lagodiuk.gp.symbolic.interpreter.SubsampledFitness;
 import com.lagodiuk.gp.symbolic.interpreter.SyntaxTreeUtils;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.IntSummaryStatistics;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 public class SymbolicRegressionEngine implements IterationListener<GpChromosome, Double>
 {
-	private final GpFitness                              fitnessFunc;
-	private final GeneticAlgorithm<GpChromosome, Double> environment;
-	private final Context                                context;
-	private final ExpressionFitness                      expressionFitness;
+	private final    GpFitness                              fitnessFunc;
+	private final    GeneticAlgorithm<GpChromosome, Double> environment;
+	private final    Grammar                                grammar;
+	private final    Context                                context;
+	private final    ExpressionFitness                      expressionFitness;
+	private volatile boolean                                terminated;
+	private          int                                    iterationOffset;
+	private          int                                    parentSurviveCount;
+	private          CheckpointWriter                       checkpointWriter;
+	// seeds of random generators of genetic operators and of evaluating threads
+	private          SplittableRandom                       seeds;
+	private volatile Expression                             bestTree;
+	private volatile double                                 bestFitness;
+	private          long                                   sampleRevision;
+	private volatile boolean                                sharedSubsample;
+	private          long                                   cutoffRevision;
+	private volatile boolean                                fitnessCutoff = true;
 
 	public SymbolicRegressionEngine(ExpressionFitness fitness, Collection<String> variables, List<? extends Function> baseFunctions)
+	{
+		this(fitness, new Grammar(baseFunctions, variables));
+	}
+	/**
+	 * @param grammar configuration, which can be shared with other engines
+	 */
+	public SymbolicRegressionEngine(ExpressionFitness fitness, Grammar grammar)
+	{
+		this(fitness, grammar, new SplittableRandom().nextLong());
+	}
+	/**
+	 * @param seed seed of random choices of initial population and of genetic
+	 *             operators, so the same seed repeats them
+	 */
+	public SymbolicRegressionEngine(ExpressionFitness fitness, Grammar grammar, long seed)
+	{
+		this(fitness, grammar, seed, null);
+	}
+	private SymbolicRegressionEngine(ExpressionFitness fitness, Grammar grammar, long seed, Checkpoint checkpoint)
 	{
 		this.expressionFitness = fitness;
-		this.fitnessFunc = new GpFitness(this.expressionFitness);
-		this.context     = new Context(baseFunctions, variables);
-		final Population<GpChromosome, Double> population = createPopulation(SymbolicRegressionDefaults.DEFAULT_POPULATION_SIZE);
+		this.grammar     = grammar;
+		// context of thread, which runs genetic operators
+		this.context     = grammar.newContext();
+		this.fitnessFunc = new GpFitness(this.expressionFitness, this.grammar);
+		this.cutoffRevision = fitness.getRevision();
+		this.setSeed(seed);
+		final Population<GpChromosome, Double> population = (checkpoint != null)
+			? restorePopulation(checkpoint)
+			: createPopulation(SymbolicRegressionDefaults.DEFAULT_POPULATION_SIZE);
 		this.environment = new GeneticAlgorithm<>(population, fitnessFunc);
 		this.environment.addIterationListener((IterationListener<GpChromosome, Double>)this);
-		this.environment.getSettings().setParentSurviveCount(SymbolicRegressionDefaults.INITIAL_PARENT_SURVIVE_COUNT);
+		this.setParentSurviveCount(SymbolicRegressionDefaults.INITIAL_PARENT_SURVIVE_COUNT);
+		// chromosomes are evaluated by executor of fitness function (see setExecutor)
 		this.environment.getSettings().setAsync(false);
+		if(checkpoint != null)
+		{
+			this.iterationOffset = checkpoint.iteration;
+			this.setParentSurviveCount(checkpoint.parentSurviveCount);
+			this.setNodeSelection(checkpoint.nodeSelection);
+			this.setFitnessCacheSize(checkpoint.fitnessCacheSize);
+			this.setMaxTreeDepth(checkpoint.maxTreeDepth);
+			this.setMaxTreeSize(checkpoint.maxTreeSize);
+			this.setParsimonyPressure(checkpoint.parsimonyPressure);
+			this.setParsimonyCoefficient(checkpoint.parsimonyCoefficient);
+		}
+	}
+	/**
+	 * Continues evolution from checkpoint (see {@link #setCheckpoint(Path, int)}).
+	 * Executor, coefficient optimizer and listeners are not stored by
+	 * checkpoint, so they should be configured again.
+	 *
+	 * @param grammar the same functions (in any order) and variables (in the
+	 *                same order), which were used by checkpointed engine
+	 */
+	public static SymbolicRegressionEngine resume(ExpressionFitness fitness, Grammar grammar, Path checkpoint) throws IOException
+	{
+		final Checkpoint snapshot = Checkpoint.read(checkpoint, grammar);
+		return new SymbolicRegressionEngine(fitness, grammar, snapshot.seed, snapshot);
+	}
+	/**
+	 * Generators of genetic operators and of evaluating threads are derived
+	 * from seed of engine
+	 */
+	private void setSeed(long seed)
+	{
+		this.seeds = new SplittableRandom(seed);
+		this.context.setSeed(this.seeds.nextLong());
+		this.fitnessFunc.setSeed(this.seeds.nextLong());
 	}
 	private Population<GpChromosome, Double> createPopulation(int populationSize)
 	{
@@ -62,12 +145,163 @@ public class SymbolicRegressionEngine implements IterationListener<GpChromosome,
 		}
 		return result;
 	}
+	private Population<GpChromosome, Double> restorePopulation(Checkpoint checkpoint)
+	{
+		final Population<GpChromosome, Double> result = new GeneticPopulation<>();
+		for(int i = 0; i < checkpoint.trees.size(); i += 1)
+		{
+			final GpChromosome chromosome = new GpChromosome(this.context, this.fitnessFunc, checkpoint.trees.get(i));
+			if(checkpoint.optimized[i])
+				chromosome.setOptimizedTree(checkpoint.trees.get(i));
+			result.add(chromosome);
+		}
+		return result;
+	}
 	private final List<SymbolicRegressionIterationListener> listeners = new LinkedList<>();
 	@Override
 	public void onNewGeneration(Algorithm<GpChromosome, Double> environment)
 	{
+		if(this.expressionFitness instanceof SubsampledFitness)
+			this.nextSubsample((SubsampledFitness) this.expressionFitness);
+		this.updateCutoff();
 		for(SymbolicRegressionIterationListener sril : listeners)
 			sril.onNewGeneration(this);
+		final CheckpointWriter checkpointWriter = this.checkpointWriter;
+		if(checkpointWriter != null && checkpointWriter.isDue(this.getIteration()))
+			checkpointWriter.submit(this.snapshot());
+	}
+	/**
+	 * Fitness of the worst chromosome of population is the fitness, which
+	 * survived selection, so it becomes cutoff of evaluation of the next
+	 * generation. Chromosomes, which survived selection after partial
+	 * evaluation (e.g. immigrants), are scored completely, so population is
+	 * ranked by exact fitness. Fitness, which was scored by the previous
+	 * revision of training set, doesn't bound fitness by the current one, so
+	 * the next generation is evaluated without cutoff.
+	 * <p>
+	 * Cutoff bounds fitness of trees, so parsimony pressure is excluded from
+	 * it: tree of a single node gets the least pressure, so it survives only
+	 * if its fitness doesn't exceed fitness of the worst chromosome less that
+	 * pressure.
+	 */
+	private void updateCutoff()
+	{
+		if(!this.fitnessCutoff)
+			return;
+		final Population<GpChromosome, Double> population = this.environment.getPopulation();
+		this.fitnessFunc.startGeneration(population.size() - Math.min(this.parentSurviveCount, population.size()));
+		final long revision = this.expressionFitness.getRevision();
+		if(revision != this.cutoffRevision)
+		{
+			this.cutoffRevision = revision;
+			this.fitnessFunc.setCutoff(Double.POSITIVE_INFINITY);
+			return;
+		}
+		final double cutoff   = this.fitnessFunc.getCutoff();
+		boolean      rescored = false;
+		double       worst    = Double.NEGATIVE_INFINITY;
+		for(GpChromosome chromosome : population)
+		{
+			double value = this.environment.getFitness(chromosome);
+			if(this.fitnessFunc.rawFitness(chromosome) > cutoff)
+			{
+				final double fitness = this.fitnessFunc.exactFitness(chromosome);
+				value    = this.fitnessFunc.addParsimony(chromosome.getSyntaxTree(), fitness);
+				rescored = true;
+				chromosome.evaluation = CompletableFuture.completedFuture(fitness);
+			}
+			// NaN is ignored, so it doesn't disable cutoff
+			if(value > worst)
+				worst = value;
+		}
+		if(rescored)
+			// lower bounds of fitness, which are cached by genetic algorithm, are replaced
+			this.environment.clearCache();
+		this.fitnessFunc.setCutoff((worst > Double.NEGATIVE_INFINITY) ? this.fitnessFunc.removeParsimony(1, worst) : Double.POSITIVE_INFINITY);
+	}
+	/**
+	 * Elites and the best tree, which was found so far, are scored on the
+	 * whole training set, before subsample of the next generation is chosen.
+	 * When subsample changes, cached values of fitness are discarded, and
+	 * elites compete in the next generation by their fitness on the whole
+	 * training set.
+	 */
+	private void nextSubsample(SubsampledFitness fitness)
+	{
+		if(!fitness.isSubsampled() && this.bestTree == null)
+			// subsampling was never used
+			return;
+		final List<GpChromosome> elites       = new ArrayList<>(this.parentSurviveCount);
+		final List<Double>       eliteFitness = new ArrayList<>(this.parentSurviveCount);
+		this.scoreElites(fitness, elites, eliteFitness);
+		if(!this.sharedSubsample)
+			fitness.nextSubsample(this.getIteration());
+		this.updateSubsample(fitness, elites, eliteFitness);
+	}
+	/**
+	 * Subsample of fitness, which is shared by islands, is chosen by
+	 * {@link IslandEngine} between epochs, so islands don't change it for
+	 * each other in the middle of generation
+	 */
+	void shareSubsample()
+	{
+		this.sharedSubsample = true;
+	}
+	/**
+	 * Discards values of fitness, which were scored on the previous subsample
+	 * of shared fitness (see {@link #shareSubsample()})
+	 */
+	void syncSubsample()
+	{
+		if(!(this.expressionFitness instanceof SubsampledFitness))
+			return;
+		final SubsampledFitness fitness = (SubsampledFitness) this.expressionFitness;
+		if(fitness.getRevision() == this.sampleRevision)
+			return;
+		final List<GpChromosome> elites       = new ArrayList<>(this.parentSurviveCount);
+		final List<Double>       eliteFitness = new ArrayList<>(this.parentSurviveCount);
+		this.scoreElites(fitness, elites, eliteFitness);
+		this.updateSubsample(fitness, elites, eliteFitness);
+	}
+	private void scoreElites(SubsampledFitness fitness, List<GpChromosome> elites, List<Double> eliteFitness)
+	{
+		final boolean subsampled = fitness.isSubsampled();
+		// population of genetic algorithm is sorted by fitness
+		for(GpChromosome chromosome : this.environment.getPopulation())
+		{
+			if(elites.size() >= this.parentSurviveCount)
+				break;
+			elites.add(chromosome);
+			eliteFitness.add(subsampled
+				? fitness.fullFitness(chromosome.getSyntaxTree(), this.context)
+				: this.fitnessFunc.rawFitness(chromosome));
+		}
+
+		Expression bestTree    = this.bestTree;
+		double     bestFitness = (bestTree != null) ? fitness.fullFitness(bestTree, this.context) : Double.POSITIVE_INFINITY;
+		for(int i = 0; i < elites.size(); i++)
+			if(bestTree == null || eliteFitness.get(i) < bestFitness)
+			{
+				bestTree    = elites.get(i).getSyntaxTree();
+				bestFitness = eliteFitness.get(i);
+			}
+		this.bestTree    = bestTree;
+		this.bestFitness = bestFitness;
+	}
+	private void updateSubsample(SubsampledFitness fitness, List<GpChromosome> elites, List<Double> eliteFitness)
+	{
+		final long revision = fitness.getRevision();
+		if(revision == this.sampleRevision)
+			return;
+		this.sampleRevision = revision;
+		// fitness on the previous subsample doesn't bound fitness on the new one
+		this.fitnessFunc.setCutoff(Double.POSITIVE_INFINITY);
+		this.environment.clearCache();
+		for(GpChromosome chromosome : this.environment.getPopulation())
+			chromosome.evaluation = null;
+		if(fitness.isSubsampled())
+			for(int i = 0; i < elites.size(); i++)
+				elites.get(i).evaluation = CompletableFuture.completedFuture(eliteFitness.get(i));
 	}
 	public void addIterationListener(SymbolicRegressionIterationListener listener)
 	{
@@ -87,40 +321,322 @@ public class SymbolicRegressionEngine implements IterationListener<GpChromosome,
 		this.environment.removeIterationListener(listener);
 	}
 	*/
+	public Grammar getGrammar()
+	{
+		return this.grammar;
+	}
 	public Context getContext()
 	{
 		return this.context;
 	}
+	/**
+	 * @return the best tree of population, or (for {@link SubsampledFitness})
+	 *         the tree with the best fitness on the whole training set, which
+	 *         was found since the start of evolution
+	 */
 	public Expression getBestSyntaxTree()
 	{
-		return this.environment.getBest().getSyntaxTree();
+		final Expression bestTree = this.bestTree;
+		return (bestTree != null) ? bestTree : this.environment.getBest().getSyntaxTree();
 	}
+	/**
+	 * @return fitness of {@link #getBestSyntaxTree()}
+	 */
+	public double getBestFitness()
+	{
+		final Expression bestTree = this.bestTree;
+		return (bestTree != null) ? this.bestFitness : this.fitnessFunc.rawFitness(this.environment.getBest());
+	}
+	/**
+	 * @return fitness on the whole training set (see {@link SubsampledFitness})
+	 */
 	public double getFitness(Expression expression)
 	{
+		if(this.expressionFitness instanceof SubsampledFitness)
+			return ((SubsampledFitness) this.expressionFitness).fullFitness(expression, this.context);
 		return this.expressionFitness.fitness(expression, this.context);
 	}
+	/**
+	 * Fitness of each new chromosome is evaluated by executor (e.g.
+	 * {@link ForkJoinPool} or user-supplied {@link java.util.concurrent.ExecutorService}),
+	 * while the rest of generation is produced. Each evaluating thread uses its
+	 * own copy of context.
+	 *
+	 * @param executor executor, or null for sequential evaluation (default)
+	 */
+	public void setExecutor(Executor executor)
+	{
+		this.fitnessFunc.setExecutor(executor);
+	}
+	public Executor getExecutor()
+	{
+		return this.fitnessFunc.getExecutor();
+	}
+	/**
+	 * By default coefficients are fitted by {@link LevenbergMarquardtOptimizer},
+	 * use {@link GaCoefficientOptimizer} to evolve them by genetic algorithm
+	 */
+	public void setCoefficientOptimizer(CoefficientOptimizer coefficientOptimizer)
+	{
+		this.fitnessFunc.setCoefficientOptimizer(coefficientOptimizer);
+	}
+	public CoefficientOptimizer getCoefficientOptimizer()
+	{
+		return this.fitnessFunc.getCoefficientOptimizer();
+	}
+	/**
+	 * @param nodeSelection choice of nodes by crossover and mutation
+	 *                      ({@link NodeSelection#UNIFORM} by default)
+	 */
+	public void setNodeSelection(NodeSelection nodeSelection)
+	{
+		this.fitnessFunc.setNodeSelection(nodeSelection);
+	}
+	public NodeSelection getNodeSelection()
+	{
+		return this.fitnessFunc.getNodeSelection();
+	}
+	/**
+	 * Crossover and mutation don't produce trees, which are deeper than this
+	 * limit ({@link SymbolicRegressionDefaults#MAX_TREE_DEPTH} by default)
+	 */
+	public void setMaxTreeDepth(int maxTreeDepth)
+	{
+		if(maxTreeDepth < SymbolicRegressionDefaults.INITIAL_TREE_DEPTH)
+			throw new IllegalArgumentException("Max depth of tree must not be less than depth of initial trees, but was " + maxTreeDepth);
+		this.fitnessFunc.setMaxTreeDepth(maxTreeDepth);
+	}
+	public int getMaxTreeDepth()
+	{
+		return this.fitnessFunc.getMaxTreeDepth();
+	}
+	/**
+	 * Crossover and mutation don't produce trees, which have more nodes than
+	 * this limit (not limited by default)
+	 */
+	public void setMaxTreeSize(int maxTreeSize)
+	{
+		if(maxTreeSize < 1)
+			throw new IllegalArgumentException("Max size of tree must be positive, but was " + maxTreeSize);
+		this.fitnessFunc.setMaxTreeSize(maxTreeSize);
+	}
+	public int getMaxTreeSize()
+	{
+		return this.fitnessFunc.getMaxTreeSize();
+	}
+	/**
+	 * Preference of smaller trees by selection ({@link ParsimonyPressure#NONE}
+	 * by default). Fitness of chromosomes (see {@link #getFitness(GpChromosome)})
+	 * includes parsimony, but fitness of trees (see {@link #getFitness(Expression)})
+	 * doesn't.
+	 */
+	public void setParsimonyPressure(ParsimonyPressure parsimonyPressure)
+	{
+		this.fitnessFunc.setParsimonyPressure(parsimonyPressure);
+		this.environment.clearCache();
+	}
+	public ParsimonyPressure getParsimonyPressure()
+	{
+		return this.fitnessFunc.getParsimonyPressure();
+	}
+	/**
+	 * Increase of fitness of chromosome per node of its tree by
+	 * {@link ParsimonyPressure#LINEAR} (in units of fitness, so it should be
+	 * chosen by scale of fitness function)
+	 */
+	public void setParsimonyCoefficient(double parsimonyCoefficient)
+	{
+		if(!(parsimonyCoefficient >= 0) || Double.isInfinite(parsimonyCoefficient))
+			throw new IllegalArgumentException("Parsimony coefficient must be finite and non-negative, but was " + parsimonyCoefficient);
+		this.fitnessFunc.setParsimonyCoefficient(parsimonyCoefficient);
+		this.environment.clearCache();
+	}
+	public double getParsimonyCoefficient()
+	{
+		return this.fitnessFunc.getParsimonyCoefficient();
+	}
+	/**
+	 * Sizes of syntax trees of current population, e.g. for monitoring of
+	 * bloat by iteration listeners
+	 */
+	public IntSummaryStatistics getTreeSizeStatistics()
+	{
+		final IntSummaryStatistics statistics = new IntSummaryStatistics();
+		for(GpChromosome chromosome : this.environment.getPopulation())
+			statistics.accept(chromosome.getSyntaxTree().size());
+		return statistics;
+	}
+	/**
+	 * Cache of fitness of new syntax trees (shared by evaluating threads)
+	 *
+	 * @return cache, or null when caching is disabled
+	 */
+	public FitnessCache getFitnessCache()
+	{
+		return this.fitnessFunc.getCache();
+	}
+	/**
+	 * @param maxSize count of cached trees, 0 disables caching
+	 */
+	public void setFitnessCacheSize(int maxSize)
+	{
+		this.fitnessFunc.setCache((maxSize > 0) ? new FitnessCache(maxSize) : null);
+	}
+	/**
+	 * Most of new chromosomes are worse than the worst chromosome of
+	 * population, so they are evaluated only until their fitness exceeds its
+	 * fitness (see {@link ExpressionFitness#fitness(Expression, Context, double)}).
+	 * Enabled by default.
+	 */
+	public void setFitnessCutoff(boolean enabled)
+	{
+		this.fitnessCutoff = enabled;
+		if(!enabled)
+			this.fitnessFunc.setCutoff(Double.POSITIVE_INFINITY);
+	}
+	public boolean isFitnessCutoff()
+	{
+		return this.fitnessCutoff;
+	}
+	/**
+	 * Shortcut for evaluation by {@link ForkJoinPool#commonPool()}
+	 */
+	public void setParallel(boolean parallel)
+	{
+		this.setExecutor(parallel ? ForkJoinPool.commonPool() : null);
+	}
 	public Settings getSettings()
 	{
 		return this.environment.getSettings();
 	}
+	/**
+	 * Count of the best chromosomes, which survive each generation (it is
+	 * stored by checkpoints, unlike settings, which are changed directly)
+	 */
+	public void setParentSurviveCount(int parentSurviveCount)
+	{
+		this.parentSurviveCount = parentSurviveCount;
+		this.environment.getSettings().setParentSurviveCount(parentSurviveCount);
+	}
+	public int getParentSurviveCount()
+	{
+		return this.parentSurviveCount;
+	}
+	/**
+	 * Snapshot of population, iteration, settings and seed of random
+	 * generators is written each interval of generations by background
+	 * thread, so evolution is not stalled by I/O (see
+	 * {@link #resume(ExpressionFitness, Grammar, Path)})
+	 *
+	 * @param file     checkpoint file, or null to stop checkpointing
+	 * @param interval count of generations between checkpoints
+	 */
+	public void setCheckpoint(Path file, int interval)
+	{
+		if(file != null && interval < 1)
+			throw new IllegalArgumentException("Checkpoint interval must be positive, but was " + interval);
+		if(this.checkpointWriter != null)
+		{
+			this.checkpointWriter.flush();
+			this.checkpointWriter.close();
+		}
+		this.checkpointWriter = (file != null) ? new CheckpointWriter(file, interval, this.grammar) : null;
+	}
+	/**
+	 * Waits until background thread writes all checkpoints
+	 */
+	public void flushCheckpoint()
+	{
+		if(this.checkpointWriter != null)
+			this.checkpointWriter.flush();
+	}
+	/**
+	 * Writes checkpoint by calling thread
+	 */
+	public void saveCheckpoint(Path file) throws IOException
+	{
+		this.snapshot().write(file, this.grammar);
+	}
+	/**
+	 * Generators are seeded again by seed, which is stored by snapshot, so
+	 * resumed engine makes the same random choices as this one
+	 */
+	private Checkpoint snapshot()
+	{
+		final long seed = this.seeds.nextLong();
+		this.setSeed(seed);
+		// trees are persistent, so snapshot can be written while population evolves
+		final List<Expression> trees     = new ArrayList<>();
+		final List<Boolean>    optimized = new ArrayList<>();
+		for(GpChromosome chromosome : this.environment.getPopulation())
+		{
+			trees.add(chromosome.getSyntaxTree());
+			optimized.add(chromosome.isTreeOptimized);
+		}
+		final boolean[] optimizedFlags = new boolean[optimized.size()];
+		for(int i = 0; i < optimizedFlags.length; i++)
+			optimizedFlags[i] = optimized.get(i);
+		final FitnessCache cache = this.fitnessFunc.getCache();
+		return new Checkpoint(this.getIteration(), this.parentSurviveCount, this.getNodeSelection(),
+			(cache != null) ? cache.getMaxSize() : 0, this.getMaxTreeDepth(), this.getMaxTreeSize(),
+			this.getParsimonyPressure(), this.getParsimonyCoefficient(), seed, trees, optimizedFlags);
+	}
 	public void evolve(int count)
 	{
+		this.terminated = false;
 		this.environment.evolve(count);
 	}
 	public void evolve()
 	{
+		this.terminated = false;
 		this.environment.evolve();
 	}
 	public void terminate()
 	{
+		this.terminated = true;
 		this.environment.terminate();
 	}
+	/**
+	 * @return true, if {@link #terminate()} was called since the last start of evolution
+	 */
+	boolean isTerminated()
+	{
+		return this.terminated;
+	}
+	/**
+	 * Replaces the worst chromosomes by optimized trees, which came from other
+	 * populations (trees are persistent, so they are shared with sources).
+	 * Each migrant gets its own slot, counting from the worst chromosome, and
+	 * elites are never replaced, so migrants beyond the rest of population
+	 * are dropped.
+	 */
+	void immigrate(List<Expression> optimizedTrees)
+	{
+		final Population<GpChromosome, Double> population = this.environment.getPopulation();
+		// population is sorted by fitness
+		this.environment.getWorst();
+		final int count = Math.min(optimizedTrees.size(), Math.max(population.size() - this.parentSurviveCount, 1));
+		for(int i = 0; i < count; i++)
+		{
+			final GpChromosome replaced = population.get(population.size() - 1 - i);
+			replaced.awaitEvaluation();
+			replaced.evaluation = null;
+			replaced.setOptimizedTree(optimizedTrees.get(i));
+		}
+		// hash of chromosome depends on its tree, so cached fitness values are stale
+		this.environment.clearCache();
+	}
+	/**
+	 * @return count of generations (including ones, which were evolved
+	 *         before checkpoint of resumed engine)
+	 */
 	public int getIteration()
 	{
-		return this.environment.getIteration();
+		return this.iterationOffset + this.environment.getIteration();
 	}
 	public void resetIterations()
 	{
+		this.iterationOffset = 0;
 		this.environment.resetIterations();
 	}
 	public Population<GpChromosome, Double> getPopulation()
@@ -141,6 +657,9 @@ public class SymbolicRegressionEngine implements IterationListener<GpChromosome,
 	}
 	public void clearCache()
 	{
+		final FitnessCache cache = this.fitnessFunc.getCache();
+		if(cache != null)
+			cache.clear();
 		this.environment.clearCache();
 	}
 }
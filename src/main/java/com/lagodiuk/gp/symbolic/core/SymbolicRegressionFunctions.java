@@ -18,12 +18,13 @@ package com.lagodiuk.gp.symbolic.core;
 import com.lagodiuk.gp.symbolic.api.Function;
 import com.lagodiuk.gp.symbolic.interpreter.Context;
 import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.Opcodes;
 import java.util.LinkedList;
 import java.util.List;
 
 public enum SymbolicRegressionFunctions implements Function
 {
-	CONSTANT(true,  0, 1, null)
+	CONSTANT(true,  0, 1, null, Opcodes.CONSTANT)
 	{
 		@Override
 		public boolean isNumber()
@@ -43,22 +44,33 @@ public enum SymbolicRegressionFunctions implements Function
 				expression.addCoefficient(coefficients.get(startIndex + i));
 		}
 		@Override
+		public void getCoefficients(Expression expression, double[] coefficients, int startIndex)
+		{
+			coefficients[startIndex] = expression.getCoefficient(0);
+		}
+		@Override
+		public void setCoefficients(Expression expression, double[] coefficients, int startIndex)
+		{
+			expression.setCoefficientsOfNode(coefficients[startIndex]);
+		}
+		@Override
 		public double eval(Expression expression, Context context)
 		{
-			return expression.getCoefficientsOfNode().get(0);
+			return expression.getCoefficient(0);
 		}
 		@Override
 		public String print(Expression expression)
 		{
-			double retVal = expression.getCoefficientsOfNode().get(0);
+			double retVal = expression.getCoefficient(0);
 			String retStr = String.format("%s", retVal); // prev. was %s!
 			// String retStr = String.format("%.3g", retVal); // prev. was %s!
-			if(retVal < 0)
+			// sign bit, so -0.0 is parenthesized as well
+			if(Double.doubleToRawLongBits(retVal) < 0)
 				retStr = "(" + retStr + ")";
 			return retStr;
 		}
 	},
-	VARIABLE(false, 0, 0, null)
+	VARIABLE(false, 0, 0, null, Opcodes.VARIABLE)
 	{
 		@Override
 		public boolean isVariable()
@@ -68,7 +80,7 @@ public enum SymbolicRegressionFunctions implements Function
 		@Override
 		public double eval(Expression expression, Context context)
 		{
-			return context.lookupVariable(expression.getVariable());
+			return context.lookupVariable(expression.getVariableSlot(context));
 		}
 		@Override
 		public String print(Expression expression)
@@ -76,7 +88,7 @@ public enum SymbolicRegressionFunctions implements Function
 			return expression.getVariable();
 		}
 	},
-	ADD     (true,  2, 0, "(%s + %s)")
+	ADD     (true,  2, 0, "(%s + %s)", Opcodes.ADD)
 	{
 		@Override
 		public double eval(Expression expression, Context context)
@@ -87,7 +99,7 @@ public enum SymbolicRegressionFunctions implements Function
 			return (left + right);
 		}
 	},
-	SUB     (false, 2, 0, "(%s - %s)")
+	SUB     (false, 2, 0, "(%s - %s)", Opcodes.SUB)
 	{
 		@Override
 		public double eval(Expression expression, Context context)
@@ -98,7 +110,7 @@ public enum SymbolicRegressionFunctions implements Function
 			return (left - right);
 		}
 	},
-	MUL     (true,  2, 0, "(%s * %s)")
+	MUL     (true,  2, 0, "(%s * %s)", Opcodes.MUL)
 	{
 		@Override
 		public double eval(Expression expression, Context context)
@@ -109,7 +121,7 @@ public enum SymbolicRegressionFunctions implements Function
 			return (left * right);
 		}
 	},
-	DIV     (false, 2, 0, "(%s / %s)")
+	DIV     (false, 2, 0, "(%s / %s)", Opcodes.DIV)
 	{
 		@Override
 		public double eval(Expression expression, Context context)
@@ -120,7 +132,7 @@ public enum SymbolicRegressionFunctions implements Function
 			return (left / right);
 		}
 	},
-	SQRT    (true,  1, 0, "sqrt(abs(%s))")
+	SQRT    (true,  1, 0, "sqrt(abs(%s))", Opcodes.SQRT)
 	{
 		@Override
 		public double eval(Expression expression, Context context)
@@ -130,7 +142,7 @@ public enum SymbolicRegressionFunctions implements Function
 			return Math.sqrt(Math.abs(arg));
 		}
 	},
-	POW     (false, 2, 0, "(%s ^ %s)")
+	POW     (false, 2, 0, "(%s ^ %s)", Opcodes.POW)
 	{
 		@Override
 		public double eval(Expression expression, Context context)
@@ -141,9 +153,9 @@ public enum SymbolicRegressionFunctions implements Function
 			return Math.pow(arg1, arg2);
 		}
 	},
-	LN      (true,  1, 0, null)
+	LN      (true,  1, 0, null, Opcodes.LN)
 	{
-		private final double threshold = 1e-5;
+		private final double threshold = Opcodes.LN_THRESHOLD;
 		@Override
 		public double eval(Expression expression, Context context)
 		{
@@ -159,7 +171,7 @@ public enum SymbolicRegressionFunctions implements Function
 			return String.format("ln(abs(%s) + %s)", arg, this.threshold);
 		}
 	},
-	SIN     (true,  1, 0, "sin(%s)")
+	SIN     (true,  1, 0, "sin(%s)", Opcodes.SIN)
 	{
 		@Override
 		public double eval(Expression expression, Context context)
@@ -169,7 +181,7 @@ public enum SymbolicRegressionFunctions implements Function
 			return Math.sin(arg);
 		}
 	},
-	COS     (true,  1, 0, "cos(%s)")
+	COS     (true,  1, 0, "cos(%s)", Opcodes.COS)
 	{
 		@Override
 		public double eval(Expression expression, Context context)
@@ -179,7 +191,7 @@ public enum SymbolicRegressionFunctions implements Function
 			return Math.cos(arg);
 		}
 	},
-	MAX     (true, 2, 0, "max(%s, %s)")
+	MAX     (true, 2, 0, "max(%s, %s)", Opcodes.MAX)
 	{
 		@Override
 		public double eval(Expression expression, Context context)
@@ -190,7 +202,7 @@ public enum SymbolicRegressionFunctions implements Function
 			return Math.max(arg1, arg2);
 		}
 	},
-	MIN     (true, 2, 0, "min(%s, %s)")
+	MIN     (true, 2, 0, "min(%s, %s)", Opcodes.MIN)
 	{
 		@Override
 		public double eval(Expression expression, Context context)
@@ -206,12 +218,14 @@ public enum SymbolicRegressionFunctions implements Function
 	private final int     coefficientsCount;
 	private final int     argumentsCount;
 	private final String  format;
-	private SymbolicRegressionFunctions(boolean commutative, int argumentsCount, int coefficientsCount, String format)
+	private final int     opcode;
+	private SymbolicRegressionFunctions(boolean commutative, int argumentsCount, int coefficientsCount, String format, int opcode)
 	{
 		this.commutative       = commutative;
 		this.argumentsCount    = argumentsCount;
 		this.coefficientsCount = coefficientsCount;
 		this.format            = format;
+		this.opcode            = opcode;
 	}
 	private SymbolicRegressionFunctions()
 	{
@@ -219,6 +233,7 @@ public enum SymbolicRegressionFunctions implements Function
 		this.argumentsCount    = 2;
 		this.coefficientsCount = 0;
 		this.format            = "(%s)";
+		this.opcode            = Opcodes.CALL;
 	}
 	@Override
 	public boolean isNumber()
@@ -246,6 +261,11 @@ public enum SymbolicRegressionFunctions implements Function
 		return this.argumentsCount;
 	}
 	@Override
+	public int opcode()
+	{
+		return this.opcode;
+	}
+	@Override
 	public List<Double> getCoefficients(Expression expression)
 	{
 		return new LinkedList<>();
@@ -256,6 +276,15 @@ public enum SymbolicRegressionFunctions implements Function
 		expression.removeCoefficients();
 	}
 	@Override
+	public void getCoefficients(Expression expression, double[] coefficients, int startIndex)
+	{
+	}
+	@Override
+	public void setCoefficients(Expression expression, double[] coefficients, int startIndex)
+	{
+		expression.removeCoefficients();
+	}
+	@Override
 	public String print(Expression expression)
 	{
 		final List<Expression> childs = expression.getChilds();
@@ -15,6 +15,8 @@
  ******************************************************************************/
 package com.lagodiuk.gp.symbolic.example;
 
+import com.lagodiuk.gp.symbolic.interpreter.AutoDiff;
+import com.lagodiuk.gp.symbolic.interpreter.CompiledExpression;
 import com.lagodiuk.gp.symbolic.interpreter.Context;
 import com.lagodiuk.gp.symbolic.interpreter.Expression;
 import com.lagodiuk.gp.symbolic.interpreter.ExpressionFitness;
@@ -25,7 +27,39 @@ public class Antiderivative implements ExpressionFitness {
 
 	@Override
 	public double fitness(Expression expression, Context context) {
+		CompiledExpression program = expression.compile();
+		if (program.hasCalls()) {
+			return this.fitnessByFiniteDifferences(expression, context);
+		}
+
+		// derivative of expression is calculated exactly, by single pass over the program
+		AutoDiff autoDiff = new AutoDiff(program);
+		double[] constants = program.getConstants();
+		double[] values = new double[program.getVariablesCount()];
+		double[] derivatives = new double[values.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = context.lookupVariable(program.getVariableSlot(i, context));
+		}
+		int indexX = program.indexOfVariable("x");
+
+		double delt = 0;
+		for (double x = -10; x < 10; x += 1) {
+			if (indexX >= 0) {
+				values[indexX] = x;
+			}
+			autoDiff.eval(values, constants, derivatives, null);
+
+			double exprDerivative = (indexX >= 0) ? derivatives[indexX] : 0.0;
+
+			delt += this.sqr(this.targetDerivative(x) - exprDerivative);
+		}
+
+		return delt;
+	}
+
+	private double fitnessByFiniteDifferences(Expression expression, Context context) {
 		double delt = 0;
+		int slotX = context.getVariableSlot("x");
 
 		// To guarantee monotonic of evolved antiderivative
 		// the best approach is to trace each point through intervals of dx
@@ -35,7 +69,7 @@ public class Antiderivative implements ExpressionFitness {
 
 			double target = this.targetDerivative(x);
 
-			double exprDerivative = this.expressionDerivative(expression, context, x);
+			double exprDerivative = this.expressionDerivative(expression, context, slotX, x);
 
 			delt += this.sqr(target - exprDerivative);
 		}
@@ -43,11 +77,11 @@ public class Antiderivative implements ExpressionFitness {
 		return delt;
 	}
 
-	private double expressionDerivative(Expression expression, Context context, double x) {
-		context.setVariable("x", x);
+	private double expressionDerivative(Expression expression, Context context, int slotX, double x) {
+		context.setVariable(slotX, x);
 		double exprX = expression.eval(context);
 
-		context.setVariable("x", x + dx);
+		context.setVariable(slotX, x + dx);
 		double exprXPlusdX = expression.eval(context);
 
 		return (exprXPlusdX - exprX) / dx;
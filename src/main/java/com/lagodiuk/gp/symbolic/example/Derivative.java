@@ -26,11 +26,12 @@ public class Derivative implements ExpressionFitness {
 	@Override
 	public double fitness(Expression expression, Context context) {
 		double delt = 0;
+		int slotX = context.getVariableSlot("x");
 
 		for (int x = -10; x < 11; x++) {
 			double target = (this.f(x + dx) - this.f(x)) / dx;
 
-			context.setVariable("x", x);
+			context.setVariable(slotX, x);
 			double exprVal = expression.eval(context);
 
 			delt += this.sqr(target - exprVal);
@@ -34,14 +34,21 @@ public abstract class DerivativeFitness implements ExpressionFitness
 
 	@Override
 	public double fitness(Expression expression, Context context)
+	{
+		return this.fitness(expression, context, Double.POSITIVE_INFINITY);
+	}
+
+	@Override
+	public double fitness(Expression expression, Context context, double cutoff)
 	{
 		double delt = 0;
+		int    slotX = context.getVariableSlot("x");
 
-		for(double x = this.left; x <= this.right; x += this.step)
+		for(double x = this.left; x <= this.right && delt <= cutoff; x += this.step)
 		{
 			double target = (this.f(x + this.dx) - this.f(x)) / this.dx;
 
-			context.setVariable("x", x);
+			context.setVariable(slotX, x);
 			double exprVal = expression.eval(context);
 
 			delt += this.sqr(target - exprVal);
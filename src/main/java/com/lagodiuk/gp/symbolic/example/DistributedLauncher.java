@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.example;
+
+import com.lagodiuk.gp.symbolic.TabulatedFunctionFitness;
+import com.lagodiuk.gp.symbolic.api.Target;
+import com.lagodiuk.gp.symbolic.core.IslandCoordinator;
+import com.lagodiuk.gp.symbolic.core.IslandWorker;
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionEngine;
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import java.util.Arrays;
+
+/**
+ * Distributed island model for f(x) = x^2 + 10*x (see {@link HelloSymbolicRegression}).
+ * <p>
+ * Start coordinator and several workers (e.g. in different JVMs on the same box):
+ * <pre>
+ * DistributedLauncher coordinator [port]
+ * DistributedLauncher worker [host] [port] [generations]
+ * </pre>
+ */
+public class DistributedLauncher {
+
+	private static final int DEFAULT_PORT = 4321;
+
+	public static void main(String[] args) throws Exception {
+		String mode = (args.length > 0) ? args[0] : "coordinator";
+		if ("worker".equals(mode)) {
+			String host = (args.length > 1) ? args[1] : "localhost";
+			int port = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_PORT;
+			int generations = (args.length > 3) ? Integer.parseInt(args[3]) : 200;
+			runWorker(host, port, generations);
+		} else {
+			int port = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+			runCoordinator(port);
+		}
+	}
+
+	private static void runCoordinator(int port) throws Exception {
+		try (IslandCoordinator coordinator = new IslandCoordinator(createGrammar(), port)) {
+			coordinator.start();
+			System.out.println("Coordinator listens on port " + coordinator.getPort());
+			while (true) {
+				Thread.sleep(1000);
+				Expression best = coordinator.getBestSyntaxTree();
+				System.out.println(String.format("workers = %s \t fit = %s \t func = %s",
+						coordinator.getWorkersCount(), coordinator.getBestFitness(), (best != null) ? best.print() : "-"));
+				// halt condition
+				if (coordinator.getBestFitness() < 5) {
+					coordinator.terminate();
+				}
+			}
+		}
+	}
+
+	private static void runWorker(String host, int port, int generations) {
+		TabulatedFunctionFitness fitness =
+				new TabulatedFunctionFitness(
+						new Target().when("x", 0).targetIs(0),
+						new Target().when("x", 1).targetIs(11),
+						new Target().when("x", 2).targetIs(24),
+						new Target().when("x", 3).targetIs(39),
+						new Target().when("x", 4).targetIs(56),
+						new Target().when("x", 5).targetIs(75),
+						new Target().when("x", 6).targetIs(96));
+
+		SymbolicRegressionEngine engine = new SymbolicRegressionEngine(fitness, createGrammar());
+		engine.addIterationListener((sre) -> {
+			Expression bestSyntaxTree = sre.getBestSyntaxTree();
+			System.out.println(String.format("iter = %s \t fit = %s \t func = %s", sre.getIteration(), sre.getFitness(bestSyntaxTree), bestSyntaxTree.print()));
+		});
+
+		try (IslandWorker worker = new IslandWorker(engine, host, port)) {
+			worker.evolve(generations);
+		}
+	}
+
+	/**
+	 * Coordinator and all workers must use the same functions and variables
+	 * (in the same order)
+	 */
+	private static Grammar createGrammar() {
+		return new Grammar(
+				Arrays.asList(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.SUB, SymbolicRegressionFunctions.MUL,
+						SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT),
+				Arrays.asList("x"));
+	}
+}
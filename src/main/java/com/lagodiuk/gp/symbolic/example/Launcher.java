@@ -34,9 +34,10 @@ public class Launcher
 		public double fitness(Expression expression, Context context)
 		{
 			double delt = 0;
+			int    slotX = context.getVariableSlot("x");
 			for(int i = -20; i < 20; i++)
 			{
-				context.setVariable("x", i);
+				context.setVariable(slotX, i);
 				double target = (i * i * i * 5) + i + 10;
 				// double target = ((((3 * i * i * i) - (i * i * 7)) + (i * 10)) -
 				// 35) * i;
@@ -58,12 +59,14 @@ public class Launcher
 		public double fitness(Expression expression, Context context)
 		{
 			double delt = 0;
+			int    slotX = context.getVariableSlot("x");
+			int    slotY = context.getVariableSlot("y");
 			for(int x = -10; x < 10; x += 2)
 			{
-				context.setVariable("x", x);
+				context.setVariable(slotX, x);
 				for(int y = -10; y < 10; y += 2)
 				{
-					context.setVariable("y", y);
+					context.setVariable(slotY, y);
 					// double target = (x * 5) + (y * (y - 4));
 					// double target = x + y;
 					// double target = (x * 5) + (y * (y - 4)) + (x * y);
@@ -95,7 +98,7 @@ public class Launcher
 
 			if(Double.compare(fit, prevFitValue) != 0)
 				System.out.println("Func = " + best.print());
-			System.out.println(String.format("%s \t %s", engine.getIteration(), fit));
+			System.out.println(String.format("%s \t %s \t size %.1f", engine.getIteration(), fit, engine.getTreeSizeStatistics().getAverage()));
 			prevFitValue = fit;
 			if(fit < 10)
 				engine.terminate();
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.example;
+
+import com.lagodiuk.gp.symbolic.TabulatedFunctionFitness;
+import com.lagodiuk.gp.symbolic.api.Dataset;
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionEngine;
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures scaling of parallel fitness evaluation: the same count of
+ * generations is evolved sequentially and by thread pools of growing size.
+ * <p>
+ * Usage: ParallelBenchmark [generations] [rows]
+ */
+public class ParallelBenchmark {
+
+	public static void main(String[] args) {
+		int generations = (args.length > 0) ? Integer.parseInt(args[0]) : 100;
+		int rows        = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(createDataset(rows));
+
+		// warm up
+		run(fitness, generations / 10, null);
+
+		long sequential = run(fitness, generations, null);
+		System.out.println(String.format("threads = %s \t time = %s ms \t speedup = %.2f", "seq", sequential, 1.0));
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		for (int threads = 1; threads <= processors; threads *= 2) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				long time = run(fitness, generations, executor);
+				System.out.println(String.format("threads = %s \t time = %s ms \t speedup = %.2f", threads, time, (double) sequential / time));
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+
+	private static long run(TabulatedFunctionFitness fitness, int generations, ExecutorService executor) {
+		SymbolicRegressionEngine engine =
+				new SymbolicRegressionEngine(
+						fitness,
+						fitness.getDataset().getVariables(),
+						Arrays.asList(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.SUB, SymbolicRegressionFunctions.MUL,
+								SymbolicRegressionFunctions.SIN, SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT));
+		engine.setExecutor(executor);
+
+		long start = System.nanoTime();
+		engine.evolve(generations);
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	/**
+	 * Samples of f(x, y) = x^2 + sin(3 * y) - 2 * x * y
+	 */
+	private static Dataset createDataset(int rows) {
+		Dataset.Builder builder = new Dataset.Builder(Arrays.asList("x", "y"), rows);
+		double[] values = new double[2];
+		for (int i = 0; i < rows; i++) {
+			double x = -5 + ((10.0 * i) / rows);
+			double y = Math.cos(i);
+			values[0] = x;
+			values[1] = y;
+			builder.addRow(values, (x * x) + Math.sin(3 * y) - (2 * x * y));
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,325 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import java.util.Arrays;
+
+/**
+ * Automatic differentiation of compiled program: single evaluation gives
+ * value of program together with its partial derivatives by each variable
+ * and by each coefficient.
+ * <p>
+ * {@link Mode#FORWARD} carries vector of derivatives with each value on the
+ * stack, {@link Mode#REVERSE} records values of all instructions and then
+ * propagates adjoints back from the result, so its cost does not depend on
+ * count of derivatives. Both modes support every function, which has an
+ * opcode of stack machine.
+ * <p>
+ * Instance holds buffers of evaluation, so it is not thread-safe.
+ */
+public final class AutoDiff
+{
+	public enum Mode
+	{
+		FORWARD,
+		REVERSE
+	}
+
+	private final CompiledExpression program;
+	private final Mode               mode;
+	private final int                variablesCount;
+	private final int                constantsCount;
+	// reverse mode: positions of arguments and recorded values of each instruction
+	private final int[]              leftArguments;
+	private final int[]              rightArguments;
+	private final double[]           results;
+	private final double[]           adjoints;
+	// forward mode: stack of values with derivatives by variables followed by coefficients
+	private final double[]           stack;
+	private final double[][]         tangents;
+
+	public AutoDiff(CompiledExpression program)
+	{
+		this(program, Mode.REVERSE);
+	}
+	public AutoDiff(CompiledExpression program, Mode mode)
+	{
+		if(program.hasCalls())
+			throw new UnsupportedOperationException("Differentiation of program with CALL instructions");
+		this.program        = program;
+		this.mode           = mode;
+		this.variablesCount = program.getVariablesCount();
+		this.constantsCount = program.getConstantsCount();
+		if(mode == Mode.REVERSE)
+		{
+			final int size = program.size();
+			this.leftArguments  = new int[size];
+			this.rightArguments = new int[size];
+			this.results        = new double[size];
+			this.adjoints       = new double[size];
+			this.stack          = null;
+			this.tangents       = null;
+			this.linkArguments();
+		}
+		else
+		{
+			this.leftArguments  = null;
+			this.rightArguments = null;
+			this.results        = null;
+			this.adjoints       = null;
+			this.stack          = new double[program.getMaxStackSize()];
+			this.tangents       = new double[program.getMaxStackSize()][this.variablesCount + this.constantsCount];
+		}
+	}
+	private void linkArguments()
+	{
+		final int[] positions = new int[this.program.getMaxStackSize()];
+		int top = -1;
+		for(int pc = 0; pc < this.program.size(); pc++)
+		{
+			final int arity = arity(this.program.getOpcode(pc));
+			if(arity == 2)
+			{
+				this.rightArguments[pc] = positions[top--];
+				this.leftArguments[pc]  = positions[top--];
+			}
+			else if(arity == 1)
+				this.leftArguments[pc] = positions[top--];
+			positions[++top] = pc;
+		}
+	}
+	public CompiledExpression getProgram()
+	{
+		return this.program;
+	}
+	public Mode getMode()
+	{
+		return this.mode;
+	}
+	/**
+	 * @param values               values of variables, in order of {@link CompiledExpression#getVariables()}
+	 * @param constants            coefficients, in order of {@link CompiledExpression#getConstants()}
+	 * @param variableDerivatives  receives derivatives by each variable (can be null)
+	 * @param constantDerivatives  receives derivatives by each coefficient (can be null)
+	 * @return value of program
+	 */
+	public double eval(double[] values, double[] constants, double[] variableDerivatives, double[] constantDerivatives)
+	{
+		return (this.mode == Mode.REVERSE)
+			? this.reverse(values, constants, variableDerivatives, constantDerivatives)
+			: this.forward(values, constants, variableDerivatives, constantDerivatives);
+	}
+	private double reverse(double[] values, double[] constants, double[] variableDerivatives, double[] constantDerivatives)
+	{
+		final CompiledExpression program  = this.program;
+		final double[]           results  = this.results;
+		final double[]           adjoints = this.adjoints;
+		final int[]              left     = this.leftArguments;
+		final int[]              right    = this.rightArguments;
+		final int                last     = program.size() - 1;
+
+		for(int pc = 0; pc <= last; pc++)
+		{
+			final int opcode = program.getOpcode(pc);
+			switch(opcode)
+			{
+				case Opcodes.CONSTANT:
+					results[pc] = constants[program.getOperand(pc)];
+					break;
+				case Opcodes.VARIABLE:
+					results[pc] = values[program.getOperand(pc)];
+					break;
+				default:
+					results[pc] = apply(opcode, results[left[pc]], (arity(opcode) == 2) ? results[right[pc]] : 0.0);
+					break;
+			}
+		}
+
+		if(variableDerivatives != null)
+			Arrays.fill(variableDerivatives, 0, this.variablesCount, 0.0);
+		if(constantDerivatives != null)
+			Arrays.fill(constantDerivatives, 0, this.constantsCount, 0.0);
+		Arrays.fill(adjoints, 0.0);
+		adjoints[last] = 1.0;
+		for(int pc = last; pc >= 0; pc--)
+		{
+			final double adjoint = adjoints[pc];
+			if(adjoint == 0)
+				continue;
+			final int opcode = program.getOpcode(pc);
+			switch(opcode)
+			{
+				case Opcodes.CONSTANT:
+					if(constantDerivatives != null)
+						constantDerivatives[program.getOperand(pc)] += adjoint;
+					break;
+				case Opcodes.VARIABLE:
+					if(variableDerivatives != null)
+						variableDerivatives[program.getOperand(pc)] += adjoint;
+					break;
+				default:
+				{
+					final double a = results[left[pc]];
+					final double b = (arity(opcode) == 2) ? results[right[pc]] : 0.0;
+					adjoints[left[pc]] += adjoint * leftPartial(opcode, a, b, results[pc]);
+					if(arity(opcode) == 2)
+						adjoints[right[pc]] += adjoint * rightPartial(opcode, a, b, results[pc]);
+					break;
+				}
+			}
+		}
+		return results[last];
+	}
+	private double forward(double[] values, double[] constants, double[] variableDerivatives, double[] constantDerivatives)
+	{
+		final CompiledExpression program  = this.program;
+		final double[]           stack    = this.stack;
+		final double[][]         tangents = this.tangents;
+		int top = -1;
+		for(int pc = 0; pc < program.size(); pc++)
+		{
+			final int opcode = program.getOpcode(pc);
+			switch(opcode)
+			{
+				case Opcodes.CONSTANT:
+				{
+					top++;
+					final int index = program.getOperand(pc);
+					stack[top] = constants[index];
+					Arrays.fill(tangents[top], 0.0);
+					tangents[top][this.variablesCount + index] = 1.0;
+					break;
+				}
+				case Opcodes.VARIABLE:
+				{
+					top++;
+					final int index = program.getOperand(pc);
+					stack[top] = values[index];
+					Arrays.fill(tangents[top], 0.0);
+					tangents[top][index] = 1.0;
+					break;
+				}
+				default:
+				{
+					if(arity(opcode) == 2)
+					{
+						top--;
+						final double   a  = stack[top];
+						final double   b  = stack[top + 1];
+						final double   r  = apply(opcode, a, b);
+						final double   da = leftPartial(opcode, a, b, r);
+						final double   db = rightPartial(opcode, a, b, r);
+						final double[] ta = tangents[top];
+						final double[] tb = tangents[top + 1];
+						for(int i = 0; i < ta.length; i++)
+							ta[i] = (da * ta[i]) + (db * tb[i]);
+						stack[top] = r;
+					}
+					else
+					{
+						final double   a  = stack[top];
+						final double   r  = apply(opcode, a, 0.0);
+						final double   da = leftPartial(opcode, a, 0.0, r);
+						final double[] ta = tangents[top];
+						for(int i = 0; i < ta.length; i++)
+							ta[i] *= da;
+						stack[top] = r;
+					}
+					break;
+				}
+			}
+		}
+		if(variableDerivatives != null)
+			System.arraycopy(tangents[0], 0, variableDerivatives, 0, this.variablesCount);
+		if(constantDerivatives != null)
+			System.arraycopy(tangents[0], this.variablesCount, constantDerivatives, 0, this.constantsCount);
+		return stack[0];
+	}
+	private static int arity(int opcode)
+	{
+		switch(opcode)
+		{
+			case Opcodes.CONSTANT:
+			case Opcodes.VARIABLE:
+				return 0;
+			case Opcodes.SQRT:
+			case Opcodes.LN:
+			case Opcodes.SIN:
+			case Opcodes.COS:
+				return 1;
+			default:
+				return 2;
+		}
+	}
+	/**
+	 * Same semantics as {@link CompiledExpression#eval(Context)}
+	 */
+	private static double apply(int opcode, double a, double b)
+	{
+		switch(opcode)
+		{
+			case Opcodes.ADD:  return a + b;
+			case Opcodes.SUB:  return a - b;
+			case Opcodes.MUL:  return a * b;
+			case Opcodes.DIV:  return a / b;
+			case Opcodes.POW:  return Math.pow(a, b);
+			case Opcodes.MAX:  return Math.max(a, b);
+			case Opcodes.MIN:  return Math.min(a, b);
+			case Opcodes.SQRT: return Math.sqrt(Math.abs(a));
+			case Opcodes.LN:   return Math.log(Math.abs(a) + Opcodes.LN_THRESHOLD);
+			case Opcodes.SIN:  return Math.sin(a);
+			default:           return Math.cos(a);
+		}
+	}
+	/**
+	 * @return partial derivative of result r = f(a, b) by a
+	 */
+	private static double leftPartial(int opcode, double a, double b, double r)
+	{
+		switch(opcode)
+		{
+			case Opcodes.ADD:
+			case Opcodes.SUB:  return 1.0;
+			case Opcodes.MUL:  return b;
+			case Opcodes.DIV:  return 1.0 / b;
+			case Opcodes.POW:  return b * Math.pow(a, b - 1);
+			case Opcodes.MAX:  return (a >= b) ? 1.0 : 0.0;
+			case Opcodes.MIN:  return (a <= b) ? 1.0 : 0.0;
+			// abs is not differentiable at zero, so its derivative is taken as 0 there
+			case Opcodes.SQRT: return (r > 0) ? Math.signum(a) / (2 * r) : 0.0;
+			case Opcodes.LN:   return Math.signum(a) / (Math.abs(a) + Opcodes.LN_THRESHOLD);
+			case Opcodes.SIN:  return Math.cos(a);
+			default:           return -Math.sin(a);
+		}
+	}
+	/**
+	 * @return partial derivative of result r = f(a, b) by b
+	 */
+	private static double rightPartial(int opcode, double a, double b, double r)
+	{
+		switch(opcode)
+		{
+			case Opcodes.ADD:  return 1.0;
+			case Opcodes.SUB:  return -1.0;
+			case Opcodes.MUL:  return a;
+			case Opcodes.DIV:  return -r / b;
+			// derivative by exponent is defined only for positive base
+			case Opcodes.POW:  return (a > 0) ? r * Math.log(a) : 0.0;
+			case Opcodes.MAX:  return (a >= b) ? 0.0 : 1.0;
+			default:           return (a <= b) ? 0.0 : 1.0;
+		}
+	}
+}
@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Translates postfix program of syntax tree (see {@link CompiledExpression})
+ * into straight-line bytecode of a JVM class, so JIT of JVM compiles it into
+ * native code without dispatch of interpreter. Worth for trees, which are
+ * evaluated a lot (e.g. the best individuals, which are deployed).
+ * <p>
+ * Classes are cached by shape of program: instructions and slots of
+ * variables, but not values of coefficients, which are passed to instance of
+ * class. So trees, which differ only by coefficients, share one class. Each
+ * class is defined by its own class loader, so evicted classes are unloaded.
+ * <p>
+ * Programs with {@link Opcodes#CALL} instructions are not supported. Note,
+ * that HotSpot doesn't compile methods longer than 8000 bytes by default
+ * (about 2000 nodes of tree), so huge trees are better evaluated by columns.
+ */
+public final class BytecodeCompiler
+{
+	private final static String CLASS_NAME     = "com/lagodiuk/gp/symbolic/interpreter/GeneratedExpression";
+	private final static String INTERFACE_NAME = "com/lagodiuk/gp/symbolic/interpreter/BytecodeExpression";
+	private final static String OBJECT_NAME    = "java/lang/Object";
+	private final static String MATH_NAME      = "java/lang/Math";
+	private final static int    MAX_CODE_SIZE  = 0xFFFF;
+
+	private final int                                                   maxSize;
+	private final LinkedHashMap<Shape, Constructor<BytecodeExpression>> classes;
+	private long hits   = 0;
+	private long misses = 0;
+
+	/**
+	 * @param maxSize count of cached classes
+	 */
+	public BytecodeCompiler(int maxSize)
+	{
+		this.maxSize = maxSize;
+		this.classes = new LinkedHashMap<Shape, Constructor<BytecodeExpression>>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Shape, Constructor<BytecodeExpression>> eldest)
+			{
+				return this.size() > BytecodeCompiler.this.maxSize;
+			}
+		};
+	}
+	/**
+	 * @param context resolves slots of variables, so compiled expression is
+	 *                evaluated with values of variables in the same order,
+	 *                as {@link Context#lookupVariable(int)} of context
+	 * @throws UnsupportedOperationException if tree has functions, which are
+	 *                                       unknown to the stack machine
+	 */
+	public BytecodeExpression compile(Expression tree, Context context)
+	{
+		return this.compile(tree.compile(), context);
+	}
+	public BytecodeExpression compile(CompiledExpression program, Context context)
+	{
+		if(program.hasCalls())
+			throw new UnsupportedOperationException("Bytecode compilation of program with CALL instructions");
+
+		final int   size     = program.size();
+		final int[] code     = new int[size];
+		final int[] operands = new int[size];
+		for(int pc = 0; pc < size; pc++)
+		{
+			code[pc]     = program.getOpcode(pc);
+			operands[pc] = program.getOperand(pc);
+			if(code[pc] == Opcodes.VARIABLE)
+				operands[pc] = program.getVariableSlot(operands[pc], context);
+		}
+		final Shape shape = new Shape(code, operands);
+
+		Constructor<BytecodeExpression> constructor;
+		synchronized(this)
+		{
+			constructor = this.classes.get(shape);
+			if(constructor != null)
+				this.hits++;
+			else
+				this.misses++;
+		}
+		if(constructor == null)
+		{
+			// class is generated outside of lock, so racing threads may
+			// generate the same class twice, which is harmless
+			constructor = defineClass(generate(code, operands, program.getMaxStackSize()));
+			synchronized(this)
+			{
+				this.classes.put(shape, constructor);
+			}
+		}
+		try
+		{
+			return constructor.newInstance((Object) program.getConstants().clone());
+		}
+		catch(InstantiationException | IllegalAccessException | InvocationTargetException e)
+		{
+			throw new IllegalStateException("Generated class can't be instantiated", e);
+		}
+	}
+	public synchronized int getCachedClassesCount()
+	{
+		return this.classes.size();
+	}
+	public synchronized long getHits()
+	{
+		return this.hits;
+	}
+	public synchronized long getMisses()
+	{
+		return this.misses;
+	}
+	public synchronized void clear()
+	{
+		this.classes.clear();
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Constructor<BytecodeExpression> defineClass(byte[] bytes)
+	{
+		final Class<?> type = new GeneratedClassLoader(BytecodeExpression.class.getClassLoader()).define(bytes);
+		try
+		{
+			return (Constructor<BytecodeExpression>) type.getConstructor(double[].class);
+		}
+		catch(NoSuchMethodException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	/**
+	 * Class file of:
+	 * <pre>
+	 * public final class GeneratedExpression implements BytecodeExpression {
+	 *     private final double[] constants;
+	 *     public GeneratedExpression(double[] constants) { this.constants = constants; }
+	 *     public double eval(double[] values) { ... }
+	 * }
+	 * </pre>
+	 * Method {@code eval} has no branches, so class file doesn't need frames
+	 * of stack map.
+	 */
+	static byte[] generate(int[] code, int[] operands, int maxStackSize)
+	{
+		final ConstantPool pool = new ConstantPool();
+		final int thisClass     = pool.classRef(CLASS_NAME);
+		final int superClass    = pool.classRef(OBJECT_NAME);
+		final int interfaceRef  = pool.classRef(INTERFACE_NAME);
+		final int constantsName = pool.utf8("constants");
+		final int arrayType     = pool.utf8("[D");
+		final int constantsRef  = pool.memberRef(9, CLASS_NAME, "constants", "[D");
+		final int superInit     = pool.memberRef(10, OBJECT_NAME, "<init>", "()V");
+		final int initName      = pool.utf8("<init>");
+		final int initType      = pool.utf8("([D)V");
+		final int evalName      = pool.utf8("eval");
+		final int evalType      = pool.utf8("([D)D");
+		final int codeName      = pool.utf8("Code");
+
+		final ByteArrayOutputStream init = new ByteArrayOutputStream();
+		init.write(0x2A);                  // aload_0
+		init.write(0xB7);                  // invokespecial Object.<init>
+		writeShort(init, superInit);
+		init.write(0x2A);                  // aload_0
+		init.write(0x2B);                  // aload_1
+		init.write(0xB5);                  // putfield constants
+		writeShort(init, constantsRef);
+		init.write(0xB1);                  // return
+
+		final ByteArrayOutputStream eval = new ByteArrayOutputStream();
+		eval.write(0x2A);                  // aload_0
+		eval.write(0xB4);                  // getfield constants
+		writeShort(eval, constantsRef);
+		eval.write(0x4D);                  // astore_2
+		for(int pc = 0; pc < code.length; pc++)
+			switch(code[pc])
+			{
+				case Opcodes.CONSTANT:
+					eval.write(0x2C);      // aload_2
+					pushInt(eval, pool, operands[pc]);
+					eval.write(0x31);      // daload
+					break;
+				case Opcodes.VARIABLE:
+					eval.write(0x2B);      // aload_1
+					pushInt(eval, pool, operands[pc]);
+					eval.write(0x31);      // daload
+					break;
+				case Opcodes.ADD:
+					eval.write(0x63);      // dadd
+					break;
+				case Opcodes.SUB:
+					eval.write(0x67);      // dsub
+					break;
+				case Opcodes.MUL:
+					eval.write(0x6B);      // dmul
+					break;
+				case Opcodes.DIV:
+					eval.write(0x6F);      // ddiv
+					break;
+				case Opcodes.POW:
+					invokeMath(eval, pool, "pow", "(DD)D");
+					break;
+				case Opcodes.MAX:
+					invokeMath(eval, pool, "max", "(DD)D");
+					break;
+				case Opcodes.MIN:
+					invokeMath(eval, pool, "min", "(DD)D");
+					break;
+				case Opcodes.SQRT:
+					invokeMath(eval, pool, "abs", "(D)D");
+					invokeMath(eval, pool, "sqrt", "(D)D");
+					break;
+				case Opcodes.LN:
+					invokeMath(eval, pool, "abs", "(D)D");
+					eval.write(0x14);      // ldc2_w
+					writeShort(eval, pool.doubleConstant(Opcodes.LN_THRESHOLD));
+					eval.write(0x63);      // dadd
+					invokeMath(eval, pool, "log", "(D)D");
+					break;
+				case Opcodes.SIN:
+					invokeMath(eval, pool, "sin", "(D)D");
+					break;
+				case Opcodes.COS:
+					invokeMath(eval, pool, "cos", "(D)D");
+					break;
+				default:
+					throw new UnsupportedOperationException("Bytecode compilation of opcode " + code[pc]);
+			}
+		eval.write(0xAF);                  // dreturn
+		if(eval.size() > MAX_CODE_SIZE)
+			throw new UnsupportedOperationException("Program is too large for bytecode compilation: " + code.length);
+
+		try
+		{
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream      out   = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);             // minor version
+			out.writeShort(52);            // Java 8
+			pool.write(out);
+			out.writeShort(0x0031);        // public final super
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(interfaceRef);
+
+			out.writeShort(1);
+			out.writeShort(0x0012);        // private final
+			out.writeShort(constantsName);
+			out.writeShort(arrayType);
+			out.writeShort(0);
+
+			out.writeShort(2);
+			writeMethod(out, initName, initType, codeName, init.toByteArray(), 2, 2);
+			// each double takes two words, and a reference of array and an
+			// index are pushed on top of stack before loading of operand
+			writeMethod(out, evalName, evalType, codeName, eval.toByteArray(), 2 * maxStackSize + 2, 3);
+			out.writeShort(0);             // attributes
+			return bytes.toByteArray();
+		}
+		catch(IOException e)
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+	private static void writeMethod(DataOutputStream out, int name, int type, int codeName, byte[] code, int maxStack, int maxLocals) throws IOException
+	{
+		out.writeShort(0x0001);            // public
+		out.writeShort(name);
+		out.writeShort(type);
+		out.writeShort(1);
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0);                 // exception table
+		out.writeShort(0);                 // attributes
+	}
+	private static void invokeMath(ByteArrayOutputStream out, ConstantPool pool, String name, String type)
+	{
+		out.write(0xB8);                   // invokestatic
+		writeShort(out, pool.memberRef(10, MATH_NAME, name, type));
+	}
+	private static void pushInt(ByteArrayOutputStream out, ConstantPool pool, int value)
+	{
+		if(value <= 5)
+			out.write(0x03 + value);       // iconst_<value>
+		else if(value <= Byte.MAX_VALUE)
+		{
+			out.write(0x10);               // bipush
+			out.write(value);
+		}
+		else if(value <= Short.MAX_VALUE)
+		{
+			out.write(0x11);               // sipush
+			writeShort(out, value);
+		}
+		else
+		{
+			out.write(0x13);               // ldc_w
+			writeShort(out, pool.intConstant(value));
+		}
+	}
+	private static void writeShort(ByteArrayOutputStream out, int value)
+	{
+		out.write(value >>> 8);
+		out.write(value);
+	}
+
+	/**
+	 * Constant pool of class file, which reuses equal entries
+	 */
+	private static final class ConstantPool
+	{
+		private final ByteArrayOutputStream bytes   = new ByteArrayOutputStream();
+		private final DataOutputStream      out     = new DataOutputStream(this.bytes);
+		private final Map<String, Integer>  indexes = new HashMap<>();
+		private       int                   count   = 1;
+
+		int utf8(String value)
+		{
+			return this.entry("U" + value, 1, value, 1);
+		}
+		int classRef(String name)
+		{
+			final int nameIndex = this.utf8(name);
+			return this.entry("C" + name, 7, nameIndex, 1);
+		}
+		/**
+		 * @param tag 9 for field, 10 for method
+		 */
+		int memberRef(int tag, String owner, String name, String type)
+		{
+			final int ownerIndex       = this.classRef(owner);
+			final int nameIndex        = this.utf8(name);
+			final int typeIndex        = this.utf8(type);
+			final int nameAndTypeIndex = this.entry("N" + name + ":" + type, 12, (nameIndex << 16) | typeIndex, 1);
+			return this.entry(tag + owner + "." + name + ":" + type, tag, (ownerIndex << 16) | nameAndTypeIndex, 1);
+		}
+		int intConstant(int value)
+		{
+			return this.entry("I" + value, 3, value, 1);
+		}
+		int doubleConstant(double value)
+		{
+			// doubles take two entries of pool
+			return this.entry("D" + Double.doubleToRawLongBits(value), 6, value, 2);
+		}
+		private int entry(String key, int tag, Object value, int size)
+		{
+			final Integer existing = this.indexes.get(key);
+			if(existing != null)
+				return existing;
+			try
+			{
+				this.out.writeByte(tag);
+				switch(tag)
+				{
+					case 1:
+						this.out.writeUTF((String) value);
+						break;
+					case 6:
+						this.out.writeDouble((Double) value);
+						break;
+					case 7:
+						this.out.writeShort((Integer) value);
+						break;
+					default:
+						// references are pairs of indexes of two shorts
+						this.out.writeInt((Integer) value);
+						break;
+				}
+			}
+			catch(IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+			final int index = this.count;
+			this.count += size;
+			this.indexes.put(key, index);
+			return index;
+		}
+		void write(DataOutputStream target) throws IOException
+		{
+			target.writeShort(this.count);
+			this.bytes.writeTo(target);
+		}
+	}
+
+	private static final class GeneratedClassLoader extends ClassLoader
+	{
+		GeneratedClassLoader(ClassLoader parent)
+		{
+			super(parent);
+		}
+		Class<?> define(byte[] bytes)
+		{
+			return this.defineClass(CLASS_NAME.replace('/', '.'), bytes, 0, bytes.length);
+		}
+	}
+
+	/**
+	 * Instructions and operands of program, where operands of variables are
+	 * slots of context
+	 */
+	private static final class Shape
+	{
+		private final int[] code;
+		private final int[] operands;
+		private final int   hash;
+
+		Shape(int[] code, int[] operands)
+		{
+			this.code     = code;
+			this.operands = operands;
+			this.hash     = 31 * Arrays.hashCode(code) + Arrays.hashCode(operands);
+		}
+		@Override
+		public int hashCode()
+		{
+			return this.hash;
+		}
+		@Override
+		public boolean equals(Object obj)
+		{
+			if(this == obj)
+				return true;
+			if(!(obj instanceof Shape))
+				return false;
+			final Shape other = (Shape) obj;
+			return this.hash == other.hash && Arrays.equals(this.code, other.code) && Arrays.equals(this.operands, other.operands);
+		}
+	}
+}
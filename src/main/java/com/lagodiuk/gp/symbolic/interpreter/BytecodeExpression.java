@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+/**
+ * Syntax tree, which was compiled into a JVM class by {@link BytecodeCompiler}
+ */
+public interface BytecodeExpression
+{
+	/**
+	 * @param values values of variables, indexed by slots of context, which
+	 *               was used for compilation (see {@link Context#getVariableSlot(String)})
+	 */
+	double eval(double[] values);
+}
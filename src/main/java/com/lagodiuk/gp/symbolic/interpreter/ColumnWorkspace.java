@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+/**
+ * Reusable buffers for {@link CompiledExpression#evalColumns}.
+ * <p>
+ * Workspace is not thread-safe: each evaluating thread needs its own one.
+ */
+public final class ColumnWorkspace
+{
+	private double[][] buffers = new double[0][];
+	private double[][] stack   = new double[0][];
+	private int[]      offsets = new int[0];
+
+	double[][] buffers(int count, int rows)
+	{
+		if(this.buffers.length < count)
+		{
+			final double[][] grown = new double[count][];
+			System.arraycopy(this.buffers, 0, grown, 0, this.buffers.length);
+			this.buffers = grown;
+		}
+		for(int i = 0; i < count; i++)
+			if(this.buffers[i] == null || this.buffers[i].length < rows)
+				this.buffers[i] = new double[rows];
+		return this.buffers;
+	}
+	double[][] stack(int count)
+	{
+		if(this.stack.length < count)
+			this.stack = new double[count][];
+		return this.stack;
+	}
+	int[] offsets(int count)
+	{
+		if(this.offsets.length < count)
+			this.offsets = new int[count];
+		return this.offsets;
+	}
+}
@@ -0,0 +1,453 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.api.Function;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Syntax tree flattened into a postfix program for a stack machine.
+ * <p>
+ * Constant pool holds coefficients of the tree in the same order as
+ * {@link Expression#getCoefficientsOfTree()}. Nodes with functions which are
+ * unknown to the stack machine are kept as {@link Opcodes#CALL} instructions.
+ */
+public final class CompiledExpression
+{
+	private final int[]        code;
+	private final int[]        operands;
+	private final double[]     constants;
+	private final String[]     variables;
+	private final int[]        slots;
+	private final Expression[] calls;
+	private final int          maxStackSize;
+
+	private CompiledExpression(Compiler compiler)
+	{
+		final int size = compiler.code.size();
+		this.code     = new int[size];
+		this.operands = new int[size];
+		for(int i = 0; i < size; i++)
+		{
+			this.code[i]     = compiler.code.get(i);
+			this.operands[i] = compiler.operands.get(i);
+		}
+		this.constants = compiler.constants;
+		this.variables    = compiler.variables.toArray(new String[compiler.variables.size()]);
+		this.slots        = new int[this.variables.length];
+		for(int i = 0; i < this.slots.length; i++)
+			this.slots[i] = compiler.slots.get(i);
+		this.calls        = compiler.calls.toArray(new Expression[compiler.calls.size()]);
+		this.maxStackSize = compiler.maxStackSize;
+	}
+	public static CompiledExpression compile(Expression expression)
+	{
+		final Compiler compiler = new Compiler(expression.getCoefficientsOfTreeCount());
+		compiler.compile(expression);
+		return new CompiledExpression(compiler);
+	}
+	public double eval(Context context)
+	{
+		final double[] values = new double[this.variables.length];
+		for(int i = 0; i < values.length; i++)
+			values[i] = context.lookupVariable(this.getVariableSlot(i, context));
+		return this.eval(values, new double[this.maxStackSize], context);
+	}
+	/**
+	 * Only slots of variables of grammar are kept by the program (just like
+	 * {@link Expression#getVariableSlot(Context)} does), slots of extra
+	 * variables of context are resolved by every call.
+	 */
+	public int getVariableSlot(int index, Context context)
+	{
+		int slot = this.slots[index];
+		if(slot < 0)
+		{
+			slot = context.getVariableSlot(this.variables[index]);
+			if(slot < context.getGrammar().getVariablesCount())
+				this.slots[index] = slot;
+		}
+		return slot;
+	}
+	/**
+	 * @param values values of variables, in order of {@link #getVariables()}
+	 * @param stack  buffer of at least {@link #getMaxStackSize()} elements
+	 * @param context used only by {@link Opcodes#CALL} instructions
+	 */
+	public double eval(double[] values, double[] stack, Context context)
+	{
+		return this.eval(values, this.constants, stack, context);
+	}
+	/**
+	 * Evaluates program with another values of coefficients, so candidate
+	 * coefficients can be scored without modification of the tree.
+	 *
+	 * @param constants coefficients, in order of {@link #getConstants()}
+	 */
+	public double eval(double[] values, double[] constants, double[] stack, Context context)
+	{
+		final int[]    code      = this.code;
+		final int[]    operands  = this.operands;
+		int top = -1;
+		for(int pc = 0; pc < code.length; pc++)
+			switch(code[pc])
+			{
+				case Opcodes.CONSTANT:
+					stack[++top] = constants[operands[pc]];
+					break;
+				case Opcodes.VARIABLE:
+					stack[++top] = values[operands[pc]];
+					break;
+				case Opcodes.ADD:
+					top--;
+					stack[top] = stack[top] + stack[top + 1];
+					break;
+				case Opcodes.SUB:
+					top--;
+					stack[top] = stack[top] - stack[top + 1];
+					break;
+				case Opcodes.MUL:
+					top--;
+					stack[top] = stack[top] * stack[top + 1];
+					break;
+				case Opcodes.DIV:
+					top--;
+					stack[top] = stack[top] / stack[top + 1];
+					break;
+				case Opcodes.POW:
+					top--;
+					stack[top] = Math.pow(stack[top], stack[top + 1]);
+					break;
+				case Opcodes.MAX:
+					top--;
+					stack[top] = Math.max(stack[top], stack[top + 1]);
+					break;
+				case Opcodes.MIN:
+					top--;
+					stack[top] = Math.min(stack[top], stack[top + 1]);
+					break;
+				case Opcodes.SQRT:
+					stack[top] = Math.sqrt(Math.abs(stack[top]));
+					break;
+				case Opcodes.LN:
+					stack[top] = Math.log(Math.abs(stack[top]) + Opcodes.LN_THRESHOLD);
+					break;
+				case Opcodes.SIN:
+					stack[top] = Math.sin(stack[top]);
+					break;
+				case Opcodes.COS:
+					stack[top] = Math.cos(stack[top]);
+					break;
+				default:
+					final Expression node = this.calls[operands[pc]];
+					stack[++top] = node.getFunction().eval(node, context);
+					break;
+			}
+		return stack[0];
+	}
+	/**
+	 * Evaluates each instruction once over whole columns of inputs.
+	 * <p>
+	 * Programs with {@link Opcodes#CALL} instructions are not supported,
+	 * because such nodes can be evaluated only by {@link #eval(Context)}.
+	 *
+	 * @param columns   values of variables, in order of {@link #getVariables()}
+	 * @param rows      count of rows to evaluate
+	 * @param workspace buffers for intermediate columns
+	 * @return column with result, which is owned by workspace (or by caller,
+	 *         when program is a single variable) and must not be modified
+	 */
+	public double[] evalColumns(double[][] columns, int rows, ColumnWorkspace workspace)
+	{
+		return this.evalColumns(columns, rows, this.constants, workspace);
+	}
+	/**
+	 * Column evaluation with another values of coefficients
+	 *
+	 * @param constants coefficients, in order of {@link #getConstants()}
+	 */
+	public double[] evalColumns(double[][] columns, int rows, double[] constants, ColumnWorkspace workspace)
+	{
+		return this.evalColumns(columns, 0, rows, constants, workspace);
+	}
+	/**
+	 * Column evaluation of block of rows, so evaluation can be stopped
+	 * between blocks
+	 *
+	 * @param offset index of the first row of block in columns
+	 * @param rows   count of rows of block
+	 * @return column with result, where element 0 corresponds to row offset
+	 */
+	public double[] evalColumns(double[][] columns, int offset, int rows, double[] constants, ColumnWorkspace workspace)
+	{
+		if(this.hasCalls())
+			throw new UnsupportedOperationException("Column evaluation of program with CALL instructions");
+
+		final double[][] buffers   = workspace.buffers(this.maxStackSize, rows);
+		final double[][] stack     = workspace.stack(this.maxStackSize);
+		final int[]      offsets   = workspace.offsets(this.maxStackSize);
+		final int[]      code      = this.code;
+		final int[]      operands  = this.operands;
+		int top = -1;
+		for(int pc = 0; pc < code.length; pc++)
+		{
+			final int opcode = code[pc];
+			switch(opcode)
+			{
+				case Opcodes.CONSTANT:
+				{
+					top++;
+					Arrays.fill(buffers[top], 0, rows, constants[operands[pc]]);
+					stack[top]   = buffers[top];
+					offsets[top] = 0;
+					break;
+				}
+				case Opcodes.VARIABLE:
+				{
+					top++;
+					stack[top]   = columns[operands[pc]];
+					offsets[top] = offset;
+					break;
+				}
+				case Opcodes.ADD:
+				case Opcodes.SUB:
+				case Opcodes.MUL:
+				case Opcodes.DIV:
+				case Opcodes.POW:
+				case Opcodes.MAX:
+				case Opcodes.MIN:
+				{
+					top--;
+					final double[] left   = stack[top];
+					final double[] right  = stack[top + 1];
+					final double[] result = buffers[top];
+					evalBinary(opcode, left, offsets[top], right, offsets[top + 1], result, rows);
+					stack[top]   = result;
+					offsets[top] = 0;
+					break;
+				}
+				default:
+				{
+					final double[] arg    = stack[top];
+					final double[] result = buffers[top];
+					evalUnary(opcode, arg, offsets[top], result, rows);
+					stack[top]   = result;
+					offsets[top] = 0;
+					break;
+				}
+			}
+		}
+		if(offsets[0] != 0)
+		{
+			// program is a single variable
+			System.arraycopy(stack[0], offsets[0], buffers[0], 0, rows);
+			return buffers[0];
+		}
+		return stack[0];
+	}
+	private static void evalBinary(int opcode, double[] left, int leftOffset, double[] right, int rightOffset, double[] result, int rows)
+	{
+		switch(opcode)
+		{
+			case Opcodes.ADD:
+				for(int i = 0; i < rows; i++)
+					result[i] = left[leftOffset + i] + right[rightOffset + i];
+				break;
+			case Opcodes.SUB:
+				for(int i = 0; i < rows; i++)
+					result[i] = left[leftOffset + i] - right[rightOffset + i];
+				break;
+			case Opcodes.MUL:
+				for(int i = 0; i < rows; i++)
+					result[i] = left[leftOffset + i] * right[rightOffset + i];
+				break;
+			case Opcodes.DIV:
+				for(int i = 0; i < rows; i++)
+					result[i] = left[leftOffset + i] / right[rightOffset + i];
+				break;
+			case Opcodes.POW:
+				for(int i = 0; i < rows; i++)
+					result[i] = Math.pow(left[leftOffset + i], right[rightOffset + i]);
+				break;
+			case Opcodes.MAX:
+				for(int i = 0; i < rows; i++)
+					result[i] = Math.max(left[leftOffset + i], right[rightOffset + i]);
+				break;
+			case Opcodes.MIN:
+				for(int i = 0; i < rows; i++)
+					result[i] = Math.min(left[leftOffset + i], right[rightOffset + i]);
+				break;
+		}
+	}
+	private static void evalUnary(int opcode, double[] arg, int argOffset, double[] result, int rows)
+	{
+		switch(opcode)
+		{
+			case Opcodes.SQRT:
+				for(int i = 0; i < rows; i++)
+					result[i] = Math.sqrt(Math.abs(arg[argOffset + i]));
+				break;
+			case Opcodes.LN:
+				for(int i = 0; i < rows; i++)
+					result[i] = Math.log(Math.abs(arg[argOffset + i]) + Opcodes.LN_THRESHOLD);
+				break;
+			case Opcodes.SIN:
+				for(int i = 0; i < rows; i++)
+					result[i] = Math.sin(arg[argOffset + i]);
+				break;
+			case Opcodes.COS:
+				for(int i = 0; i < rows; i++)
+					result[i] = Math.cos(arg[argOffset + i]);
+				break;
+		}
+	}
+	public String[] getVariables()
+	{
+		return this.variables.clone();
+	}
+	public int getVariablesCount()
+	{
+		return this.variables.length;
+	}
+	public String getVariable(int index)
+	{
+		return this.variables[index];
+	}
+	/**
+	 * @return index of variable in program, or -1 if program does not use it
+	 */
+	public int indexOfVariable(String variable)
+	{
+		for(int i = 0; i < this.variables.length; i++)
+			if(this.variables[i].equals(variable))
+				return i;
+		return -1;
+	}
+	public double[] getConstants()
+	{
+		return this.constants.clone();
+	}
+	public int getConstantsCount()
+	{
+		return this.constants.length;
+	}
+	int getOpcode(int pc)
+	{
+		return this.code[pc];
+	}
+	int getOperand(int pc)
+	{
+		return this.operands[pc];
+	}
+	public int getMaxStackSize()
+	{
+		return this.maxStackSize;
+	}
+	public int size()
+	{
+		return this.code.length;
+	}
+	public boolean hasCalls()
+	{
+		return this.calls.length > 0;
+	}
+
+	private static class Compiler
+	{
+		private final List<Integer>    code      = new ArrayList<>();
+		private final List<Integer>    operands  = new ArrayList<>();
+		private final double[]         constants;
+		private       int              constantsCount = 0;
+		private final List<String>     variables = new ArrayList<>();
+		private final List<Integer>    slots     = new ArrayList<>();
+		private final List<Expression> calls     = new ArrayList<>();
+		private int stackSize    = 0;
+		private int maxStackSize = 0;
+
+		Compiler(int constantsCount)
+		{
+			this.constants = new double[constantsCount];
+		}
+
+		private void compile(Expression node)
+		{
+			final Function function         = node.getFunction();
+			final int      opcode           = function.opcode();
+			final int      coefficientIndex = this.constantsCount;
+			this.addConstants(node);
+
+			final List<Expression> childs    = node.getChilds();
+			final int              arguments = (opcode == Opcodes.CALL) ? 0 : function.argumentsCount();
+			for(int i = 0; i < childs.size(); i++)
+				if(i < arguments)
+					this.compile(childs.get(i));
+				else
+					// not evaluated by the stack machine, but still owns coefficients of the tree
+					this.skip(childs.get(i));
+
+			switch(opcode)
+			{
+				case Opcodes.CONSTANT:
+					this.emit(opcode, coefficientIndex, 0);
+					break;
+				case Opcodes.VARIABLE:
+					this.emit(opcode, this.variableIndex(node), 0);
+					break;
+				case Opcodes.CALL:
+					this.emit(opcode, this.calls.size(), 0);
+					this.calls.add(node);
+					break;
+				default:
+					this.emit(opcode, 0, arguments);
+					break;
+			}
+		}
+		private void skip(Expression node)
+		{
+			this.addConstants(node);
+			for(Expression child : node.getChilds())
+				this.skip(child);
+		}
+		private void addConstants(Expression node)
+		{
+			final Function function = node.getFunction();
+			function.getCoefficients(node, this.constants, this.constantsCount);
+			this.constantsCount += function.coefficientsCount();
+		}
+		private void emit(int opcode, int operand, int arguments)
+		{
+			this.code.add(opcode);
+			this.operands.add(operand);
+			this.stackSize = this.stackSize - arguments + 1;
+			this.maxStackSize = Math.max(this.maxStackSize, this.stackSize);
+		}
+		private int variableIndex(Expression node)
+		{
+			int index = this.variables.indexOf(node.getVariable());
+			if(index < 0)
+			{
+				index = this.variables.size();
+				this.variables.add(node.getVariable());
+				this.slots.add(node.getVariableSlot());
+			}
+			else if(this.slots.get(index) < 0)
+				this.slots.set(index, node.getVariableSlot());
+			return index;
+		}
+	}
+}
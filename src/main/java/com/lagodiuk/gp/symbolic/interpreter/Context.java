@@ -19,13 +19,20 @@ package com.lagodiuk.gp.symbolic.interpreter;
 
 import com.lagodiuk.gp.symbolic.api.Function;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.SplittableRandom;
 
+/**
+ * Evaluation frame over shared {@link Grammar}: values of variables, state of
+ * round-robin selection of functions and random generator.
+ * <p>
+ * Context is not thread-safe - each thread must use its own one.
+ */
 public final class Context
 {
 	private final static double MIN_VALUE          = -50;
@@ -33,34 +40,122 @@ public final class Context
 	private final static double MIN_MUTATION_VALUE = -3;
 	private final static double MAX_MUTATION_VALUE =  3;
 
-	private final Map<String, Double> variables            = new HashMap<>();
-	private final List<Function>      nonTerminalFunctions = new ArrayList<>();
-	private final List<Function>      terminalFunctions    = new ArrayList<>();
+	private final Grammar              grammar;
+	private final Map<String, Integer> extraSlots           = new HashMap<>();
+	private final List<String>         extraVariables       = new ArrayList<>();
+	private       double[]             values;
+	private final List<Function>       nonTerminalFunctions;
+	private       SplittableRandom     random;
 	private       int nextRndFunctionIndx = 0;
 
 	public Context(List<? extends Function> functions, Collection<String> variables)
 	{
-		for(Function func : functions)
-			if(func.argumentsCount() == 0)
-				this.terminalFunctions.add(func);
-			else
-				this.nonTerminalFunctions.add(func);
-		if(this.terminalFunctions.isEmpty())
-			throw new IllegalArgumentException("At least one terminal function must be defined");
-
-		if(variables.isEmpty())
-			throw new IllegalArgumentException("At least one variable must be defined");
-
-		for(String variable : variables)
-			this.setVariable(variable, 0);
+		this(new Grammar(functions, variables));
+	}
+	public Context(Grammar grammar)
+	{
+		this(grammar, new SplittableRandom());
+	}
+	private Context(Grammar grammar, SplittableRandom random)
+	{
+		this.grammar              = grammar;
+		this.values               = new double[grammar.getVariablesCount()];
+		this.nonTerminalFunctions = new ArrayList<>(grammar.getNonTerminalFunctions());
+		this.random               = random;
+	}
+	/**
+	 * Context over the same grammar (with the same values and slots of
+	 * variables), which can be used by another thread
+	 */
+	public Context copy()
+	{
+		final Context copy = new Context(this.grammar, this.random.split());
+		copy.extraSlots.putAll(this.extraSlots);
+		copy.extraVariables.addAll(this.extraVariables);
+		copy.values = this.values.clone();
+		return copy;
+	}
+	public Grammar getGrammar()
+	{
+		return this.grammar;
+	}
+	/**
+	 * Restarts random generator and round-robin selection of functions, so
+	 * the same seed repeats the same random choices
+	 */
+	public void setSeed(long seed)
+	{
+		this.random = new SplittableRandom(seed);
+		this.nonTerminalFunctions.clear();
+		this.nonTerminalFunctions.addAll(this.grammar.getNonTerminalFunctions());
+		this.nextRndFunctionIndx = 0;
+	}
+	/**
+	 * @return random generator of this context, e.g. for genetic operators
+	 */
+	public SplittableRandom getRandom()
+	{
+		return this.random;
+	}
+	/**
+	 * Variables, which are unknown to grammar, are defined (with value 0) in
+	 * this context only - after variables of grammar.
+	 *
+	 * @return slot of variable
+	 */
+	public int defineVariable(String variable)
+	{
+		int slot = this.findVariableSlot(variable);
+		if(slot < 0)
+		{
+			slot = this.getVariablesCount();
+			this.extraSlots.put(variable, slot);
+			this.extraVariables.add(variable);
+			this.values = Arrays.copyOf(this.values, slot + 1);
+		}
+		return slot;
+	}
+	private int findVariableSlot(String variable)
+	{
+		final int slot = this.grammar.getVariableSlot(variable);
+		if(slot >= 0)
+			return slot;
+		final Integer extraSlot = this.extraSlots.get(variable);
+		return (extraSlot != null) ? extraSlot : -1;
+	}
+	public int getVariableSlot(String variable)
+	{
+		final int slot = this.findVariableSlot(variable);
+		if(slot < 0)
+			throw new IllegalArgumentException("Unknown variable " + variable);
+		return slot;
+	}
+	public String getVariableName(int slot)
+	{
+		final int count = this.grammar.getVariablesCount();
+		return (slot < count) ? this.grammar.getVariableName(slot) : this.extraVariables.get(slot - count);
+	}
+	public int getVariablesCount()
+	{
+		return this.grammar.getVariablesCount() + this.extraVariables.size();
+	}
+	public double lookupVariable(int slot)
+	{
+		return this.values[slot];
+	}
+	public void setVariable(int slot, double value)
+	{
+		this.values[slot] = value;
 	}
 	public double lookupVariable(String variable)
 	{
-		return this.variables.get(variable);
+		return this.values[this.getVariableSlot(variable)];
 	}
 	public void setVariable(String variable, double value)
 	{
-		this.variables.put(variable, value);
+		// slot is defined before the array reference is taken, because it may grow values
+		final int slot = this.defineVariable(variable);
+		this.values[slot] = value;
 	}
 	public Function getRandomNonTerminalFunction()
 	{
@@ -76,46 +171,49 @@ public final class Context
 		if(this.nextRndFunctionIndx >= this.nonTerminalFunctions.size())
 		{
 			this.nextRndFunctionIndx = 0;
-			Collections.shuffle(this.nonTerminalFunctions);
+			this.shuffle(this.nonTerminalFunctions);
 		}
 		// round-robin like selection
 		return this.nonTerminalFunctions.get(this.nextRndFunctionIndx++);
 	}
+	private void shuffle(List<Function> functions)
+	{
+		for(int i = functions.size() - 1; i > 0; i--)
+			Collections.swap(functions, i, this.random.nextInt(i + 1));
+	}
 	public Function getRandomTerminalFunction()
 	{
-		final int      index    = ThreadLocalRandom.current().nextInt(this.terminalFunctions.size());
-		final Function function = this.terminalFunctions.get(index);
-		return function;
+		final List<Function> terminalFunctions = this.grammar.getTerminalFunctions();
+		final int            index             = this.random.nextInt(terminalFunctions.size());
+		return terminalFunctions.get(index);
 	}
 	public List<Function> getTerminalFunctions()
 	{
-		return this.terminalFunctions;
+		return this.grammar.getTerminalFunctions();
+	}
+	/**
+	 * @return slot of random variable of grammar
+	 */
+	public int getRandomVariableSlot()
+	{
+		return this.random.nextInt(this.grammar.getVariablesCount());
 	}
 	public String getRandomVariableName()
 	{
-		int index = ThreadLocalRandom.current().nextInt(this.variables.keySet().size());
-		int i = 0;
-		for(String key : this.variables.keySet())
-		{
-			if(i == index)
-				return key;
-			i += 1;
-		}
-		// Unreachable code
-		return this.variables.keySet().iterator().next();
+		return this.grammar.getVariableName(this.getRandomVariableSlot());
 	}
 	public double getRandomValue()
 	{
-		final double random = ThreadLocalRandom.current().nextDouble();
+		final double random = this.random.nextDouble();
 		return MIN_VALUE + random * (MAX_VALUE - MIN_VALUE);
 	}
 	public double getRandomMutationValue()
 	{
-		final double random = ThreadLocalRandom.current().nextDouble();
+		final double random = this.random.nextDouble();
 		return MIN_MUTATION_VALUE + random * (MAX_MUTATION_VALUE - MIN_MUTATION_VALUE);
 	}
 	public boolean hasVariables()
 	{
-		return !this.variables.isEmpty();
+		return this.grammar.getVariablesCount() > 0;
 	}
 }
@@ -16,30 +16,208 @@
 package com.lagodiuk.gp.symbolic.interpreter;
 
 import com.lagodiuk.gp.symbolic.api.Function;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Deque;
-import java.util.LinkedList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
 
 public class Expression implements Cloneable {
 
 	private List<Expression> childs = new ArrayList<>();
 
-	private List<Double> coefficients = new ArrayList<>();
+	private static final double[] NO_COEFFICIENTS = new double[0];
+
+	private double[] coefficients = NO_COEFFICIENTS;
 
 	private String variable;
 
+	private int variableSlot = -1;
+
 	private Function function;
 
+	private CompiledExpression compiled;
+
+	private long hash;
+
+	// subtrees can be shared by trees, which are evaluated by different
+	// threads, so memoized values are published by volatile flags
+	private volatile boolean hashed;
+
+	private volatile int size;
+
+	private int leavesCount;
+
+	private int depth;
+
+	private boolean containsVariable;
+
+	private int coefficientsOfTreeCount;
+
 	public Expression(Function function) {
 		this.function = function;
 	}
 
+	/**
+	 * Uses compiled program of this node, when it was requested by
+	 * {@link #compile()}, otherwise interprets syntax tree.
+	 */
 	public double eval(Context context) {
+		CompiledExpression program = this.compiled;
+		if (program != null) {
+			return program.eval(context);
+		}
 		return this.function.eval(this, context);
 	}
 
+	/**
+	 * Program is cached until this node is modified or {@link #invalidate()}
+	 * is called. Modifications of descendants are not tracked, so after
+	 * in-place editing of a subtree - {@link #invalidate()} must be called on
+	 * the root of the tree.
+	 */
+	public CompiledExpression compile() {
+		CompiledExpression program = this.compiled;
+		if (program == null) {
+			program = CompiledExpression.compile(this);
+			this.compiled = program;
+		}
+		return program;
+	}
+
+	/**
+	 * Drops cached programs and hashes of this node and of all its descendants
+	 */
+	public void invalidate() {
+		this.dropCaches();
+		for (Expression child : this.childs) {
+			child.invalidate();
+		}
+	}
+
+	private void dropCaches() {
+		this.compiled = null;
+		this.hashed = false;
+		this.size = 0;
+	}
+
+	/**
+	 * 64-bit hash of function, variable, coefficients and childs of subtree
+	 * (functions are hashed by their own hashCode, so hash is stable within
+	 * one JVM). Order of childs of commutative functions does not matter,
+	 * consistently with {@link #equals(Object)}. Only coefficients, which are
+	 * used by function (see {@link Function#coefficientsCount()}), are
+	 * hashed - mutations may leave unused ones.
+	 * <p>
+	 * Hash is memoized by each node, so hash of edited tree is recalculated
+	 * only for nodes, which caches were dropped.
+	 */
+	public long structuralHash() {
+		if (!this.hashed) {
+			long hash = mix(this.function.hashCode());
+			if (this.function.isVariable() && (this.variable != null)) {
+				hash = mix(hash ^ this.variable.hashCode());
+			}
+			int count = this.getUsedCoefficientsCount();
+			for (int i = 0; i < count; i++) {
+				hash = mix(hash ^ Double.doubleToLongBits(this.coefficients[i]));
+			}
+			if (this.function.isCommutative()) {
+				long sum = 0;
+				for (Expression child : this.childs) {
+					sum += mix(child.structuralHash());
+				}
+				hash = mix(hash ^ sum);
+			} else {
+				for (Expression child : this.childs) {
+					hash = mix(hash ^ child.structuralHash());
+				}
+			}
+			this.hash = hash;
+			this.hashed = true;
+		}
+		return this.hash;
+	}
+
+	@Override
+	public int hashCode() {
+		long hash = this.structuralHash();
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	/**
+	 * Structural equality: the same functions, variables, used coefficients
+	 * (see {@link #structuralHash()}) and childs (in any order for
+	 * commutative functions)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Expression)) {
+			return false;
+		}
+		Expression other = (Expression) obj;
+		if ((this.structuralHash() != other.structuralHash())
+				|| !Objects.equals(this.function, other.function)
+				|| (this.function.isVariable() && !Objects.equals(this.variable, other.variable))
+				|| !this.usedCoefficientsEqual(other)
+				|| (this.childs.size() != other.childs.size())) {
+			return false;
+		}
+		if (!this.function.isCommutative()) {
+			return this.childs.equals(other.childs);
+		}
+		// each child must be matched with its own equal child of other node
+		boolean[] matched = new boolean[other.childs.size()];
+		for (Expression child : this.childs) {
+			boolean found = false;
+			for (int i = 0; (i < matched.length) && !found; i++) {
+				if (!matched[i] && child.equals(other.childs.get(i))) {
+					matched[i] = true;
+					found = true;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Functions keep their coefficients at the beginning of coefficients of
+	 * node, the rest of them are not used
+	 */
+	private int getUsedCoefficientsCount() {
+		return Math.min(this.coefficients.length, this.function.coefficientsCount());
+	}
+
+	private boolean usedCoefficientsEqual(Expression other) {
+		int count = this.getUsedCoefficientsCount();
+		if (count != other.getUsedCoefficientsCount()) {
+			return false;
+		}
+		for (int i = 0; i < count; i++) {
+			if (Double.doubleToLongBits(this.coefficients[i]) != Double.doubleToLongBits(other.coefficients[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Finalizer of SplitMix64 generator
+	 */
+	private static long mix(long value) {
+		long z = value + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
 	public String print() {
 		return this.function.print(this);
 	}
@@ -50,33 +228,87 @@ public class Expression implements Cloneable {
 
 	public Expression setChilds(List<Expression> childs) {
 		this.childs = childs;
+		this.dropCaches();
 		return this;
 	}
 
 	public void addChild(Expression child) {
 		this.childs.add(child);
+		this.dropCaches();
 	}
 
 	public void removeChilds() {
 		this.childs.clear();
+		this.dropCaches();
 	}
 
+	/**
+	 * @return view of coefficients of this node (each access boxes
+	 *         coefficient, so {@link #getCoefficient(int)} is preferable)
+	 */
 	public List<Double> getCoefficientsOfNode() {
-		return this.coefficients;
+		return new CoefficientsOfNode();
 	}
 
 	public Expression setCoefficientsOfNode(List<Double> coefficients) {
-		this.coefficients = coefficients;
+		return this.setCoefficientsOfNode(toArray(coefficients));
+	}
+
+	/**
+	 * @param coefficients coefficients of this node (array is copied)
+	 */
+	public Expression setCoefficientsOfNode(double... coefficients) {
+		this.coefficients = (coefficients.length == 0) ? NO_COEFFICIENTS : coefficients.clone();
+		this.dropCaches();
 		return this;
 	}
 
+	public int getCoefficientsCount() {
+		return this.coefficients.length;
+	}
+
+	public double getCoefficient(int index) {
+		return this.coefficients[index];
+	}
+
+	public void setCoefficient(int index, double coefficient) {
+		this.coefficients[index] = coefficient;
+		this.dropCaches();
+	}
+
 	public void addCoefficient(double coefficient) {
-		this.coefficients.add(coefficient);
+		double[] coefficients = Arrays.copyOf(this.coefficients, this.coefficients.length + 1);
+		coefficients[this.coefficients.length] = coefficient;
+		this.coefficients = coefficients;
+		this.dropCaches();
 	}
 
 	public void removeCoefficients() {
-		if (this.coefficients.size() > 0) {
-			this.coefficients.clear();
+		this.coefficients = NO_COEFFICIENTS;
+		this.dropCaches();
+	}
+
+	/**
+	 * Live view of coefficients of node, for compatibility with
+	 * {@link Function#getCoefficients(Expression)}
+	 */
+	private class CoefficientsOfNode extends AbstractList<Double> implements RandomAccess {
+
+		@Override
+		public Double get(int index) {
+			return Expression.this.coefficients[index];
+		}
+
+		@Override
+		public Double set(int index, Double coefficient) {
+			double previous = Expression.this.coefficients[index];
+			Expression.this.setCoefficient(index, coefficient);
+			return previous;
+		}
+
+		@Override
+		public int size() {
+			return Expression.this.coefficients.length;
 		}
 	}
 
@@ -85,16 +317,88 @@ public class Expression implements Cloneable {
 	}
 
 	public Expression setVariable(String variable) {
+		return this.setVariable(variable, -1);
+	}
+
+	/**
+	 * @param slot index of variable in {@link Context}, or -1 when it should
+	 *             be resolved by name during the first evaluation
+	 */
+	public Expression setVariable(String variable, int slot) {
 		this.variable = variable;
+		this.variableSlot = slot;
+		this.dropCaches();
 		return this;
 	}
 
+	public int getVariableSlot() {
+		return this.variableSlot;
+	}
+
+	/**
+	 * Resolved slot of variable of grammar is kept by the node, because it is
+	 * the same in all contexts over the grammar. Slots of extra variables
+	 * (see {@link Context#defineVariable(String)}) depend on the order, in
+	 * which each context defined them, so they are resolved by every call.
+	 */
+	public int getVariableSlot(Context context) {
+		int slot = this.variableSlot;
+		if (slot < 0) {
+			slot = context.getVariableSlot(this.variable);
+			if (slot < context.getGrammar().getVariablesCount()) {
+				this.variableSlot = slot;
+			}
+		}
+		return slot;
+	}
+
 	public Function getFunction() {
 		return this.function;
 	}
 
 	public void setFunction(Function function) {
 		this.function = function;
+		this.dropCaches();
+	}
+
+	/**
+	 * Copy of this node, which shares childs with this node (lists of childs
+	 * and of coefficients are copied, so they can be edited)
+	 */
+	public Expression copyNode() {
+		Expression copy = new Expression(this.function);
+		copy.variable = this.variable;
+		copy.variableSlot = this.variableSlot;
+		copy.childs.addAll(this.childs);
+		copy.coefficients = (this.coefficients.length == 0) ? NO_COEFFICIENTS : this.coefficients.clone();
+		return copy;
+	}
+
+	/**
+	 * Persistent replacement of node: only nodes on the path from this node
+	 * to the replaced one are copied, the rest of nodes are shared by both
+	 * trees (so neither of trees may be edited in place afterwards).
+	 *
+	 * @param index index of replaced node (see {@link #getNode(int)})
+	 * @return root of new tree
+	 */
+	public Expression replaceNode(int index, Expression replacement) {
+		checkIndex(index, this.size());
+		if (index == 0) {
+			return replacement;
+		}
+		index -= 1;
+		for (int i = 0; i < this.childs.size(); i++) {
+			Expression child = this.childs.get(i);
+			int size = child.size();
+			if (index < size) {
+				Expression copy = this.copyNode();
+				copy.childs.set(i, child.replaceNode(index, replacement));
+				return copy;
+			}
+			index -= size;
+		}
+		throw new IllegalStateException("Sizes of subtrees are outdated");
 	}
 
 	@Override
@@ -103,50 +407,299 @@ public class Expression implements Cloneable {
 		Expression cloned = new Expression(this.function);
 		if (this.variable != null) {
 			cloned.variable = this.variable;
+			cloned.variableSlot = this.variableSlot;
 		}
 		for (Expression c : this.childs) {
 			cloned.childs.add(c.clone());
 		}
-		for (Double d : this.coefficients) {
-			cloned.coefficients.add(d);
-		}
+		cloned.coefficients = (this.coefficients.length == 0) ? NO_COEFFICIENTS : this.coefficients.clone();
 		return cloned;
 	}
 
+	/**
+	 * Boxed version of {@link #getCoefficientsOfTreeArray()}
+	 */
 	public List<Double> getCoefficientsOfTree() {
-		LinkedList<Double> result = new LinkedList<>();
-		this.getCoefficientsOfTree(result);
-		Collections.reverse(result);
+		double[] coefficients = this.getCoefficientsOfTreeArray();
+		List<Double> result = new ArrayList<>(coefficients.length);
+		for (double coefficient : coefficients) {
+			result.add(coefficient);
+		}
 		return result;
 	}
 
-	private void getCoefficientsOfTree(Deque<Double> coefficients) {
-		List<Double> coeffs = this.function.getCoefficients(this);
-		for (Double d : coeffs) {
-			coefficients.push(d);
+	/**
+	 * Coefficients of all nodes as one flat vector: coefficients of each node
+	 * (see {@link Function#getCoefficients(Expression, double[], int)}) are
+	 * followed by coefficients of its childs, in pre-order.
+	 */
+	public double[] getCoefficientsOfTreeArray() {
+		double[] coefficients = new double[this.getCoefficientsOfTreeCount()];
+		this.getCoefficientsOfTree(coefficients, 0);
+		return coefficients;
+	}
+
+	/**
+	 * Copies coefficients of tree to the given vector
+	 *
+	 * @param offset index of the first coefficient of this subtree in vector
+	 * @return offset of coefficients of the next subtree
+	 */
+	public int getCoefficientsOfTree(double[] coefficients, int offset) {
+		this.function.getCoefficients(this, coefficients, offset);
+		offset += this.function.coefficientsCount();
+		for (int i = 0; i < this.childs.size(); i++) {
+			offset = this.childs.get(i).getCoefficientsOfTree(coefficients, offset);
 		}
+		return offset;
+	}
+
+	/**
+	 * Length of vector of coefficients of tree (memoized together with
+	 * {@link #size()})
+	 */
+	public int getCoefficientsOfTreeCount() {
+		this.size();
+		return this.coefficientsOfTreeCount;
+	}
+
+	public Expression withCoefficientsOfTree(List<Double> coefficients) {
+		return this.withCoefficientsOfTree(toArray(coefficients));
+	}
+
+	/**
+	 * Persistent version of {@link #setCoefficientsOfTree(double[])}: nodes,
+	 * which coefficients are changed, and their ancestors are copied, the
+	 * rest of nodes are shared.
+	 *
+	 * @return root of new tree, or this tree, when coefficients are the same
+	 */
+	public Expression withCoefficientsOfTree(double[] coefficients) {
+		Expression[] result = new Expression[1];
+		this.withCoefficientsOfTree(coefficients, 0, result);
+		return result[0];
+	}
+
+	private int withCoefficientsOfTree(double[] coefficients, int index, Expression[] result) {
+		int count = this.function.coefficientsCount();
+		// functions keep their coefficients at the beginning of coefficients of
+		// node, unused ones after them do not matter
+		boolean changed = (this.coefficients.length < count);
+		for (int i = 0; (i < count) && !changed; i++) {
+			changed = Double.doubleToLongBits(this.coefficients[i]) != Double.doubleToLongBits(coefficients[index + i]);
+		}
+		int childsIndex = index + count;
+
+		List<Expression> newChilds = null;
 		for (int i = 0; i < this.childs.size(); i++) {
-			this.childs.get(i).getCoefficientsOfTree(coefficients);
+			Expression child = this.childs.get(i);
+			childsIndex = child.withCoefficientsOfTree(coefficients, childsIndex, result);
+			if (result[0] != child) {
+				if (newChilds == null) {
+					newChilds = new ArrayList<>(this.childs);
+				}
+				newChilds.set(i, result[0]);
+			}
+		}
+
+		if (!changed && (newChilds == null)) {
+			result[0] = this;
+		} else {
+			Expression copy = this.copyNode();
+			if (changed) {
+				this.function.setCoefficients(copy, coefficients, index);
+			}
+			if (newChilds != null) {
+				copy.childs = newChilds;
+			}
+			result[0] = copy;
 		}
+		return childsIndex;
 	}
 
 	public void setCoefficientsOfTree(List<Double> coefficients) {
+		this.setCoefficientsOfTree(toArray(coefficients));
+	}
+
+	public void setCoefficientsOfTree(double[] coefficients) {
 		this.setCoefficientsOfTree(coefficients, 0);
 	}
 
-	private int setCoefficientsOfTree(List<Double> coefficients, int index) {
+	private int setCoefficientsOfTree(double[] coefficients, int index) {
+		this.dropCaches();
 		this.function.setCoefficients(this, coefficients, index);
 		index += this.function.coefficientsCount();
-		if (this.childs.size() > 0) {
+		for (int i = 0; i < this.childs.size(); i++) {
+			index = this.childs.get(i).setCoefficientsOfTree(coefficients, index);
+		}
+		return index;
+	}
+
+	private static double[] toArray(List<Double> coefficients) {
+		double[] result = new double[coefficients.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = coefficients.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Count of nodes of subtree (memoized the same way as
+	 * {@link #structuralHash()})
+	 */
+	public int size() {
+		if (this.size == 0) {
+			int size = 1;
+			int leavesCount = 0;
+			int depth = 0;
+			boolean containsVariable = this.function.isVariable();
+			int coefficientsOfTreeCount = this.function.coefficientsCount();
 			for (int i = 0; i < this.childs.size(); i++) {
-				index = this.childs.get(i).setCoefficientsOfTree(coefficients, index);
+				Expression child = this.childs.get(i);
+				size += child.size();
+				leavesCount += child.leavesCount;
+				depth = Math.max(depth, child.depth + 1);
+				containsVariable |= child.containsVariable;
+				coefficientsOfTreeCount += child.coefficientsOfTreeCount;
+			}
+			this.leavesCount = (leavesCount == 0) ? 1 : leavesCount;
+			this.depth = depth;
+			this.containsVariable = containsVariable;
+			this.coefficientsOfTreeCount = coefficientsOfTreeCount;
+			this.size = size;
+		}
+		return this.size;
+	}
+
+	/**
+	 * Count of edges on the longest path from this node to a leaf (0 for
+	 * leaf), memoized together with {@link #size()}
+	 */
+	public int getDepth() {
+		this.size();
+		return this.depth;
+	}
+
+	/**
+	 * @return true if subtree has a variable node (memoized together with
+	 *         {@link #size()})
+	 */
+	public boolean containsVariable() {
+		this.size();
+		return this.containsVariable;
+	}
+
+	/**
+	 * Count of nodes without childs
+	 */
+	public int getLeavesCount() {
+		this.size();
+		return this.leavesCount;
+	}
+
+	/**
+	 * Descends from this node by sizes of subtrees, so it takes O(depth) and
+	 * does not allocate.
+	 *
+	 * @param index index of node in pre-order of subtree, from 0 (this node)
+	 *              to {@link #size()} - 1
+	 */
+	public Expression getNode(int index) {
+		checkIndex(index, this.size());
+		Expression node = this;
+		while (index > 0) {
+			index -= 1;
+			List<Expression> childs = node.childs;
+			for (int i = 0; i < childs.size(); i++) {
+				Expression child = childs.get(i);
+				int size = child.size();
+				if (index < size) {
+					node = child;
+					break;
+				}
+				index -= size;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * @param index index of leaf in pre-order of subtree, from 0 to
+	 *              {@link #getLeavesCount()} - 1
+	 */
+	public Expression getLeaf(int index) {
+		return this.getNode(this.indexOfLeaf(index));
+	}
+
+	/**
+	 * @param leaf index of leaf in pre-order of subtree, from 0 to
+	 *             {@link #getLeavesCount()} - 1
+	 * @return index of the same node among all nodes (see {@link #getNode(int)})
+	 */
+	public int indexOfLeaf(int leaf) {
+		checkIndex(leaf, this.getLeavesCount());
+		int index = 0;
+		Expression node = this;
+		while (!node.childs.isEmpty()) {
+			index += 1;
+			List<Expression> childs = node.childs;
+			for (int i = 0; i < childs.size(); i++) {
+				Expression child = childs.get(i);
+				int leavesCount = child.getLeavesCount();
+				if (leaf < leavesCount) {
+					node = child;
+					break;
+				}
+				leaf -= leavesCount;
+				index += child.size();
+			}
+		}
+		return index;
+	}
+
+	/**
+	 * @param index index of node with childs in pre-order of subtree, from 0
+	 *              to {@link #size()} - {@link #getLeavesCount()} - 1
+	 */
+	public Expression getInternalNode(int index) {
+		return this.getNode(this.indexOfInternalNode(index));
+	}
+
+	/**
+	 * @param internal index of node with childs in pre-order of subtree, from
+	 *                 0 to {@link #size()} - {@link #getLeavesCount()} - 1
+	 * @return index of the same node among all nodes (see {@link #getNode(int)})
+	 */
+	public int indexOfInternalNode(int internal) {
+		checkIndex(internal, this.size() - this.getLeavesCount());
+		int index = 0;
+		Expression node = this;
+		while (internal > 0) {
+			internal -= 1;
+			index += 1;
+			List<Expression> childs = node.childs;
+			for (int i = 0; i < childs.size(); i++) {
+				Expression child = childs.get(i);
+				int internalCount = child.size() - child.getLeavesCount();
+				if (internal < internalCount) {
+					node = child;
+					break;
+				}
+				internal -= internalCount;
+				index += child.size();
 			}
 		}
 		return index;
 	}
 
+	private static void checkIndex(int index, int count) {
+		if ((index < 0) || (index >= count)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", count: " + count);
+		}
+	}
+
 	public List<Expression> getAllNodesAsList() {
-		List<Expression> nodes = new LinkedList<>();
+		List<Expression> nodes = new ArrayList<>(this.size());
 		this.getAllNodesBreadthFirstSearch(nodes);
 		return nodes;
 	}
@@ -18,4 +18,43 @@ package com.lagodiuk.gp.symbolic.interpreter;
 public interface ExpressionFitness
 {
 	double fitness(Expression expression, Context context);
+	/**
+	 * Fitness, which is evaluated only while it doesn't exceed cutoff (e.g.
+	 * fitness of the worst chromosome, which survives selection). Sum of
+	 * errors only grows with each row, so evaluation can stop as soon as
+	 * partial sum exceeds cutoff.
+	 * <p>
+	 * Default implementation evaluates fitness completely.
+	 *
+	 * @return fitness, when it doesn't exceed cutoff, otherwise any value
+	 *         greater than cutoff, which is a lower bound of fitness
+	 */
+	default double fitness(Expression expression, Context context, double cutoff)
+	{
+		return this.fitness(expression, context);
+	}
+	/**
+	 * Fitness of expression with another values of coefficients, which is
+	 * used to score candidate coefficients during their optimization.
+	 * Expression is not modified.
+	 * <p>
+	 * Default implementation scores a copy of expression with given
+	 * coefficients, implementations are expected to evaluate coefficients
+	 * directly (e.g. by {@link CompiledExpression#eval(double[], double[], double[], Context)}).
+	 *
+	 * @param coefficients coefficients, in order of {@link Expression#getCoefficientsOfTree()}
+	 */
+	default double fitness(Expression expression, double[] coefficients, Context context)
+	{
+		return this.fitness(expression.withCoefficientsOfTree(coefficients), context);
+	}
+	/**
+	 * Version of data, which is used by fitness function. It must be changed
+	 * each time when fitness of the same expression can change (e.g. when
+	 * training set is replaced), so cached values of fitness are discarded.
+	 */
+	default long getRevision()
+	{
+		return 0;
+	}
 }
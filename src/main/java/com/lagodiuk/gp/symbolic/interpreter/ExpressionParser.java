@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.api.Function;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses printed form of syntax trees (see {@link Expression#print()}) of
+ * built-in functions (see {@link Opcodes}), e.g.
+ * <code>((x + (-2.5)) * sin(y))</code>.
+ * <p>
+ * Functions are resolved by opcodes among functions of grammar. Constants are
+ * printed by {@link Double#toString(double)}, so they are parsed back
+ * exactly.
+ */
+public final class ExpressionParser
+{
+	private final Grammar grammar;
+	private       String  text;
+	private       int     position;
+
+	public ExpressionParser(Grammar grammar)
+	{
+		this.grammar = grammar;
+	}
+	/**
+	 * Parser is not thread-safe
+	 *
+	 * @throws IllegalArgumentException if text is malformed or has function,
+	 *                                  which is not defined by grammar
+	 */
+	public Expression parse(String text)
+	{
+		this.text     = text;
+		this.position = 0;
+		final Expression tree = this.parseTerm();
+		this.skipSpaces();
+		if(this.position != text.length())
+			throw this.error("Unexpected " + text.charAt(this.position));
+		return tree;
+	}
+	private Expression parseTerm()
+	{
+		this.skipSpaces();
+		if(this.position >= this.text.length())
+			throw this.error("Unexpected end");
+		final char c = this.text.charAt(this.position);
+		if(c == '(')
+		{
+			this.position++;
+			this.skipSpaces();
+			// negative constants are the only terms, which start by minus
+			if(this.peek() == '-')
+			{
+				final Expression constant = this.parseNumber();
+				this.expect(')');
+				return constant;
+			}
+			final Expression left = this.parseTerm();
+			this.skipSpaces();
+			final int opcode;
+			switch(this.peek())
+			{
+				case '+': opcode = Opcodes.ADD; break;
+				case '-': opcode = Opcodes.SUB; break;
+				case '*': opcode = Opcodes.MUL; break;
+				case '/': opcode = Opcodes.DIV; break;
+				case '^': opcode = Opcodes.POW; break;
+				default:
+					throw this.error("Expected operator");
+			}
+			this.position++;
+			final Expression right = this.parseTerm();
+			this.expect(')');
+			return this.node(opcode, left, right);
+		}
+		// negative constant without parentheses, e.g. typed by user
+		if(Character.isDigit(c) || c == '.' || c == '-')
+			return this.parseNumber();
+		if(Character.isLetter(c) || c == '_')
+			return this.parseName();
+		throw this.error("Unexpected " + c);
+	}
+	private Expression parseName()
+	{
+		final int start = this.position;
+		while(this.position < this.text.length() && (Character.isLetterOrDigit(this.text.charAt(this.position)) || this.text.charAt(this.position) == '_'))
+			this.position++;
+		final String name = this.text.substring(start, this.position);
+		this.skipSpaces();
+		if(this.peek() != '(')
+			return this.leaf(name);
+		this.position++;
+		final Expression result;
+		switch(name)
+		{
+			case "sin":
+				result = this.node(Opcodes.SIN, this.parseTerm());
+				break;
+			case "cos":
+				result = this.node(Opcodes.COS, this.parseTerm());
+				break;
+			case "max":
+			case "min":
+				final Expression first = this.parseTerm();
+				this.expect(',');
+				result = this.node("max".equals(name) ? Opcodes.MAX : Opcodes.MIN, first, this.parseTerm());
+				break;
+			case "sqrt":
+				// sqrt(abs(x))
+				this.expectName("abs");
+				this.expect('(');
+				result = this.node(Opcodes.SQRT, this.parseTerm());
+				this.expect(')');
+				break;
+			case "ln":
+				// ln(abs(x) + threshold)
+				this.expectName("abs");
+				this.expect('(');
+				result = this.node(Opcodes.LN, this.parseTerm());
+				this.expect(')');
+				this.expect('+');
+				this.parseNumber();
+				break;
+			default:
+				throw this.error("Unknown function " + name);
+		}
+		this.expect(')');
+		return result;
+	}
+	/**
+	 * Variable, or non-finite constant (NaN or Infinity)
+	 */
+	private Expression leaf(String name)
+	{
+		if(this.grammar.getVariableSlot(name) < 0 && ("NaN".equals(name) || "Infinity".equals(name)))
+			return this.constant(Double.parseDouble(name));
+		final Expression variable = new Expression(this.function(Opcodes.VARIABLE));
+		// variables, which are unknown to grammar, are resolved by context
+		return variable.setVariable(name, this.grammar.getVariableSlot(name));
+	}
+	private Expression parseNumber()
+	{
+		this.skipSpaces();
+		final int start = this.position;
+		if(this.peek() == '-')
+			this.position++;
+		if(this.text.startsWith("Infinity", this.position))
+			this.position += "Infinity".length();
+		else
+			while(this.position < this.text.length() && this.isNumberChar(this.position))
+				this.position++;
+		try
+		{
+			return this.constant(Double.parseDouble(this.text.substring(start, this.position)));
+		}
+		catch(NumberFormatException e)
+		{
+			throw this.error("Malformed number " + this.text.substring(start, this.position));
+		}
+	}
+	private boolean isNumberChar(int index)
+	{
+		final char c = this.text.charAt(index);
+		if(Character.isDigit(c) || c == '.' || c == 'E')
+			return true;
+		// sign of exponent
+		return (c == '-' || c == '+') && index > 0 && this.text.charAt(index - 1) == 'E';
+	}
+	private Expression constant(double value)
+	{
+		return new Expression(this.function(Opcodes.CONSTANT)).setCoefficientsOfNode(value);
+	}
+	private Expression node(int opcode, Expression... childs)
+	{
+		final List<Expression> list = new ArrayList<>(childs.length);
+		for(Expression child : childs)
+			list.add(child);
+		return new Expression(this.function(opcode)).setChilds(list);
+	}
+	private Function function(int opcode)
+	{
+		final Function function = this.grammar.findFunction(opcode);
+		if(function == null)
+			throw this.error("Grammar has no function with opcode " + opcode);
+		return function;
+	}
+	private void expectName(String name)
+	{
+		this.skipSpaces();
+		if(!this.text.startsWith(name, this.position))
+			throw this.error("Expected " + name);
+		this.position += name.length();
+	}
+	private void expect(char c)
+	{
+		this.skipSpaces();
+		if(this.peek() != c)
+			throw this.error("Expected " + c);
+		this.position++;
+	}
+	private char peek()
+	{
+		return (this.position < this.text.length()) ? this.text.charAt(this.position) : 0;
+	}
+	private void skipSpaces()
+	{
+		while(this.position < this.text.length() && Character.isWhitespace(this.text.charAt(this.position)))
+			this.position++;
+	}
+	private IllegalArgumentException error(String message)
+	{
+		return new IllegalArgumentException(message + " at position " + this.position + " of " + this.text);
+	}
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.api.Function;
+import java.io.DataInput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads syntax trees, which were written by {@link ExpressionWriter} with the
+ * same functions and variables. Functions are matched by their description in
+ * header, so they may be listed by grammars in different order. Malformed
+ * input is reported by {@link IOException}.
+ */
+public final class ExpressionReader
+{
+	private final static int MAX_DEPTH = 4096;
+	private final static int MAX_COUNT = 0xFFFF;
+
+	private final Grammar   grammar;
+	private final DataInput in;
+	private       Grammar   headerGrammar;
+
+	public ExpressionReader(Grammar grammar, DataInput in)
+	{
+		this.grammar       = grammar;
+		this.in            = in;
+		this.headerGrammar = grammar;
+	}
+	/**
+	 * @throws IOException if trees were written with different functions or
+	 *                     variables
+	 */
+	public void readHeader() throws IOException
+	{
+		if(this.in.readInt() != ExpressionWriter.MAGIC)
+			throw new IOException("Not an encoded syntax tree");
+		final int version = this.in.readUnsignedByte();
+		if(version != ExpressionWriter.VERSION)
+			throw new IOException("Unsupported version of encoding: " + version);
+
+		final List<Function> unmatched = new ArrayList<>(this.grammar.getFunctions());
+		if(this.readVarInt() != unmatched.size())
+			throw new IOException("Functions of encoded trees don't match grammar");
+		final List<Function> functions = new ArrayList<>(unmatched.size());
+		for(int i = 0; i < this.grammar.getFunctions().size(); i++)
+		{
+			final Function function = findFunction(unmatched, this.in.readUnsignedByte(), this.readVarInt(), this.readVarInt());
+			if(function == null)
+				throw new IOException("Functions of encoded trees don't match grammar");
+			unmatched.remove(function);
+			functions.add(function);
+		}
+
+		if(this.readVarInt() != this.grammar.getVariablesCount())
+			throw new IOException("Variables of encoded trees don't match grammar");
+		for(String variable : this.grammar.getVariables())
+			if(!variable.equals(this.in.readUTF()))
+				throw new IOException("Variables of encoded trees don't match grammar");
+		this.headerGrammar = new Grammar(functions, this.grammar.getVariables());
+	}
+	/**
+	 * Functions, which are known only to the interpreter, share opcode
+	 * {@link Opcodes#CALL}, so they are matched in order of grammar
+	 */
+	private static Function findFunction(List<Function> functions, int opcode, int argumentsCount, int coefficientsCount)
+	{
+		for(Function function : functions)
+			if(function.opcode() == opcode
+				&& function.argumentsCount() == argumentsCount
+				&& function.coefficientsCount() == coefficientsCount)
+				return function;
+		return null;
+	}
+	/**
+	 * @return grammar, which lists functions in order of writer (after
+	 *         {@link #readHeader()}), so trees can be written back to the
+	 *         same peer
+	 */
+	public Grammar getHeaderGrammar()
+	{
+		return this.headerGrammar;
+	}
+	public Expression read() throws IOException
+	{
+		return this.read(0);
+	}
+	private Expression read(int depth) throws IOException
+	{
+		if(depth > MAX_DEPTH)
+			throw new IOException("Encoded tree is deeper than " + MAX_DEPTH);
+		final int tag   = this.in.readUnsignedByte();
+		final int index = tag & ~ExpressionWriter.IRREGULAR;
+		if(index >= this.headerGrammar.getFunctions().size())
+			throw new IOException("Unknown function " + index);
+
+		final Function function          = this.headerGrammar.getFunctions().get(index);
+		final boolean  irregular         = (tag & ExpressionWriter.IRREGULAR) != 0;
+		final int      childsCount       = irregular ? this.readCount() : function.argumentsCount();
+		final int      coefficientsCount = irregular ? this.readCount() : function.coefficientsCount();
+
+		final Expression node = new Expression(function);
+		if(function.isVariable())
+		{
+			final int slot = this.readVarInt();
+			if(slot >= this.grammar.getVariablesCount())
+				throw new IOException("Unknown variable " + slot);
+			node.setVariable(this.grammar.getVariableName(slot), slot);
+		}
+		if(coefficientsCount > 0)
+		{
+			final double[] coefficients = new double[coefficientsCount];
+			for(int i = 0; i < coefficientsCount; i++)
+				coefficients[i] = this.in.readDouble();
+			node.setCoefficientsOfNode(coefficients);
+		}
+		if(childsCount > 0)
+		{
+			final List<Expression> childs = new ArrayList<>(childsCount);
+			for(int i = 0; i < childsCount; i++)
+				childs.add(this.read(depth + 1));
+			node.setChilds(childs);
+		}
+		return node;
+	}
+	/**
+	 * Reads trees, which were written by {@link ExpressionWriter#writeAll(java.util.Collection)}
+	 */
+	public List<Expression> readAll() throws IOException
+	{
+		final int              count = this.readVarInt();
+		final List<Expression> trees = new ArrayList<>(Math.min(count, MAX_COUNT));
+		for(int i = 0; i < count; i++)
+			trees.add(this.read());
+		return trees;
+	}
+	/**
+	 * Count of childs or coefficients of node, which is limited, so
+	 * malformed input doesn't allocate huge arrays
+	 */
+	private int readCount() throws IOException
+	{
+		final int count = this.readVarInt();
+		if(count > MAX_COUNT)
+			throw new IOException("Node has too many childs or coefficients: " + count);
+		return count;
+	}
+	private int readVarInt() throws IOException
+	{
+		int value = 0;
+		for(int shift = 0; shift < 32; shift += 7)
+		{
+			final int b = this.in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+			{
+				if(value < 0)
+					throw new IOException("Malformed variable-length integer");
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable-length integer");
+	}
+}
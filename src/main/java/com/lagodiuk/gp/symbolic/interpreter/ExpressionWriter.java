@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.api.Function;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Writes syntax trees in compact binary prefix encoding, which is read by
+ * {@link ExpressionReader} with the same grammar.
+ * <p>
+ * Node is written in pre-order as:
+ * <ul>
+ * <li>tag byte: index of function in {@link Grammar#getFunctions()} (lower 7
+ * bits) and flag of irregular node (the highest bit), which has count of
+ * childs or coefficients different from {@link Function#argumentsCount()}
+ * or {@link Function#coefficientsCount()}</li>
+ * <li>counts of childs and coefficients (only for irregular node)</li>
+ * <li>slot of variable in grammar (only for variable)</li>
+ * <li>coefficients as raw doubles</li>
+ * </ul>
+ * Counts and slots are unsigned variable-length integers (7 bits per byte).
+ */
+public final class ExpressionWriter
+{
+	final static int MAGIC         = 0x47505452;
+	final static int VERSION       = 1;
+	final static int IRREGULAR     = 0x80;
+	final static int MAX_FUNCTIONS = 0x80;
+
+	private final Grammar    grammar;
+	private final DataOutput out;
+
+	public ExpressionWriter(Grammar grammar, DataOutput out)
+	{
+		if(grammar.getFunctions().size() > MAX_FUNCTIONS)
+			throw new IllegalArgumentException("Grammar has more than " + MAX_FUNCTIONS + " functions");
+		this.grammar = grammar;
+		this.out     = out;
+	}
+	/**
+	 * Writes description of grammar, so reader can check, that trees are read
+	 * with the same functions and variables (see
+	 * {@link ExpressionReader#readHeader()})
+	 */
+	public void writeHeader() throws IOException
+	{
+		this.out.writeInt(MAGIC);
+		this.out.writeByte(VERSION);
+		this.writeVarInt(this.grammar.getFunctions().size());
+		for(Function function : this.grammar.getFunctions())
+		{
+			this.out.writeByte(function.opcode());
+			this.writeVarInt(function.argumentsCount());
+			this.writeVarInt(function.coefficientsCount());
+		}
+		this.writeVarInt(this.grammar.getVariablesCount());
+		for(String variable : this.grammar.getVariables())
+			this.out.writeUTF(variable);
+	}
+	/**
+	 * @throws IllegalArgumentException if tree has function or variable,
+	 *                                  which is not defined by grammar
+	 */
+	public void write(Expression tree) throws IOException
+	{
+		final Function function = tree.getFunction();
+		final int      index    = this.grammar.indexOf(function);
+		if(index < 0)
+			throw new IllegalArgumentException("Function is not defined by grammar: " + function);
+
+		final int     childsCount       = tree.getChilds().size();
+		final int     coefficientsCount = tree.getCoefficientsCount();
+		final boolean irregular         = childsCount != function.argumentsCount() || coefficientsCount != function.coefficientsCount();
+		if(irregular)
+		{
+			this.out.writeByte(index | IRREGULAR);
+			this.writeVarInt(childsCount);
+			this.writeVarInt(coefficientsCount);
+		}
+		else
+			this.out.writeByte(index);
+
+		if(function.isVariable())
+		{
+			final int slot = this.grammar.getVariableSlot(tree.getVariable());
+			if(slot < 0)
+				throw new IllegalArgumentException("Variable is not defined by grammar: " + tree.getVariable());
+			this.writeVarInt(slot);
+		}
+		for(int i = 0; i < coefficientsCount; i++)
+			this.out.writeDouble(tree.getCoefficient(i));
+		for(Expression child : tree.getChilds())
+			this.write(child);
+	}
+	/**
+	 * Writes count of trees, followed by trees (e.g. population)
+	 */
+	public void writeAll(Collection<Expression> trees) throws IOException
+	{
+		this.writeVarInt(trees.size());
+		for(Expression tree : trees)
+			this.write(tree);
+	}
+	private void writeVarInt(int value) throws IOException
+	{
+		while((value & ~0x7F) != 0)
+		{
+			this.out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.out.writeByte(value);
+	}
+}
@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.api.Function;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable configuration of syntax trees: functions and variables.
+ * <p>
+ * Grammar can be shared by any count of threads and engines, while each
+ * thread evaluates and generates trees with its own {@link Context}.
+ * Variables of grammar occupy first slots of each context.
+ */
+public final class Grammar
+{
+	private final List<Function>         nonTerminalFunctions;
+	private final List<Function>         terminalFunctions;
+	private final List<Function>         functions;
+	private final Map<Function, Integer> indexes = new HashMap<>();
+	private final List<String>           variables;
+	private final Map<String, Integer>   slots   = new HashMap<>();
+
+	public Grammar(List<? extends Function> functions, Collection<String> variables)
+	{
+		final List<Function> nonTerminalFunctions = new ArrayList<>();
+		final List<Function> terminalFunctions    = new ArrayList<>();
+		for(Function func : functions)
+			if(func.argumentsCount() == 0)
+				terminalFunctions.add(func);
+			else
+				nonTerminalFunctions.add(func);
+		if(terminalFunctions.isEmpty())
+			throw new IllegalArgumentException("At least one terminal function must be defined");
+
+		if(variables.isEmpty())
+			throw new IllegalArgumentException("At least one variable must be defined");
+
+		final List<String> uniqueVariables = new ArrayList<>();
+		for(String variable : variables)
+			if(!this.slots.containsKey(variable))
+			{
+				this.slots.put(variable, uniqueVariables.size());
+				uniqueVariables.add(variable);
+			}
+		final List<Function> allFunctions = new ArrayList<>(nonTerminalFunctions);
+		allFunctions.addAll(terminalFunctions);
+		for(Function func : allFunctions)
+			this.indexes.putIfAbsent(func, this.indexes.size());
+		this.nonTerminalFunctions = Collections.unmodifiableList(nonTerminalFunctions);
+		this.terminalFunctions    = Collections.unmodifiableList(terminalFunctions);
+		this.functions            = Collections.unmodifiableList(allFunctions);
+		this.variables            = Collections.unmodifiableList(uniqueVariables);
+	}
+	public List<Function> getNonTerminalFunctions()
+	{
+		return this.nonTerminalFunctions;
+	}
+	public List<Function> getTerminalFunctions()
+	{
+		return this.terminalFunctions;
+	}
+	/**
+	 * @return non-terminal functions, followed by terminal ones
+	 */
+	public List<Function> getFunctions()
+	{
+		return this.functions;
+	}
+	/**
+	 * @return index of function in {@link #getFunctions()}, or -1 if grammar
+	 *         has no such function
+	 */
+	public int indexOf(Function function)
+	{
+		final Integer index = this.indexes.get(function);
+		return (index != null) ? index : -1;
+	}
+	/**
+	 * @return the first function with opcode (see {@link Function#opcode()}),
+	 *         or null
+	 */
+	public Function findFunction(int opcode)
+	{
+		for(Function func : this.functions)
+			if(func.opcode() == opcode)
+				return func;
+		return null;
+	}
+	public List<String> getVariables()
+	{
+		return this.variables;
+	}
+	public int getVariablesCount()
+	{
+		return this.variables.size();
+	}
+	/**
+	 * @return slot of variable, or -1 if grammar has no such variable
+	 */
+	public int getVariableSlot(String variable)
+	{
+		final Integer slot = this.slots.get(variable);
+		return (slot != null) ? slot : -1;
+	}
+	public String getVariableName(int slot)
+	{
+		return this.variables.get(slot);
+	}
+	/**
+	 * @return new evaluation frame, which must be used by a single thread
+	 */
+	public Context newContext()
+	{
+		return new Context(this);
+	}
+}
@@ -0,0 +1,38 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.api.Dataset;
+
+/**
+ * Fitness, which is the sum of squared differences between target values
+ * of dataset and values of expression.
+ * <p>
+ * Such fitness lets coefficients of expression be tuned by least squares
+ * methods.
+ */
+public interface LeastSquaresFitness extends ExpressionFitness
+{
+	Dataset getDataset();
+	/**
+	 * Rows, which are scored by fitness now (e.g. subsample of dataset, see
+	 * {@link SubsampledFitness}), so coefficients are fitted to the same rows
+	 */
+	default Dataset getSample()
+	{
+		return this.getDataset();
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+/**
+ * Instruction set of {@link CompiledExpression}.
+ * <p>
+ * Functions which are not known to the stack machine report {@link #CALL}
+ * and are evaluated through {@link com.lagodiuk.gp.symbolic.api.Function#eval}.
+ */
+public final class Opcodes
+{
+	public static final int CALL     = 0;
+	public static final int CONSTANT = 1;
+	public static final int VARIABLE = 2;
+	public static final int ADD      = 3;
+	public static final int SUB      = 4;
+	public static final int MUL      = 5;
+	public static final int DIV      = 6;
+	public static final int SQRT     = 7;
+	public static final int POW      = 8;
+	public static final int LN       = 9;
+	public static final int SIN      = 10;
+	public static final int COS      = 11;
+	public static final int MAX      = 12;
+	public static final int MIN      = 13;
+
+	public static final double LN_THRESHOLD = 1e-5;
+
+	private Opcodes()
+	{
+	}
+}
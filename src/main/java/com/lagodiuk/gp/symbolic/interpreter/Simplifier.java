@@ -0,0 +1,278 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.api.Function;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rule-based algebraic simplification of syntax tree by a single bottom-up
+ * pass: each node is rewritten after its childs, so rules see childs, which
+ * are already simplified. Functions are recognized by their opcodes (see
+ * {@link Opcodes}), and subtrees without variables are found by memoized
+ * flags of nodes (see {@link Expression#containsVariable()}), so the pass
+ * takes O(n) plus comparison of subtrees by the rules like x - x.
+ * <p>
+ * Rules:
+ * <ul>
+ * <li>subtree without variables is folded into constant</li>
+ * <li>constants of nested additions and multiplications are combined
+ * (constant is moved to the left child of the outermost node, when it
+ * doesn't deepen the tree), e.g. <code>(2 + (x + 3))</code> becomes
+ * <code>(5 + x)</code></li>
+ * <li><code>x + 0</code>, <code>x - 0</code>, <code>x * 1</code>,
+ * <code>x / 1</code>, <code>x ^ 1</code>, <code>max(x, x)</code> and
+ * <code>min(x, x)</code> become <code>x</code></li>
+ * <li><code>x - x</code>, <code>x * 0</code> and <code>0 / x</code> become
+ * <code>0</code></li>
+ * <li><code>x / x</code>, <code>x ^ 0</code>, <code>1 ^ x</code> and
+ * <code>sin(x)^2 + cos(x)^2</code> (where square is either
+ * <code>x * x</code> or <code>x ^ 2</code>) become <code>1</code></li>
+ * </ul>
+ * Rules follow real arithmetic, e.g. <code>x / x</code> becomes
+ * <code>1</code> even though it is NaN at zero. Rules, which produce
+ * constants, are skipped when grammar has no numbers.
+ * <p>
+ * Like {@link SyntaxTreeUtils#simplify(Expression, Context)}, simplification
+ * is persistent: rewritten nodes and their ancestors are new, the rest of
+ * nodes are shared with the given tree.
+ */
+public final class Simplifier
+{
+	private final Context  context;
+	private final Function number;
+
+	private Simplifier(Context context)
+	{
+		this.context = context;
+		this.number  = findNumber(context);
+	}
+	/**
+	 * @return root of simplified tree, or the given tree, when it can not be
+	 *         simplified
+	 */
+	public static Expression simplify(Expression tree, Context context)
+	{
+		return new Simplifier(context).simplifyNode(tree);
+	}
+	private Expression simplifyNode(Expression tree)
+	{
+		if(!tree.containsVariable())
+			return this.fold(tree);
+		Expression             result = tree;
+		final List<Expression> childs = tree.getChilds();
+		for(int i = 0; i < childs.size(); i++)
+		{
+			final Expression child      = childs.get(i);
+			final Expression simplified = this.simplifyNode(child);
+			if(simplified != child)
+			{
+				if(result == tree)
+					result = tree.copyNode();
+				result.getChilds().set(i, simplified);
+			}
+		}
+		if(result.getChilds().size() < result.getFunction().argumentsCount())
+			return result;
+		return this.rewrite(result);
+	}
+	private Expression fold(Expression tree)
+	{
+		if(tree.getFunction().isNumber() || this.number == null)
+			return tree;
+		return this.constant(tree.eval(this.context));
+	}
+	private Expression rewrite(Expression node)
+	{
+		final List<Expression> childs = node.getChilds();
+		switch(node.getFunction().opcode())
+		{
+			case Opcodes.ADD:
+				if(this.isPythagoreanIdentity(childs.get(0), childs.get(1)) || this.isPythagoreanIdentity(childs.get(1), childs.get(0)))
+					return this.constantOr(1.0, node);
+				return this.combineConstants(node, Opcodes.ADD);
+			case Opcodes.MUL:
+				return this.combineConstants(node, Opcodes.MUL);
+			case Opcodes.SUB:
+				if(this.isConstant(childs.get(1), 0.0))
+					return childs.get(0);
+				if(childs.get(0).equals(childs.get(1)))
+					return this.constantOr(0.0, node);
+				return node;
+			case Opcodes.DIV:
+				if(this.isConstant(childs.get(1), 1.0))
+					return childs.get(0);
+				if(this.isConstant(childs.get(0), 0.0))
+					return childs.get(0);
+				if(childs.get(0).equals(childs.get(1)))
+					return this.constantOr(1.0, node);
+				return node;
+			case Opcodes.POW:
+				if(this.isConstant(childs.get(1), 1.0))
+					return childs.get(0);
+				if(this.isConstant(childs.get(1), 0.0))
+					return this.constantOr(1.0, node);
+				if(this.isConstant(childs.get(0), 1.0))
+					return childs.get(0);
+				return node;
+			case Opcodes.MAX:
+			case Opcodes.MIN:
+				return childs.get(0).equals(childs.get(1)) ? childs.get(0) : node;
+			default:
+				return node;
+		}
+	}
+	/**
+	 * Chains of additions (or of multiplications) keep at most one constant,
+	 * which is the left child of the root of chain, unless moving it there
+	 * would make the chain deeper. Childs are already simplified, so
+	 * constants of both childs are their own roots or left childs of their
+	 * roots.
+	 */
+	private Expression combineConstants(Expression node, int opcode)
+	{
+		final Expression left          = node.getChilds().get(0);
+		final Expression right         = node.getChilds().get(1);
+		final Expression leftConstant  = this.constantOfChain(left, opcode);
+		final Expression rightConstant = this.constantOfChain(right, opcode);
+		if(leftConstant == null && rightConstant == null)
+			return node;
+
+		final double value;
+		if(leftConstant != null && rightConstant != null)
+		{
+			final double leftValue  = leftConstant.eval(this.context);
+			final double rightValue = rightConstant.eval(this.context);
+			value = (opcode == Opcodes.ADD) ? leftValue + rightValue : leftValue * rightValue;
+		}
+		else
+			value = ((leftConstant != null) ? leftConstant : rightConstant).eval(this.context);
+
+		final Expression leftRest  = this.restOfChain(left, opcode);
+		final Expression rightRest = this.restOfChain(right, opcode);
+		final Expression rest      = (leftRest == null) ? rightRest
+			: (rightRest == null) ? leftRest
+			: withChilds(node, leftRest, rightRest);
+		// variables may be only in childs, which exceed count of arguments of function
+		if(rest == null)
+			return this.constantOr(value, node);
+		if(opcode == Opcodes.ADD && value == 0.0)
+			return rest;
+		if(opcode == Opcodes.MUL && value == 1.0)
+			return rest;
+		if(opcode == Opcodes.MUL && value == 0.0)
+			return this.constantOr(0.0, node);
+		// the only constant is already the left child
+		if(left == leftConstant && rightConstant == null)
+			return node;
+		final Expression constant = (leftConstant == null) ? rightConstant
+			: (rightConstant == null) ? leftConstant
+			: this.constant(value);
+		if(constant == null)
+			return node;
+		// constant of one child is lifted above the other child, which may
+		// deepen the tree beyond the limit of genetic operators
+		final Expression result = withChilds(node, constant, rest);
+		return (result.getDepth() <= node.getDepth()) ? result : node;
+	}
+	private Expression constantOfChain(Expression tree, int opcode)
+	{
+		if(tree.getFunction().isNumber())
+			return tree;
+		if(tree.getFunction().opcode() == opcode && tree.getChilds().size() >= 2 && tree.getChilds().get(0).getFunction().isNumber())
+			return tree.getChilds().get(0);
+		return null;
+	}
+	/**
+	 * @return chain without its constant, or null when tree is constant
+	 */
+	private Expression restOfChain(Expression tree, int opcode)
+	{
+		if(tree.getFunction().isNumber())
+			return null;
+		if(tree.getFunction().opcode() == opcode && tree.getChilds().size() >= 2 && tree.getChilds().get(0).getFunction().isNumber())
+			return tree.getChilds().get(1);
+		return tree;
+	}
+	private boolean isPythagoreanIdentity(Expression sinSquare, Expression cosSquare)
+	{
+		final Expression sin = this.squaredArgument(sinSquare, Opcodes.SIN);
+		final Expression cos = this.squaredArgument(cosSquare, Opcodes.COS);
+		return sin != null && cos != null && sin.equals(cos);
+	}
+	/**
+	 * @return argument of f in f(x) * f(x) or f(x) ^ 2, where f is function
+	 *         of given opcode
+	 */
+	private Expression squaredArgument(Expression tree, int opcode)
+	{
+		final List<Expression> childs = tree.getChilds();
+		final Expression       base;
+		switch(tree.getFunction().opcode())
+		{
+			case Opcodes.MUL:
+				if(childs.size() < 2 || !childs.get(0).equals(childs.get(1)))
+					return null;
+				base = childs.get(0);
+				break;
+			case Opcodes.POW:
+				if(childs.size() < 2 || !this.isConstant(childs.get(1), 2.0))
+					return null;
+				base = childs.get(0);
+				break;
+			default:
+				return null;
+		}
+		if(base.getFunction().opcode() != opcode || base.getChilds().isEmpty())
+			return null;
+		return base.getChilds().get(0);
+	}
+	private boolean isConstant(Expression tree, double value)
+	{
+		return tree.getFunction().isNumber() && tree.eval(this.context) == value;
+	}
+	/**
+	 * @return new constant, or null when grammar has no numbers
+	 */
+	private Expression constant(double value)
+	{
+		if(this.number == null)
+			return null;
+		final Expression constant = new Expression(this.number);
+		constant.addCoefficient(value);
+		return constant;
+	}
+	private Expression constantOr(double value, Expression node)
+	{
+		final Expression constant = this.constant(value);
+		return (constant != null) ? constant : node;
+	}
+	private static Expression withChilds(Expression node, Expression left, Expression right)
+	{
+		final List<Expression> childs = new ArrayList<>(2);
+		childs.add(left);
+		childs.add(right);
+		return node.copyNode().setChilds(childs);
+	}
+	private static Function findNumber(Context context)
+	{
+		for(Function f : context.getTerminalFunctions())
+			if(f.isNumber())
+				return f;
+		return null;
+	}
+}
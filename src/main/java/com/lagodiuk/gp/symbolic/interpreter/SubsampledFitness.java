@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+/**
+ * Fitness, which scores expressions on a subsample of training set, that is
+ * replaced between generations. Fitness on subsample is an estimate of
+ * fitness on the whole training set, so they can be compared.
+ * <p>
+ * Engine re-scores the best expressions on the whole training set (see
+ * {@link #fullFitness(Expression, Context)}), and discards cached values of
+ * fitness, when revision changes (see {@link #getRevision()}).
+ */
+public interface SubsampledFitness extends ExpressionFitness
+{
+	/**
+	 * @return false, when expressions are scored on the whole training set
+	 */
+	boolean isSubsampled();
+	/**
+	 * Chooses rows for generation. Subsample is changed for everyone, who
+	 * evaluates by this fitness, so it must not be shared by engines, which
+	 * are evolved concurrently, unless one driver chooses subsample for all
+	 * of them (e.g. island engine changes it between epochs).
+	 */
+	void nextSubsample(int generation);
+	double fullFitness(Expression expression, Context context);
+}
@@ -24,7 +24,7 @@ public class SyntaxTreeUtils {
 		if (depth > 0) {
 
 			Function f;
-			if (Math.random() >= 0.5) {
+			if (context.getRandom().nextDouble() >= 0.5) {
 				f = context.getRandomNonTerminalFunction();
 			} else {
 				f = context.getRandomTerminalFunction();
@@ -43,8 +43,8 @@ public class SyntaxTreeUtils {
 
 				if (f.isVariable()) {
 
-					String varName = context.getRandomVariableName();
-					expr.setVariable(varName);
+					int slot = context.getRandomVariableSlot();
+					expr.setVariable(context.getVariableName(slot), slot);
 
 				}
 
@@ -63,8 +63,8 @@ public class SyntaxTreeUtils {
 
 			if (f.isVariable()) {
 
-				String varName = context.getRandomVariableName();
-				expr.setVariable(varName);
+				int slot = context.getRandomVariableSlot();
+				expr.setVariable(context.getVariableName(slot), slot);
 
 			}
 
@@ -77,10 +77,19 @@ public class SyntaxTreeUtils {
 		}
 	}
 
+	/**
+	 * Simplifies tree in place and drops cached programs and hashes of its
+	 * nodes (see {@link Expression#invalidate()})
+	 */
 	public static void simplifyTree(Expression tree, Context context) {
+		simplifyNodes(tree, context);
+		tree.invalidate();
+	}
+
+	private static void simplifyNodes(Expression tree, Context context) {
 		if (hasVariableNode(tree)) {
 			for (Expression child : tree.getChilds()) {
-				simplifyTree(child, context);
+				simplifyNodes(child, context);
 			}
 		} else {
 			double value = tree.eval(context);
@@ -96,10 +105,93 @@ public class SyntaxTreeUtils {
 		}
 	}
 
+	/**
+	 * Persistent version of {@link #simplifyTree(Expression, Context)}:
+	 * simplified nodes and their ancestors are new, the rest of nodes are
+	 * shared with the given tree.
+	 *
+	 * Flags of variables are memoized by nodes (see
+	 * {@link Expression#containsVariable()}), so it takes O(n).
+	 *
+	 * @return root of simplified tree, or the given tree, when it can not be
+	 *         simplified
+	 * @see Simplifier
+	 */
+	public static Expression simplify(Expression tree, Context context) {
+		if (tree.containsVariable()) {
+			Expression result = tree;
+			List<Expression> childs = tree.getChilds();
+			for (int i = 0; i < childs.size(); i++) {
+				Expression child = childs.get(i);
+				Expression simplified = simplify(child, context);
+				if (simplified != child) {
+					if (result == tree) {
+						result = tree.copyNode();
+					}
+					result.getChilds().set(i, simplified);
+				}
+			}
+			return result;
+		}
+		if (tree.getFunction().isNumber()) {
+			return tree;
+		}
+		for (Function f : context.getTerminalFunctions()) {
+			if (f.isNumber()) {
+				Expression number = new Expression(f);
+				number.addCoefficient(tree.eval(context));
+				return number;
+			}
+		}
+		return tree;
+	}
+
+	/**
+	 * Persistent version of {@link #cutTree(Expression, Context, int)}
+	 *
+	 * @return root of cut tree, or the given tree, when it is not deeper than
+	 *         depth
+	 */
+	public static Expression cut(Expression tree, Context context, int depth) {
+		if (depth > 0) {
+			Expression result = tree;
+			List<Expression> childs = tree.getChilds();
+			for (int i = 0; i < childs.size(); i++) {
+				Expression child = childs.get(i);
+				Expression cut = cut(child, context, depth - 1);
+				if (cut != child) {
+					if (result == tree) {
+						result = tree.copyNode();
+					}
+					result.getChilds().set(i, cut);
+				}
+			}
+			return result;
+		}
+		Function func = context.getRandomTerminalFunction();
+		Expression leaf = new Expression(func);
+		if (func.isVariable()) {
+			int slot = context.getRandomVariableSlot();
+			leaf.setVariable(context.getVariableName(slot), slot);
+		} else {
+			leaf.addCoefficient(context.getRandomValue());
+		}
+		return leaf;
+	}
+
+	/**
+	 * Cuts tree in place and drops cached programs and hashes of its nodes
+	 * (see {@link Expression#invalidate()})
+	 */
 	public static void cutTree(Expression tree, Context context, int depth) {
+		cutNodes(tree, context, depth);
+		tree.invalidate();
+	}
+
+	private static void cutNodes(Expression tree, Context context, int depth) {
 		if (depth > 0) {
 			for (Expression child : tree.getChilds()) {
-				cutTree(child, context, depth - 1);
+				cutNodes(child, context, depth - 1);
 			}
 		} else {
 			tree.removeChilds();
@@ -107,7 +199,8 @@ public class SyntaxTreeUtils {
 			Function func = context.getRandomTerminalFunction();
 			tree.setFunction(func);
 			if (func.isVariable()) {
-				tree.setVariable(context.getRandomVariableName());
+				int slot = context.getRandomVariableSlot();
+				tree.setVariable(context.getVariableName(slot), slot);
 			} else {
 				tree.addCoefficient(context.getRandomValue());
 			}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic;
+
+import com.lagodiuk.gp.symbolic.api.Dataset;
+import com.lagodiuk.gp.symbolic.core.GpChromosome;
+import com.lagodiuk.gp.symbolic.core.ParsimonyPressure;
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionEngine;
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
+import com.lagodiuk.gp.symbolic.interpreter.Context;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import com.lagodiuk.gp.symbolic.interpreter.SyntaxTreeUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TabulatedFunctionFitnessTest {
+
+	@Test
+	public void testCandidateCoefficientsMatchCopyOfTree() {
+		Dataset.Builder builder = new Dataset.Builder(Arrays.asList("x"), 20);
+		for (int i = 0; i < 20; i++) {
+			double x = -5 + (i * 0.5);
+			builder.addRow(new double[] { x }, (x * x) - 3);
+		}
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(builder.build());
+		Context context = new Grammar(Arrays.asList(SymbolicRegressionFunctions.values()), Arrays.asList("x")).newContext();
+		Random random = new Random(1);
+
+		for (int i = 0; i < 200; i++) {
+			Expression tree = SyntaxTreeUtils.createTree(5, context);
+			String printed = tree.print();
+
+			List<Double> coefficientsOfTree = tree.getCoefficientsOfTree();
+			double[] candidate = new double[coefficientsOfTree.size()];
+			List<Double> candidateOfTree = new ArrayList<>();
+			for (int j = 0; j < candidate.length; j++) {
+				candidate[j] = random.nextGaussian();
+				candidateOfTree.add(candidate[j]);
+			}
+
+			double expected = fitness.fitness(tree.withCoefficientsOfTree(candidateOfTree), context);
+			double actual = fitness.fitness(tree, candidate, context);
+			assertTrue(printed, Double.compare(expected, actual) == 0);
+			// tree is not modified
+			assertEquals(printed, tree.print());
+			assertEquals(coefficientsOfTree, tree.getCoefficientsOfTree());
+		}
+	}
+
+	@Test
+	public void testRotatingSubsample() {
+		Dataset dataset = quadratic(100);
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(dataset);
+		fitness.setSubsampling(10, 0);
+		assertTrue(fitness.isSubsampled());
+
+		// each row is scored once per pass over training set
+		HashSet<Double> seen = new HashSet<>();
+		for (int generation = 0; generation < 10; generation++) {
+			long revision = fitness.getRevision();
+			fitness.nextSubsample(generation);
+			fitness.nextSubsample(generation);
+			assertEquals((generation == 0) ? revision : revision + 1, fitness.getRevision());
+
+			Dataset sample = fitness.getSample();
+			assertEquals(10, sample.getRowsCount());
+			for (double x : sample.getColumn("x")) {
+				assertTrue(seen.add(x));
+			}
+		}
+		assertEquals(100, seen.size());
+	}
+
+	@Test
+	public void testSubsampleGrowsToFullSet() {
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(quadratic(100));
+		fitness.setSubsampling(10, 30);
+
+		assertEquals(10, fitness.getSubsampleSize(0));
+		assertEquals(40, fitness.getSubsampleSize(10));
+		assertEquals(100, fitness.getSubsampleSize(30));
+		assertEquals(100, fitness.getSubsampleSize(50));
+
+		fitness.nextSubsample(30);
+		assertFalse(fitness.isSubsampled());
+		assertTrue(fitness.getSample() == fitness.getDataset());
+	}
+
+	@Test
+	public void testSubsampleEstimatesFullFitness() {
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(quadratic(1000));
+		Context context = new Grammar(Arrays.asList(SymbolicRegressionFunctions.values()), Arrays.asList("x")).newContext();
+		Expression tree = new Expression(SymbolicRegressionFunctions.CONSTANT).setCoefficientsOfNode(1.0);
+
+		double full = fitness.fitness(tree, context);
+		fitness.setSubsampling(500, 0);
+		assertTrue(Double.compare(full, fitness.fullFitness(tree, context)) == 0);
+		double estimate = fitness.fitness(tree, context);
+		assertTrue(Math.abs(estimate - full) < 0.2 * full);
+	}
+
+	@Test
+	public void testEngineReportsBestOnFullSet() {
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(quadratic(200));
+		fitness.setSubsampling(20, 0);
+		SymbolicRegressionEngine engine = new SymbolicRegressionEngine(fitness, Arrays.asList("x"),
+				Arrays.asList(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.MUL,
+						SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT));
+		engine.setFitnessCacheSize(0);
+
+		double previous = Double.POSITIVE_INFINITY;
+		for (int i = 0; i < 10; i++) {
+			engine.evolve(1);
+			Expression best = engine.getBestSyntaxTree();
+			double bestFitness = engine.getBestFitness();
+			assertTrue(Double.compare(fitness.fullFitness(best, engine.getContext()), bestFitness) == 0);
+			assertTrue(Double.compare(bestFitness, engine.getFitness(best)) == 0);
+			// the best tree on the whole training set is never lost
+			assertTrue(bestFitness <= previous);
+			previous = bestFitness;
+		}
+	}
+
+	@Test
+	public void testCutoffBoundsFitness() {
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(quadratic(1000));
+		Context context = new Grammar(Arrays.asList(SymbolicRegressionFunctions.values()), Arrays.asList("x")).newContext();
+		Expression tree = new Expression(SymbolicRegressionFunctions.CONSTANT).setCoefficientsOfNode(1.0);
+		double full = fitness.fitness(tree, context);
+
+		// fitness under cutoff is exact
+		assertTrue(Double.compare(full, fitness.fitness(tree, context, full)) == 0);
+		assertTrue(Double.compare(full, fitness.fitness(tree, context, 2 * full)) == 0);
+
+		// fitness over cutoff is a lower bound, which exceeds cutoff
+		double bound = fitness.fitness(tree, context, full / 10);
+		assertTrue(bound > full / 10);
+		assertTrue(bound < full);
+
+		fitness.setSubsampling(500, 0);
+		double estimate = fitness.fitness(tree, context);
+		assertTrue(fitness.fitness(tree, context, estimate / 10) > estimate / 10);
+		assertTrue(Double.compare(estimate, fitness.fitness(tree, context, estimate)) == 0);
+	}
+
+	@Test
+	public void testEngineRanksPopulationByExactFitness() {
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(quadratic(2000));
+		SymbolicRegressionEngine engine = new SymbolicRegressionEngine(fitness, Arrays.asList("x"),
+				Arrays.asList(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.MUL,
+						SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT));
+		assertTrue(engine.isFitnessCutoff());
+
+		for (int i = 0; i < 10; i++) {
+			engine.evolve(1);
+			// chromosomes, which were scored partially, don't survive with lower bound of fitness
+			for (GpChromosome chromosome : engine.getPopulation()) {
+				Expression tree = chromosome.getSyntaxTree();
+				assertTrue(tree.print(), Double.compare(fitness.fitness(tree, engine.getContext()), engine.getFitness(chromosome)) == 0);
+			}
+		}
+	}
+
+	@Test
+	public void testCutoffExcludesParsimonyPressure() {
+		TabulatedFunctionFitness fitness = new TabulatedFunctionFitness(quadratic(2000));
+		SymbolicRegressionEngine engine = new SymbolicRegressionEngine(fitness, Arrays.asList("x"),
+				Arrays.asList(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.MUL,
+						SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT));
+		engine.setParsimonyPressure(ParsimonyPressure.LINEAR);
+		engine.setParsimonyCoefficient(0.5);
+
+		for (int i = 0; i < 10; i++) {
+			engine.evolve(1);
+			// survivors are scored exactly, and each node adds the coefficient
+			for (GpChromosome chromosome : engine.getPopulation()) {
+				Expression tree = chromosome.getSyntaxTree();
+				double exact = fitness.fitness(tree, engine.getContext());
+				assertTrue(tree.print(), Double.compare(exact + (0.5 * tree.size()), engine.getFitness(chromosome)) == 0);
+			}
+			Expression best = engine.getBestSyntaxTree();
+			assertTrue(Double.compare(fitness.fitness(best, engine.getContext()), engine.getBestFitness()) == 0);
+		}
+	}
+
+	private static Dataset quadratic(int rows) {
+		Dataset.Builder builder = new Dataset.Builder(Arrays.asList("x"), rows);
+		for (int i = 0; i < rows; i++) {
+			double x = -5 + (i * 10.0 / rows);
+			builder.addRow(new double[] { x }, (x * x) - 3);
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.api;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class DatasetReaderTest {
+
+	@Test
+	public void testTargetsWithParameters() throws IOException {
+		Path file = write("# comment\r\n\r\nf(1, 2.5) = 3\r\n  Threshold = 0.5\nf(-4, 1e2)=-1.25E-1\n");
+		try (DatasetReader reader = DatasetReader.open(file)) {
+			Dataset dataset = reader.readTargets(Arrays.asList("x", "y"));
+
+			assertEquals(2, dataset.getRowsCount());
+			assertTrue(Arrays.equals(new double[] { 1, -4 }, dataset.getColumn("x")));
+			assertTrue(Arrays.equals(new double[] { 2.5, 100 }, dataset.getColumn("y")));
+			assertTrue(Arrays.equals(new double[] { 3, -0.125 }, dataset.getTargetValues()));
+			assertTrue(Double.compare(0.5, reader.getParameter("threshold", 1)) == 0);
+			assertTrue(Double.compare(7, reader.getParameter("iterations", 7)) == 0);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testCsv() throws IOException {
+		Path file = write("x, y, target\n1,2,3\n4, 5, NaN\n");
+		try {
+			Dataset dataset = DatasetFiles.readCsv(file);
+
+			assertEquals(Arrays.asList("x", "y"), dataset.getVariables());
+			assertTrue(Arrays.equals(new double[] { 1, 4 }, dataset.getColumn("x")));
+			assertTrue(Arrays.equals(new double[] { 2, 5 }, dataset.getColumn("y")));
+			assertTrue(Arrays.equals(new double[] { 3, Double.NaN }, dataset.getTargetValues()));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testNumbersAreParsedExactly() throws IOException {
+		Random random = new Random(1);
+		double[] expected = new double[1000];
+		StringBuilder text = new StringBuilder("x, target\n");
+		for (int i = 0; i < expected.length; i++) {
+			switch (i % 4) {
+				case 0:
+					expected[i] = random.nextGaussian() * Math.pow(10, random.nextInt(40) - 20);
+					break;
+				case 1:
+					expected[i] = random.nextInt(2000000) / 1000.0 - 1000;
+					break;
+				case 2:
+					expected[i] = random.nextInt();
+					break;
+				default:
+					expected[i] = Double.parseDouble(String.format("%.6e", random.nextDouble()));
+					break;
+			}
+			text.append(expected[i]).append(", ").append(i).append('\n');
+		}
+		Path file = write(text.toString());
+		try {
+			Dataset dataset = DatasetFiles.readCsv(file);
+			assertTrue(Arrays.equals(expected, dataset.getColumn("x")));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		Dataset.Builder builder = new Dataset.Builder(Arrays.asList("x", "y"));
+		for (int i = 0; i < 100; i++) {
+			builder.addRow(new double[] { i, Math.sin(i) }, i * 0.1);
+		}
+		Dataset dataset = builder.build();
+
+		Path file = Files.createTempFile("dataset", ".bin");
+		try {
+			DatasetFiles.writeBinary(dataset, file);
+			Dataset read = DatasetFiles.readBinary(file);
+
+			assertEquals(dataset.getVariables(), read.getVariables());
+			assertEquals(100, read.getRowsCount());
+			assertTrue(Arrays.equals(dataset.getColumn(0), read.getColumn(0)));
+			assertTrue(Arrays.equals(dataset.getColumn(1), read.getColumn(1)));
+			assertTrue(Arrays.equals(dataset.getTargetValues(), read.getTargetValues()));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testMalformedRow() throws IOException {
+		Path file = write("f(1, x) = 3\n");
+		try (DatasetReader reader = DatasetReader.open(file)) {
+			reader.readTargets(Arrays.asList("x", "y"));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private static Path write(String text) throws IOException {
+		Path file = Files.createTempFile("dataset", ".txt");
+		Files.write(file, text.getBytes(StandardCharsets.UTF_8));
+		return file;
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.api;
+
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class DatasetTest {
+
+	@Test
+	public void testFromTargets() {
+		Dataset dataset = Dataset.of(
+				new Target().when("x", 1).when("y", 2).targetIs(3),
+				new Target().when("x", 4).when("y", 5).targetIs(9),
+				new Target().when("x", 7).targetIs(7));
+
+		assertEquals(3, dataset.getRowsCount());
+		assertEquals(Arrays.asList("x", "y"), dataset.getVariables());
+		assertEquals(1, dataset.indexOf("y"));
+		assertEquals(-1, dataset.indexOf("z"));
+
+		assertTrue(Arrays.equals(new double[] { 1, 4, 7 }, dataset.getColumn("x")));
+		assertTrue(Arrays.equals(new double[] { 2, 5, 0 }, dataset.getColumn("y")));
+		assertTrue(Arrays.equals(new double[] { 3, 9, 7 }, dataset.getTargetValues()));
+	}
+
+	@Test
+	public void testBuilderGrowth() {
+		Dataset.Builder builder = new Dataset.Builder(Arrays.asList("x", "y"), 1);
+		double[] values = new double[2];
+		for (int i = 0; i < 1000; i++) {
+			values[0] = i;
+			values[1] = -i;
+			builder.addRow(values, i * 2);
+		}
+		Dataset dataset = builder.build();
+
+		assertEquals(1000, dataset.getRowsCount());
+		assertEquals(1000, dataset.getColumn(0).length);
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(Double.compare(i, dataset.getValue(i, 0)) == 0);
+			assertTrue(Double.compare(-i, dataset.getValue(i, 1)) == 0);
+			assertTrue(Double.compare(i * 2, dataset.getTargetValue(i)) == 0);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testWrongRowLength() {
+		new Dataset.Builder(Arrays.asList("x", "y")).addRow(new double[1], 0);
+	}
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.TabulatedFunctionFitness;
+import com.lagodiuk.gp.symbolic.api.Dataset;
+import com.lagodiuk.gp.symbolic.api.SymbolicRegressionDefaults;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionWriter;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class CheckpointTest {
+
+	private static final Grammar GRAMMAR = new Grammar(
+			Arrays.asList(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.MUL,
+					SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT),
+			Arrays.asList("x"));
+
+	@Test
+	public void testResumeFromBackgroundCheckpoint() throws IOException {
+		Path file = Files.createTempFile("engine", ".checkpoint");
+		try {
+			SymbolicRegressionEngine engine = new SymbolicRegressionEngine(createFitness(), GRAMMAR);
+			engine.setNodeSelection(NodeSelection.KOZA);
+			engine.setParentSurviveCount(2);
+			engine.setMaxTreeDepth(5);
+			engine.setMaxTreeSize(30);
+			engine.setParsimonyPressure(ParsimonyPressure.LINEAR);
+			engine.setParsimonyCoefficient(0.25);
+			engine.setCheckpoint(file, 2);
+			engine.evolve(4);
+			engine.flushCheckpoint();
+
+			SymbolicRegressionEngine resumed = SymbolicRegressionEngine.resume(createFitness(), GRAMMAR, file);
+			assertEquals(4, resumed.getIteration());
+			assertEquals(NodeSelection.KOZA, resumed.getNodeSelection());
+			assertEquals(2, resumed.getParentSurviveCount());
+			assertEquals(5, resumed.getMaxTreeDepth());
+			assertEquals(30, resumed.getMaxTreeSize());
+			assertEquals(ParsimonyPressure.LINEAR, resumed.getParsimonyPressure());
+			assertEquals(0.25, resumed.getParsimonyCoefficient(), 0.0);
+			assertEquals(trees(engine), trees(resumed));
+			assertEquals(engine.getFitness(engine.getBest()), resumed.getFitness(resumed.getBest()), 0.0);
+
+			resumed.evolve(2);
+			assertEquals(6, resumed.getIteration());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testResumeWithReorderedGrammar() throws IOException {
+		Path file = Files.createTempFile("engine", ".checkpoint");
+		try {
+			SymbolicRegressionEngine engine = new SymbolicRegressionEngine(createFitness(), GRAMMAR);
+			engine.evolve(2);
+			engine.saveCheckpoint(file);
+
+			Grammar grammar = new Grammar(
+					Arrays.asList(SymbolicRegressionFunctions.CONSTANT, SymbolicRegressionFunctions.MUL,
+							SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.ADD),
+					Arrays.asList("x"));
+			SymbolicRegressionEngine resumed = SymbolicRegressionEngine.resume(createFitness(), grammar, file);
+			assertEquals(trees(engine), trees(resumed));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testResumeFromFirstVersion() throws IOException {
+		Path file = Files.createTempFile("engine", ".checkpoint");
+		try {
+			SymbolicRegressionEngine engine = new SymbolicRegressionEngine(createFitness(), GRAMMAR);
+			engine.evolve(1);
+			List<Expression> trees = trees(engine);
+			writeFirstVersion(file, trees, trees.size());
+
+			SymbolicRegressionEngine resumed = SymbolicRegressionEngine.resume(createFitness(), GRAMMAR, file);
+			assertEquals(7, resumed.getIteration());
+			assertEquals(3, resumed.getParentSurviveCount());
+			assertEquals(NodeSelection.KOZA, resumed.getNodeSelection());
+			assertEquals(SymbolicRegressionDefaults.MAX_TREE_DEPTH, resumed.getMaxTreeDepth());
+			assertEquals(SymbolicRegressionDefaults.MAX_TREE_SIZE, resumed.getMaxTreeSize());
+			assertEquals(ParsimonyPressure.NONE, resumed.getParsimonyPressure());
+			assertEquals(trees, trees(resumed));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testCorruptPopulationSizeFails() throws IOException {
+		Path file = Files.createTempFile("engine", ".checkpoint");
+		try {
+			writeFirstVersion(file, new ArrayList<Expression>(), Integer.MAX_VALUE);
+			try {
+				SymbolicRegressionEngine.resume(createFitness(), GRAMMAR, file);
+				fail();
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testResumedEngineRepeatsRandomChoices() throws IOException {
+		Path file = Files.createTempFile("engine", ".checkpoint");
+		try {
+			SymbolicRegressionEngine engine = new SymbolicRegressionEngine(createFitness(), GRAMMAR, 42);
+			engine.evolve(2);
+			engine.saveCheckpoint(file);
+
+			SymbolicRegressionEngine resumed = SymbolicRegressionEngine.resume(createFitness(), GRAMMAR, file);
+			for (int i = 0; i < engine.getPopulation().size(); i++) {
+				GpChromosome original = engine.getPopulation().get(i);
+				GpChromosome restored = resumed.getPopulation().get(i);
+				assertEquals(original.mutate().getSyntaxTree(), restored.mutate().getSyntaxTree());
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testResumeWithDifferentGrammarFails() throws IOException {
+		Path file = Files.createTempFile("engine", ".checkpoint");
+		try {
+			SymbolicRegressionEngine engine = new SymbolicRegressionEngine(createFitness(), GRAMMAR);
+			engine.evolve(1);
+			engine.saveCheckpoint(file);
+
+			Grammar grammar = new Grammar(Arrays.asList(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.VARIABLE), Arrays.asList("x"));
+			try {
+				SymbolicRegressionEngine.resume(createFitness(), grammar, file);
+				fail();
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	/**
+	 * Layout of the first version: no limits of trees, parsimony pressure and seed
+	 */
+	private static void writeFirstVersion(Path file, List<Expression> trees, int populationSize) throws IOException {
+		try (OutputStream stream = Files.newOutputStream(file)) {
+			DataOutputStream out = new DataOutputStream(stream);
+			ExpressionWriter writer = new ExpressionWriter(GRAMMAR, out);
+			out.writeInt(0x4750434B);
+			out.writeInt(1);
+			writer.writeHeader();
+			out.writeInt(7);
+			out.writeInt(3);
+			out.writeByte(NodeSelection.KOZA.ordinal());
+			out.writeInt(100);
+			out.writeInt(populationSize);
+			for (int i = 0; i < trees.size(); i++) {
+				out.writeBoolean(true);
+			}
+			writer.writeAll(trees);
+			out.flush();
+		}
+	}
+
+	private static List<Expression> trees(SymbolicRegressionEngine engine) {
+		List<Expression> trees = new ArrayList<>();
+		for (GpChromosome chromosome : engine.getPopulation()) {
+			trees.add(chromosome.getSyntaxTree());
+		}
+		return trees;
+	}
+
+	private static TabulatedFunctionFitness createFitness() {
+		Dataset.Builder builder = new Dataset.Builder(Arrays.asList("x"), 20);
+		for (int i = 0; i < 20; i++) {
+			double x = -5 + (i * 0.5);
+			builder.addRow(new double[] { x }, (x * x) - 3);
+		}
+		return new TabulatedFunctionFitness(builder.build());
+	}
+}
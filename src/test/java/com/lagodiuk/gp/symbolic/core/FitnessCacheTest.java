@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class FitnessCacheTest {
+
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		FitnessCache cache = new FitnessCache(2);
+		cache.put(key(1), 0, tree(), 1.0);
+		cache.put(key(2), 0, tree(), 2.0);
+		assertNotNull(cache.get(key(1), 0));
+
+		cache.put(key(3), 0, tree(), 3.0);
+
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertNull(cache.get(key(2), 0));
+		assertEquals(1.0, cache.get(key(1), 0).fitness, 0.0);
+		assertEquals(3.0, cache.get(key(3), 0).fitness, 0.0);
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testRevisionDiscardsEntries() {
+		FitnessCache cache = new FitnessCache(10);
+		cache.put(key(1), 0, tree(), 1.0);
+		assertNotNull(cache.get(key(1), 0));
+
+		assertNull(cache.get(key(1), 1));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testLowerBoundIsNotExact() {
+		FitnessCache cache = new FitnessCache(10);
+		cache.put(key(1), 0, tree(), 1.0);
+		cache.put(key(2), 0, tree(), 5.0, 4.0);
+		cache.put(key(3), 0, tree(), 3.0, 4.0);
+
+		assertTrue(cache.get(key(1), 0).isExact());
+		assertFalse(cache.get(key(2), 0).isExact());
+		assertTrue(cache.get(key(3), 0).isExact());
+	}
+
+	private static Expression key(double value) {
+		return new Expression(SymbolicRegressionFunctions.CONSTANT).setCoefficientsOfNode(Arrays.asList(value));
+	}
+
+	private static Expression tree() {
+		return new Expression(SymbolicRegressionFunctions.VARIABLE).setVariable("x");
+	}
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import com.lagodiuk.gp.symbolic.interpreter.SyntaxTreeUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class GpChromosomeTest {
+
+	private static final Grammar GRAMMAR = new Grammar(Arrays.asList(SymbolicRegressionFunctions.values()), Arrays.asList("x", "y"));
+
+	@Test
+	public void testOperatorsRespectLimitsOfTree() {
+		GpFitness fitness = new GpFitness((expression, context) -> 0.0, GRAMMAR);
+		fitness.setMaxTreeDepth(4);
+		fitness.setMaxTreeSize(12);
+		Random random = new Random(1);
+
+		List<GpChromosome> population = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			population.add(new GpChromosome(fitness.getContext(), fitness, SyntaxTreeUtils.createTree(1, fitness.getContext())));
+		}
+		for (int i = 0; i < 2000; i++) {
+			GpChromosome parent = population.get(random.nextInt(population.size()));
+			List<GpChromosome> offspring = (i % 2 == 0)
+				? parent.crossover(population.get(random.nextInt(population.size())))
+				: Arrays.asList(parent.mutate());
+			for (GpChromosome chromosome : offspring) {
+				Expression tree = chromosome.getSyntaxTree();
+				assertTrue(tree.print(), tree.getDepth() <= 4);
+				assertTrue(tree.print(), tree.size() <= 12);
+				population.set(random.nextInt(population.size()), chromosome);
+			}
+		}
+	}
+
+	@Test
+	public void testLinearParsimony() {
+		GpFitness fitness = new GpFitness((expression, context) -> 1.0, GRAMMAR);
+		fitness.setCoefficientOptimizer((chromosome, context) -> {});
+		fitness.setCache(null);
+
+		Expression x = new Expression(SymbolicRegressionFunctions.VARIABLE).setVariable("x");
+		Expression sum = new Expression(SymbolicRegressionFunctions.ADD);
+		sum.addChild(x);
+		sum.addChild(new Expression(SymbolicRegressionFunctions.VARIABLE).setVariable("y"));
+
+		assertEquals(1.0, fitness.calculate(new GpChromosome(fitness.getContext(), fitness, sum)), 0.0);
+
+		fitness.setParsimonyPressure(ParsimonyPressure.LINEAR);
+		fitness.setParsimonyCoefficient(0.5);
+		GpChromosome small = new GpChromosome(fitness.getContext(), fitness, x);
+		GpChromosome large = new GpChromosome(fitness.getContext(), fitness, sum);
+		assertEquals(1.5, fitness.calculate(small), 0.0);
+		assertEquals(2.5, fitness.calculate(large), 0.0);
+		// chromosome keeps fitness of its tree, which bounds cutoff
+		assertEquals(1.0, fitness.rawFitness(large), 0.0);
+		assertEquals(1.0, fitness.removeParsimony(3, 2.5), 0.0);
+	}
+}
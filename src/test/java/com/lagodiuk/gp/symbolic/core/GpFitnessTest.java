@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.TabulatedFunctionFitness;
+import com.lagodiuk.gp.symbolic.api.Dataset;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionParser;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class GpFitnessTest {
+
+	private static final Grammar GRAMMAR = new Grammar(
+			Arrays.asList(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.MUL,
+					SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT),
+			Arrays.asList("x"));
+
+	private static final String[] TREES = { "x", "(x * x)", "(x * (x * x))", "((x * x) * (x * x))" };
+
+	@Test
+	public void testOffspringAreScoredExactlyWhenTooFewFitCutoff() {
+		GpFitness fitness = createFitness();
+		fitness.setCutoff(1.0);
+		// none of offspring fits cutoff, so lower bounds would decide, which of them survive
+		fitness.startGeneration(2);
+		List<GpChromosome> offspring = offspring(fitness);
+		List<Double> ranked = new ArrayList<>();
+		List<Double> exact = new ArrayList<>();
+		for (GpChromosome chromosome : offspring) {
+			ranked.add(fitness.calculate(chromosome));
+			exact.add(fitness.exactFitness(chromosome));
+		}
+
+		// two best offspring are scored exactly, the rest are worse than both of them
+		List<Double> sorted = new ArrayList<>(exact);
+		Collections.sort(sorted);
+		double worstSurvivor = sorted.get(1);
+		for (int i = 0; i < offspring.size(); i++) {
+			if (exact.get(i) <= worstSurvivor) {
+				assertEquals(exact.get(i), ranked.get(i), 0.0);
+			} else {
+				assertTrue(ranked.get(i) > worstSurvivor);
+			}
+		}
+	}
+
+	@Test
+	public void testLowerBoundsAreKeptWhenEnoughOffspringFitCutoff() {
+		GpFitness fitness = createFitness();
+		fitness.setCutoff(1.0);
+		// elites fill the next generation, so offspring over cutoff are discarded anyway
+		fitness.startGeneration(0);
+		for (GpChromosome chromosome : offspring(fitness)) {
+			double lowerBound = fitness.calculate(chromosome);
+			assertTrue(lowerBound > 1.0);
+			assertTrue(lowerBound < fitness.exactFitness(chromosome));
+		}
+	}
+
+	private static List<GpChromosome> offspring(GpFitness fitness) {
+		ExpressionParser parser = new ExpressionParser(GRAMMAR);
+		List<GpChromosome> offspring = new ArrayList<>();
+		for (String tree : TREES) {
+			Expression expression = parser.parse(tree);
+			GpChromosome chromosome = new GpChromosome(fitness.getContext(), fitness, expression);
+			fitness.submit(chromosome);
+			offspring.add(chromosome);
+		}
+		return offspring;
+	}
+
+	private static GpFitness createFitness() {
+		Dataset.Builder builder = new Dataset.Builder(Arrays.asList("x"), 2000);
+		for (int i = 0; i < 2000; i++) {
+			double x = -5 + (i * 0.005);
+			builder.addRow(new double[] { x }, (x * x) - 3);
+		}
+		return new GpFitness(new TabulatedFunctionFitness(builder.build()), GRAMMAR);
+	}
+}
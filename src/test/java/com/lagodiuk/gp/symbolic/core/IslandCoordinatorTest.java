@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.TabulatedFunctionFitness;
+import com.lagodiuk.gp.symbolic.api.Dataset;
+import com.lagodiuk.gp.symbolic.interpreter.ExpressionWriter;
+import com.lagodiuk.gp.symbolic.interpreter.Grammar;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class IslandCoordinatorTest {
+
+	private static final Grammar GRAMMAR = new Grammar(
+			Arrays.asList(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.MUL, SymbolicRegressionFunctions.SIN,
+					SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT),
+			Arrays.asList("x", "y"));
+
+	@Test
+	public void testWorkersExchangeMigrants() throws Exception {
+		try (IslandCoordinator coordinator = new IslandCoordinator(GRAMMAR, 0)) {
+			coordinator.setTopology(MigrationTopology.FULLY_CONNECTED);
+			coordinator.start();
+
+			Thread[] threads = new Thread[2];
+			for (int i = 0; i < threads.length; i++) {
+				IslandWorker worker = createWorker(coordinator.getPort());
+				threads[i] = new Thread(() -> {
+					try (IslandWorker w = worker) {
+						w.evolve(6);
+					}
+				});
+				threads[i].start();
+			}
+			for (Thread thread : threads) {
+				thread.join();
+			}
+
+			assertNotNull(coordinator.getBestSyntaxTree());
+			assertTrue(coordinator.getBestFitness() >= 0);
+			awaitWorkersCount(coordinator, 0);
+		}
+	}
+
+	@Test
+	public void testCoordinatorSurvivesWorkerLoss() throws Exception {
+		try (IslandCoordinator coordinator = new IslandCoordinator(GRAMMAR, 0)) {
+			coordinator.start();
+
+			// worker connects and disappears in the middle of migration
+			try (Socket socket = new Socket("localhost", coordinator.getPort())) {
+				DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+				out.writeInt(IslandCoordinator.MAGIC);
+				out.writeInt(IslandCoordinator.VERSION);
+				new ExpressionWriter(GRAMMAR, out).writeHeader();
+				new DataInputStream(socket.getInputStream()).readInt();
+				out.writeDouble(1.0);
+				out.flush();
+			}
+
+			try (IslandWorker worker = createWorker(coordinator.getPort())) {
+				worker.evolve(4);
+				assertTrue(worker.getWorkerId() >= 0);
+			}
+			assertNotNull(coordinator.getBestSyntaxTree());
+			awaitWorkersCount(coordinator, 0);
+		}
+	}
+
+	@Test
+	public void testWorkerSurvivesCoordinatorLoss() throws Exception {
+		IslandWorker worker;
+		try (IslandCoordinator coordinator = new IslandCoordinator(GRAMMAR, 0)) {
+			coordinator.start();
+			worker = createWorker(coordinator.getPort());
+			worker.evolve(2);
+		}
+		worker.evolve(4);
+		assertEquals(-1, worker.getWorkerId());
+		assertEquals(6, worker.getEngine().getIteration());
+	}
+
+	private static IslandWorker createWorker(int port) {
+		Dataset.Builder builder = new Dataset.Builder(Arrays.asList("x", "y"), 20);
+		for (int i = 0; i < 20; i++) {
+			double x = -5 + (i * 0.5);
+			builder.addRow(new double[] { x, -x }, (x * x) - 3);
+		}
+		SymbolicRegressionEngine engine = new SymbolicRegressionEngine(new TabulatedFunctionFitness(builder.build()), GRAMMAR);
+		IslandWorker worker = new IslandWorker(engine, "localhost", port);
+		worker.setMigrationInterval(2);
+		worker.setTimeout(10000);
+		return worker;
+	}
+
+	private static void awaitWorkersCount(IslandCoordinator coordinator, int count) throws InterruptedException {
+		for (int i = 0; i < 100 && coordinator.getWorkersCount() != count; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(count, coordinator.getWorkersCount());
+	}
+}
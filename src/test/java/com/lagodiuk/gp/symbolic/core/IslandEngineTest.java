@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.TabulatedFunctionFitness;
+import com.lagodiuk.gp.symbolic.api.Dataset;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class IslandEngineTest {
+
+	@Test
+	public void testEvolveInEpochs() {
+		IslandEngine engine = createEngine(3);
+		engine.setMigrationInterval(2);
+		engine.evolve(5);
+
+		for (SymbolicRegressionEngine island : engine.getIslands()) {
+			assertEquals(5, island.getIteration());
+		}
+		assertEquals(5, engine.getIteration());
+		assertNotNull(engine.getBestSyntaxTree());
+	}
+
+	@Test
+	public void testFullyConnectedMigrationSpreadsBestTree() {
+		IslandEngine engine = createEngine(3);
+		engine.setTopology(MigrationTopology.FULLY_CONNECTED);
+		engine.setMigrationInterval(1000);
+		engine.evolve(2);
+
+		List<Expression> migrants = new ArrayList<>();
+		for (SymbolicRegressionEngine island : engine.getIslands()) {
+			migrants.add(island.getBestSyntaxTree());
+		}
+
+		engine.migrate();
+
+		// each island receives migrants of all other islands into distinct slots
+		for (int j = 0; j < migrants.size(); j++) {
+			List<Expression> trees = new ArrayList<>();
+			for (GpChromosome chromosome : engine.getIslands().get(j).getPopulation()) {
+				trees.add(chromosome.getSyntaxTree());
+			}
+			for (int i = 0; i < migrants.size(); i++) {
+				if (i != j) {
+					assertTrue(containsSame(trees, migrants.get(i)));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSharedSubsampleChangesBetweenEpochs() {
+		TabulatedFunctionFitness fitness = createFitness();
+		fitness.setSubsampling(5, 0);
+		IslandEngine engine = createEngine(fitness, 3);
+		engine.setMigrationInterval(3);
+
+		// islands evolve the same epoch on the same subsample
+		Map<Integer, Set<Long>> revisions = new HashMap<>();
+		engine.addIterationListener(island -> {
+			int epoch = (island.getIteration() - 1) / 3;
+			revisions.computeIfAbsent(epoch, e -> new HashSet<>()).add(fitness.getRevision());
+		});
+		engine.evolve(9);
+
+		assertEquals(3, revisions.size());
+		Set<Long> all = new HashSet<>();
+		for (Set<Long> epoch : revisions.values()) {
+			assertEquals(1, epoch.size());
+			all.addAll(epoch);
+		}
+		assertEquals(3, all.size());
+	}
+
+	@Test
+	public void testTerminationOfIslandStopsAllIslands() {
+		IslandEngine engine = createEngine(2);
+		engine.setMigrationInterval(3);
+		engine.addIterationListener(island -> {
+			if (island.getIteration() >= 4) {
+				island.terminate();
+			}
+		});
+		engine.evolve(100);
+
+		assertTrue(engine.getIteration() < 100);
+	}
+
+	private static boolean containsSame(List<Expression> trees, Expression tree) {
+		for (Expression candidate : trees) {
+			if (candidate == tree) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static IslandEngine createEngine(int islandsCount) {
+		return createEngine(createFitness(), islandsCount);
+	}
+
+	private static IslandEngine createEngine(TabulatedFunctionFitness fitness, int islandsCount) {
+		return new IslandEngine(
+				fitness,
+				Arrays.asList("x"),
+				Arrays.asList(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.MUL,
+						SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT),
+				islandsCount);
+	}
+
+	private static TabulatedFunctionFitness createFitness() {
+		Dataset.Builder builder = new Dataset.Builder(Arrays.asList("x"), 20);
+		for (int i = 0; i < 20; i++) {
+			double x = -5 + (i * 0.5);
+			builder.addRow(new double[] { x }, (x * x) - 3);
+		}
+		return new TabulatedFunctionFitness(builder.build());
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.core;
+
+import com.lagodiuk.gp.symbolic.api.Dataset;
+import com.lagodiuk.gp.symbolic.api.Target;
+import com.lagodiuk.gp.symbolic.interpreter.CompiledExpression;
+import com.lagodiuk.gp.symbolic.interpreter.Context;
+import com.lagodiuk.gp.symbolic.interpreter.Expression;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class LevenbergMarquardtOptimizerTest {
+
+	@Test
+	public void testFitsNonLinearCoefficients() {
+		// target is 2.5 * sin(1.5 * x) + 4
+		Target[] targets = new Target[40];
+		for (int i = 0; i < targets.length; i++) {
+			double x = -2 + (i * 0.1);
+			targets[i] = new Target().when("x", x).targetIs((2.5 * Math.sin(1.5 * x)) + 4);
+		}
+		Dataset dataset = Dataset.of(targets);
+		Context context = new Context(Arrays.asList(SymbolicRegressionFunctions.values()), Arrays.asList("x"));
+
+		Expression tree = expr(SymbolicRegressionFunctions.ADD,
+				expr(SymbolicRegressionFunctions.MUL,
+						constant(1),
+						expr(SymbolicRegressionFunctions.SIN,
+								expr(SymbolicRegressionFunctions.MUL, constant(1), variable("x")))),
+				constant(0));
+		CompiledExpression program = tree.compile();
+
+		double[] fitted = new LevenbergMarquardtOptimizer().fit(program, dataset, context);
+
+		assertEquals(2.5, fitted[0], 1e-6);
+		assertEquals(1.5, fitted[1], 1e-6);
+		assertEquals(4.0, fitted[2], 1e-6);
+	}
+
+	private static Expression expr(SymbolicRegressionFunctions function, Expression... childs) {
+		return new Expression(function).setChilds(Arrays.asList(childs));
+	}
+
+	private static Expression constant(double value) {
+		return new Expression(SymbolicRegressionFunctions.CONSTANT).setCoefficientsOfNode(Arrays.asList(value));
+	}
+
+	private static Expression variable(String name) {
+		return new Expression(SymbolicRegressionFunctions.VARIABLE).setVariable(name);
+	}
+}
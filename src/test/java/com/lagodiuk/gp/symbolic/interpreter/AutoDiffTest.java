@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
+import static com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions.ADD;
+import static com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions.CONSTANT;
+import static com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions.COS;
+import static com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions.DIV;
+import static com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions.LN;
+import static com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions.MUL;
+import static com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions.SIN;
+import static com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions.SUB;
+import static com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions.VARIABLE;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.constantExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.createContext;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.list;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.powExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.subExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.variableExpr;
+import java.util.Arrays;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class AutoDiffTest {
+
+	@Test
+	public void testPow() {
+		// (x - 3) ^ 2
+		CompiledExpression program = powExpr(subExpr(variableExpr("x"), constantExpr(3)), constantExpr(2)).compile();
+
+		for (AutoDiff.Mode mode : AutoDiff.Mode.values()) {
+			AutoDiff autoDiff = new AutoDiff(program, mode);
+			double[] variableDerivatives = new double[1];
+			double[] constantDerivatives = new double[2];
+
+			double value = autoDiff.eval(new double[] { 5 }, program.getConstants(), variableDerivatives, constantDerivatives);
+
+			assertEquals(4, value, 1e-12);
+			assertEquals(4, variableDerivatives[0], 1e-12);
+			assertEquals(-4, constantDerivatives[0], 1e-12);
+			assertEquals(4 * Math.log(2), constantDerivatives[1], 1e-12);
+		}
+	}
+
+	@Test
+	public void testEveryFunctionHasOpcode() {
+		// functions without opcodes would be CALL instructions, which can not be differentiated
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		for (int i = 0; i < 100; i++) {
+			new AutoDiff(SyntaxTreeUtils.createTree(4, context).compile());
+		}
+	}
+
+	@Test
+	public void testModesAgree() {
+		Context context = new Context(list(SymbolicRegressionFunctions.values()), list("x", "y"));
+
+		for (int i = 0; i < 200; i++) {
+			CompiledExpression program = SyntaxTreeUtils.createTree(4, context).compile();
+			AutoDiff forward = new AutoDiff(program, AutoDiff.Mode.FORWARD);
+			AutoDiff reverse = new AutoDiff(program, AutoDiff.Mode.REVERSE);
+			double[] constants = program.getConstants();
+			double[] values = new double[program.getVariablesCount()];
+			double[] forwardVariables = new double[values.length];
+			double[] reverseVariables = new double[values.length];
+			double[] forwardConstants = new double[constants.length];
+			double[] reverseConstants = new double[constants.length];
+
+			for (double x = -2.25; x < 2; x += 0.5) {
+				Arrays.fill(values, x);
+				double forwardValue = forward.eval(values, constants, forwardVariables, forwardConstants);
+				double reverseValue = reverse.eval(values, constants, reverseVariables, reverseConstants);
+
+				assertTrue(Double.compare(program.eval(values, new double[program.getMaxStackSize()], context), forwardValue) == 0);
+				assertTrue(Double.compare(forwardValue, reverseValue) == 0);
+				assertClose(forwardVariables, reverseVariables);
+				assertClose(forwardConstants, reverseConstants);
+			}
+		}
+	}
+
+	@Test
+	public void testRandomTreesMatchFiniteDifferences() {
+		// functions, which are smooth everywhere except poles
+		Context context = createContext(ADD, SUB, MUL, DIV, SIN, COS, LN, VARIABLE, CONSTANT);
+		double h = 1e-6;
+
+		for (int i = 0; i < 200; i++) {
+			CompiledExpression program = SyntaxTreeUtils.createTree(3, context).compile();
+			AutoDiff autoDiff = new AutoDiff(program);
+			double[] stack = new double[program.getMaxStackSize()];
+			double[] constants = program.getConstants();
+			double[] constantDerivatives = new double[constants.length];
+			double[] variableDerivatives = new double[program.getVariablesCount()];
+			double[] values = new double[program.getVariablesCount()];
+
+			for (double x = -2.25; x < 2; x += 0.5) {
+				Arrays.fill(values, x);
+
+				double value = autoDiff.eval(values, constants, variableDerivatives, constantDerivatives);
+				if (!(Math.abs(value) < 1e4)) {
+					continue;
+				}
+
+				for (int c = 0; c < constants.length; c++) {
+					double[] shifted = constants.clone();
+					shifted[c] += h;
+					double right = program.eval(values, shifted, stack, context);
+					shifted[c] -= 2 * h;
+					double left = program.eval(values, shifted, stack, context);
+					assertDerivative((right - left) / (2 * h), constantDerivatives[c]);
+				}
+				for (int v = 0; v < values.length; v++) {
+					double[] shifted = values.clone();
+					shifted[v] += h;
+					double right = program.eval(shifted, stack, context);
+					shifted[v] -= 2 * h;
+					double left = program.eval(shifted, stack, context);
+					assertDerivative((right - left) / (2 * h), variableDerivatives[v]);
+				}
+			}
+		}
+	}
+
+	private static void assertDerivative(double expected, double actual) {
+		if (Math.abs(expected) < 1e4) {
+			assertTrue(expected + " vs " + actual, Math.abs(expected - actual) <= 1e-4 * Math.max(1, Math.abs(expected)));
+		}
+	}
+
+	private static void assertClose(double[] expected, double[] actual) {
+		for (int i = 0; i < expected.length; i++) {
+			// modes may differ only where infinities meet zero derivatives
+			if (Double.isFinite(expected[i]) && Double.isFinite(actual[i])) {
+				assertEquals(expected[i], actual[i], 1e-9 * Math.max(1, Math.abs(expected[i])));
+			}
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.addExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.constantExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.createContext;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.variableExpr;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class BytecodeCompilerTest {
+
+	@Test
+	public void testRandomTreesMatchInterpreter() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		BytecodeCompiler compiler = new BytecodeCompiler(16);
+		int slot = context.getVariableSlot("x");
+		double[] values = new double[slot + 1];
+
+		for (int i = 0; i < 200; i++) {
+			Expression tree = SyntaxTreeUtils.createTree(5, context);
+			BytecodeExpression compiled = compiler.compile(tree, context);
+
+			for (double x = -5; x < 5; x += 0.5) {
+				context.setVariable("x", x);
+				values[slot] = x;
+				double expected = tree.eval(context);
+				double actual = compiled.eval(values);
+				assertTrue(tree.print(), Double.compare(expected, actual) == 0);
+			}
+		}
+		assertTrue(compiler.getCachedClassesCount() <= 16);
+	}
+
+	@Test
+	public void testClassIsSharedByTreesWithDifferentCoefficients() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		BytecodeCompiler compiler = new BytecodeCompiler(16);
+		int slot = context.getVariableSlot("x");
+		double[] values = new double[slot + 1];
+		values[slot] = 2;
+
+		BytecodeExpression first = compiler.compile(addExpr(variableExpr("x"), constantExpr(5)), context);
+		BytecodeExpression second = compiler.compile(addExpr(variableExpr("x"), constantExpr(-1)), context);
+
+		assertTrue(first.getClass() == second.getClass());
+		assertEquals(1, compiler.getCachedClassesCount());
+		assertEquals(1, compiler.getHits());
+		assertTrue(Double.compare(7, first.eval(values)) == 0);
+		assertTrue(Double.compare(1, second.eval(values)) == 0);
+
+		BytecodeExpression third = compiler.compile(addExpr(constantExpr(5), variableExpr("x")), context);
+		assertTrue(first.getClass() != third.getClass());
+		assertEquals(2, compiler.getCachedClassesCount());
+	}
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.addExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.constantExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.createContext;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.list;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.subExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.variableExpr;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class CompiledExpressionTest {
+
+	@Test
+	public void testPostfixProgram() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+
+		Expression expr = subExpr(constantExpr(3), addExpr(variableExpr("x"), constantExpr(1)));
+		CompiledExpression program = CompiledExpression.compile(expr);
+
+		assertEquals(5, program.size());
+		assertEquals(3, program.getMaxStackSize());
+		assertEquals(1, program.getVariablesCount());
+		assertEquals("x", program.getVariable(0));
+
+		for (int x = -10; x < 10; x++) {
+			context.setVariable("x", x);
+			assertTrue(Double.compare(3 - (x + 1), program.eval(context)) == 0);
+		}
+	}
+
+	@Test
+	public void testConstantsInOrderOfCoefficientsOfTree() {
+		Expression expr = subExpr(constantExpr(3), subExpr(addExpr(variableExpr("x"), constantExpr(1)), constantExpr(2)));
+		CompiledExpression program = expr.compile();
+
+		assertEquals(list(3.0, 1.0, 2.0), expr.getCoefficientsOfTree());
+		double[] constants = program.getConstants();
+		assertEquals(3, constants.length);
+		assertTrue(Double.compare(3.0, constants[0]) == 0);
+		assertTrue(Double.compare(1.0, constants[1]) == 0);
+		assertTrue(Double.compare(2.0, constants[2]) == 0);
+	}
+
+	@Test
+	public void testRandomTreesMatchInterpreter() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+
+		for (int i = 0; i < 200; i++) {
+			Expression tree = SyntaxTreeUtils.createTree(5, context);
+			Expression compiled = tree.clone();
+			compiled.compile();
+
+			for (double x = -5; x < 5; x += 0.5) {
+				context.setVariable("x", x);
+				double expected = tree.eval(context);
+				double actual = compiled.eval(context);
+				assertTrue(tree.print(), Double.compare(expected, actual) == 0);
+			}
+		}
+	}
+
+	@Test
+	public void testColumnsMatchInterpreter() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		ColumnWorkspace workspace = new ColumnWorkspace();
+
+		double[] xs = new double[20];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = -5 + (i * 0.5);
+		}
+
+		for (int i = 0; i < 200; i++) {
+			Expression tree = SyntaxTreeUtils.createTree(5, context);
+			CompiledExpression program = tree.clone().compile();
+
+			double[][] columns = new double[program.getVariablesCount()][];
+			for (int v = 0; v < columns.length; v++) {
+				columns[v] = xs;
+			}
+			double[] actual = program.evalColumns(columns, xs.length, workspace);
+
+			for (int row = 0; row < xs.length; row++) {
+				context.setVariable("x", xs[row]);
+				double expected = tree.eval(context);
+				assertTrue(tree.print(), Double.compare(expected, actual[row]) == 0);
+			}
+		}
+	}
+
+	@Test
+	public void testBlocksOfColumnsMatchWholeColumns() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		ColumnWorkspace workspace = new ColumnWorkspace();
+
+		double[] xs = new double[20];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = -5 + (i * 0.5);
+		}
+
+		for (int i = 0; i < 200; i++) {
+			Expression tree = SyntaxTreeUtils.createTree(5, context);
+			CompiledExpression program = tree.compile();
+
+			double[][] columns = new double[program.getVariablesCount()][];
+			for (int v = 0; v < columns.length; v++) {
+				columns[v] = xs;
+			}
+			double[] expected = program.evalColumns(columns, xs.length, workspace).clone();
+			for (int offset = 0; offset < xs.length; offset += 7) {
+				int count = Math.min(7, xs.length - offset);
+				double[] actual = program.evalColumns(columns, offset, count, program.getConstants(), workspace);
+				for (int row = 0; row < count; row++) {
+					assertTrue(tree.print(), Double.compare(expected[offset + row], actual[row]) == 0);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testInvalidation() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		context.setVariable("x", 2);
+
+		Expression varX = variableExpr("x");
+		Expression const5 = constantExpr(5);
+		Expression expr = addExpr(varX, const5);
+
+		CompiledExpression program = expr.compile();
+		assertTrue(program == expr.compile());
+		assertTrue(Double.compare(7, expr.eval(context)) == 0);
+
+		expr.setFunction(SymbolicRegressionFunctions.MUL);
+		assertTrue(program != expr.compile());
+		assertTrue(Double.compare(10, expr.eval(context)) == 0);
+
+		const5.setCoefficientsOfNode(list(6.0));
+		expr.invalidate();
+		assertTrue(Double.compare(12, expr.eval(context)) == 0);
+	}
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.addExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.createContext;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.list;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.subExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.variableExpr;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class ContextTest {
+
+	@Test
+	public void testSlots() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+
+		assertEquals(0, context.getVariableSlot("x"));
+		assertEquals(1, context.defineVariable("y"));
+		assertEquals(1, context.defineVariable("y"));
+		assertEquals(2, context.getVariablesCount());
+		assertEquals("y", context.getVariableName(1));
+
+		context.setVariable(0, 3);
+		context.setVariable("y", 4);
+		assertTrue(Double.compare(3, context.lookupVariable("x")) == 0);
+		assertTrue(Double.compare(4, context.lookupVariable(1)) == 0);
+	}
+
+	@Test
+	public void testVariableSlotResolvedOnce() {
+		Context context = new Context(list(SymbolicRegressionFunctions.values()), list("x", "y"));
+
+		Expression varY = variableExpr("y");
+		Expression expr = addExpr(variableExpr("x"), varY);
+		assertEquals(-1, varY.getVariableSlot());
+
+		context.setVariable("x", 2);
+		context.setVariable("y", 5);
+		assertTrue(Double.compare(7, expr.eval(context)) == 0);
+		assertEquals(1, varY.getVariableSlot());
+		assertEquals(1, varY.clone().getVariableSlot());
+	}
+
+	@Test
+	public void testFramesOfSharedGrammar() {
+		Grammar grammar = new Grammar(list(SymbolicRegressionFunctions.values()), list("x", "y"));
+		Context first = grammar.newContext();
+		Context second = grammar.newContext();
+
+		assertEquals(1, first.getVariableSlot("y"));
+		assertEquals(1, second.getVariableSlot("y"));
+
+		first.setVariable("x", 1);
+		second.setVariable("x", 2);
+		assertTrue(Double.compare(1, first.lookupVariable("x")) == 0);
+		assertTrue(Double.compare(2, second.lookupVariable("x")) == 0);
+
+		// variables, which are unknown to grammar, belong to a single frame
+		assertEquals(2, first.defineVariable("z"));
+		assertEquals(3, first.getVariablesCount());
+		assertEquals(2, second.getVariablesCount());
+		assertEquals(2, grammar.getVariablesCount());
+		assertEquals(-1, grammar.getVariableSlot("z"));
+
+		for (int i = 0; i < 100; i++) {
+			assertTrue(first.getRandomVariableSlot() < 2);
+		}
+	}
+
+	@Test
+	public void testSeedRepeatsRandomChoices() {
+		Grammar grammar = new Grammar(list(SymbolicRegressionFunctions.values()), list("x", "y"));
+		Context first = grammar.newContext();
+		Context second = grammar.newContext();
+		// round-robin selection of the first context is in the middle of its round
+		first.getRandomNonTerminalFunction();
+		first.setSeed(7);
+		second.setSeed(7);
+
+		for (int i = 0; i < 100; i++) {
+			assertEquals(first.getRandomNonTerminalFunction(), second.getRandomNonTerminalFunction());
+			assertEquals(first.getRandomTerminalFunction(), second.getRandomTerminalFunction());
+			assertTrue(Double.compare(first.getRandomValue(), second.getRandomValue()) == 0);
+		}
+	}
+
+	@Test
+	public void testExtraVariablesResolvedByEachFrame() {
+		Grammar grammar = new Grammar(list(SymbolicRegressionFunctions.values()), list("x"));
+		Context first = grammar.newContext();
+		Context second = grammar.newContext();
+		first.setVariable("a", 1);
+		first.setVariable("b", 2);
+		second.setVariable("b", 20);
+		second.setVariable("a", 10);
+
+		Expression varA = variableExpr("a");
+		Expression interpreted = subExpr(varA, variableExpr("b"));
+		Expression compiled = subExpr(variableExpr("a"), variableExpr("b"));
+		compiled.compile();
+
+		assertTrue(Double.compare(-1, interpreted.eval(first)) == 0);
+		assertTrue(Double.compare(-10, interpreted.eval(second)) == 0);
+		assertTrue(Double.compare(-1, compiled.eval(first)) == 0);
+		assertTrue(Double.compare(-10, compiled.eval(second)) == 0);
+		assertEquals(-1, varA.getVariableSlot());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownVariable() {
+		createContext(SymbolicRegressionFunctions.values()).getVariableSlot("z");
+	}
+}
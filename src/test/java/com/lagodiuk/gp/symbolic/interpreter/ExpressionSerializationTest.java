@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.addExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.constantExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.list;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.variableExpr;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class ExpressionSerializationTest {
+
+	private static final Grammar GRAMMAR = new Grammar(list(SymbolicRegressionFunctions.values()), list("x", "y"));
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException {
+		Context context = GRAMMAR.newContext();
+		List<Expression> trees = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			trees.add(SyntaxTreeUtils.createTree(5, context));
+		}
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ExpressionWriter writer = new ExpressionWriter(GRAMMAR, new DataOutputStream(bytes));
+		writer.writeHeader();
+		writer.writeAll(trees);
+
+		ExpressionReader reader = new ExpressionReader(GRAMMAR, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		reader.readHeader();
+		assertEquals(trees, reader.readAll());
+	}
+
+	@Test
+	public void testIrregularNode() throws IOException {
+		// mutation may leave more childs and coefficients than function needs
+		Expression tree = addExpr(variableExpr("y"), constantExpr(2));
+		tree.addChild(constantExpr(3));
+		tree.addCoefficient(4);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new ExpressionWriter(GRAMMAR, new DataOutputStream(bytes)).write(tree);
+		Expression decoded = new ExpressionReader(GRAMMAR, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))).read();
+
+		assertEquals(tree, decoded);
+		assertEquals(3, decoded.getChilds().size());
+		assertEquals(1, decoded.getChilds().get(0).getVariableSlot());
+	}
+
+	@Test
+	public void testCompactEncoding() throws IOException {
+		// (x + 2.0): tag, tag and slot, tag and double
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new ExpressionWriter(GRAMMAR, new DataOutputStream(bytes)).write(addExpr(variableExpr("x"), constantExpr(2)));
+		assertEquals(1 + 2 + 9, bytes.size());
+	}
+
+	@Test
+	public void testHeaderOfDifferentGrammar() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		new ExpressionWriter(GRAMMAR, new DataOutputStream(bytes)).writeHeader();
+
+		Grammar grammar = new Grammar(list(SymbolicRegressionFunctions.values()), list("x", "z"));
+		try {
+			new ExpressionReader(grammar, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))).readHeader();
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testParsePrintedTrees() {
+		Context context = GRAMMAR.newContext();
+		ExpressionParser parser = new ExpressionParser(GRAMMAR);
+
+		for (int i = 0; i < 200; i++) {
+			Expression tree = SyntaxTreeUtils.createTree(5, context);
+			Expression parsed = parser.parse(tree.print());
+			assertEquals(tree.print(), parsed.print());
+			assertEquals(tree, parsed);
+		}
+	}
+
+	@Test
+	public void testParseNegativeZero() {
+		ExpressionParser parser = new ExpressionParser(GRAMMAR);
+		Expression tree = addExpr(variableExpr("x"), constantExpr(-0.0));
+		assertEquals("(x + (-0.0))", tree.print());
+
+		Expression parsed = parser.parse(tree.print());
+		assertEquals(tree, parsed);
+		assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(parsed.getChilds().get(1).getCoefficient(0)));
+		assertEquals(tree, parser.parse("(x + -0.0)"));
+	}
+
+	@Test
+	public void testParseText() {
+		ExpressionParser parser = new ExpressionParser(GRAMMAR);
+		Expression tree = parser.parse(" ((x + (-2.5)) * max(sin(y), 1.0E-3))");
+		Context context = GRAMMAR.newContext();
+		context.setVariable("x", 3);
+		context.setVariable("y", 0.5);
+		assertTrue(Double.compare((3 - 2.5) * Math.max(Math.sin(0.5), 1.0E-3), tree.eval(context)) == 0);
+
+		try {
+			parser.parse("(x + )");
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
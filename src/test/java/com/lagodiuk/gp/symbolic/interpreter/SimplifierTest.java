@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright 2012 Yuriy Lagodiuk
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ******************************************************************************/
+package com.lagodiuk.gp.symbolic.interpreter;
+
+import com.lagodiuk.gp.symbolic.core.SymbolicRegressionFunctions;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.addExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.constantExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.cosExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.createContext;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.divExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.mulExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.powExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.sinExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.subExpr;
+import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.variableExpr;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class SimplifierTest {
+
+	@Test
+	public void testIdentities() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		Expression x = variableExpr("x");
+
+		assertSame(x, Simplifier.simplify(addExpr(x, constantExpr(0)), context));
+		assertSame(x, Simplifier.simplify(addExpr(constantExpr(0), x), context));
+		assertSame(x, Simplifier.simplify(subExpr(x, constantExpr(0)), context));
+		assertSame(x, Simplifier.simplify(mulExpr(constantExpr(1), x), context));
+		assertSame(x, Simplifier.simplify(divExpr(x, constantExpr(1)), context));
+		assertSame(x, Simplifier.simplify(powExpr(x, constantExpr(1)), context));
+
+		assertEquals("0.0", Simplifier.simplify(subExpr(x, variableExpr("x")), context).print());
+		assertEquals("0.0", Simplifier.simplify(mulExpr(x, constantExpr(0)), context).print());
+		assertEquals("1.0", Simplifier.simplify(divExpr(sinExpr(x), sinExpr(variableExpr("x"))), context).print());
+		assertEquals("1.0", Simplifier.simplify(powExpr(x, constantExpr(0)), context).print());
+
+		// identities are found after simplification of childs
+		Expression tree = mulExpr(subExpr(addExpr(x, constantExpr(2)), addExpr(constantExpr(2), x)), x);
+		assertEquals("0.0", Simplifier.simplify(tree, context).print());
+	}
+
+	@Test
+	public void testPythagoreanIdentity() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		Expression arg = addExpr(variableExpr("x"), constantExpr(3));
+
+		Expression sinSquare = mulExpr(sinExpr(arg), sinExpr(arg));
+		Expression cosSquare = powExpr(cosExpr(arg), constantExpr(2));
+		assertEquals("1.0", Simplifier.simplify(addExpr(sinSquare, cosSquare), context).print());
+		assertEquals("1.0", Simplifier.simplify(addExpr(cosSquare, sinSquare), context).print());
+
+		Expression another = powExpr(cosExpr(variableExpr("x")), constantExpr(2));
+		assertEquals("((sin((3.0 + x)) * sin((3.0 + x))) + (cos(x) ^ 2.0))",
+				Simplifier.simplify(addExpr(sinSquare, another), context).print());
+	}
+
+	@Test
+	public void testNestedConstantsAreCombined() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		Expression x = variableExpr("x");
+		Expression y = sinExpr(variableExpr("x"));
+
+		assertEquals("(5.0 + x)", Simplifier.simplify(addExpr(constantExpr(2), addExpr(x, constantExpr(3))), context).print());
+		assertEquals("(6.0 * (x * sin(x)))",
+				Simplifier.simplify(mulExpr(mulExpr(constantExpr(2), x), mulExpr(y, constantExpr(3))), context).print());
+		assertEquals("(4.0 + ((x + sin(x)) + x))",
+				Simplifier.simplify(addExpr(addExpr(addExpr(x, constantExpr(1)), addExpr(y, constantExpr(3))), x), context).print());
+		// constants, which cancel each other, are removed
+		assertSame(x, Simplifier.simplify(addExpr(addExpr(constantExpr(2), x), constantExpr(-2)), context));
+	}
+
+	@Test
+	public void testPersistentSimplification() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		Expression left = addExpr(constantExpr(5), variableExpr("x"));
+		Expression tree = subExpr(left, mulExpr(variableExpr("x"), subExpr(constantExpr(3), constantExpr(2))));
+		String printed = tree.print();
+
+		Expression simplified = Simplifier.simplify(tree, context);
+		assertEquals("((5.0 + x) - x)", simplified.print());
+		assertEquals(printed, tree.print());
+		// unchanged subtree is shared
+		assertSame(left, simplified.getChilds().get(0));
+		assertSame(left, Simplifier.simplify(left, context));
+	}
+
+	@Test
+	public void testRandomTreesKeepValues() {
+		// without division, signed zeros, which are lost by rules like x * 0, don't change values
+		Context context = createContext(SymbolicRegressionFunctions.ADD, SymbolicRegressionFunctions.SUB,
+				SymbolicRegressionFunctions.MUL, SymbolicRegressionFunctions.SIN, SymbolicRegressionFunctions.COS,
+				SymbolicRegressionFunctions.VARIABLE, SymbolicRegressionFunctions.CONSTANT);
+
+		for (int i = 0; i < 2000; i++) {
+			Expression tree = SyntaxTreeUtils.createTree(5, context);
+			Expression simplified = Simplifier.simplify(tree, context);
+			assertTrue(tree.print(), simplified.size() <= tree.size());
+			// limit of depth, which is enforced by genetic operators, holds after simplification
+			assertTrue(tree.print(), simplified.getDepth() <= tree.getDepth());
+
+			for (double x = -3; x <= 3; x += 0.75) {
+				context.setVariable("x", x);
+				double expected = tree.eval(context);
+				double actual = simplified.eval(context);
+				assertEquals(tree.print(), expected, actual, 1e-6 * (1 + Math.abs(expected)));
+			}
+		}
+	}
+}
@@ -23,8 +23,13 @@ import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.createContext;
 import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.list;
 import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.subExpr;
 import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.variableExpr;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -169,6 +174,145 @@ public class SyntaxTreeTest {
 		assertEquals(list(complexExpr, const3, sub, add, const2, varX, const1), complexExpr.getAllNodesAsList());
 	}
 
+	@Test
+	public void testNodesByIndex() {
+		Expression varX = variableExpr("x");
+		Expression const1 = constantExpr(1);
+		Expression const2 = constantExpr(2);
+		Expression const3 = constantExpr(3);
+		Expression add = addExpr(varX, const1);
+		Expression sub = subExpr(add, const2);
+		Expression complexExpr = subExpr(const3, sub);
+
+		assertEquals(7, complexExpr.size());
+		assertEquals(4, complexExpr.getLeavesCount());
+		assertEquals(3, complexExpr.getDepth());
+		assertEquals(0, varX.getDepth());
+
+		// pre-order
+		List<Expression> nodes = list(complexExpr, const3, sub, add, varX, const1, const2);
+		for (int i = 0; i < nodes.size(); i++) {
+			assertSame(nodes.get(i), complexExpr.getNode(i));
+		}
+		List<Expression> leaves = list(const3, varX, const1, const2);
+		for (int i = 0; i < leaves.size(); i++) {
+			assertSame(leaves.get(i), complexExpr.getLeaf(i));
+		}
+		List<Expression> internalNodes = list(complexExpr, sub, add);
+		for (int i = 0; i < internalNodes.size(); i++) {
+			assertSame(internalNodes.get(i), complexExpr.getInternalNode(i));
+		}
+
+		// sizes are recalculated after editing
+		add.setChilds(list(varX, addExpr(const1, constantExpr(4))));
+		complexExpr.invalidate();
+		assertEquals(9, complexExpr.size());
+		assertEquals(5, complexExpr.getLeavesCount());
+		assertEquals(4, complexExpr.getDepth());
+	}
+
+	@Test
+	public void testPrimitiveCoefficientsOfTree() {
+		Expression linear = new Expression(new LinearFunc()).setCoefficientsOfNode(9.0, 7.0).setChilds(list(variableExpr("x")));
+		Expression complexExpr = subExpr(constantExpr(3), subExpr(addExpr(linear, constantExpr(1)), constantExpr(2)));
+
+		assertEquals(5, complexExpr.getCoefficientsOfTreeCount());
+		double[] coefficients = complexExpr.getCoefficientsOfTreeArray();
+		assertTrue(Arrays.equals(new double[] { 3, 9, 7, 1, 2 }, coefficients));
+		assertEquals(complexExpr.getCoefficientsOfTree().size(), coefficients.length);
+
+		coefficients[0] = 30;
+		coefficients[2] = 70;
+		Expression changed = complexExpr.withCoefficientsOfTree(coefficients);
+		assertEquals("(30.0 - (((9.0*x + 70.0) + 1.0) - 2.0))", changed.print());
+		assertEquals("(3.0 - (((9.0*x + 7.0) + 1.0) - 2.0))", complexExpr.print());
+		// boxed and primitive coefficients of node are the same
+		assertEquals(list(9.0, 7.0), linear.getCoefficientsOfNode());
+		assertTrue(Double.compare(7.0, linear.getCoefficient(1)) == 0);
+
+		complexExpr.setCoefficientsOfTree(new double[] { 30, 90, 70, 10, 20 });
+		assertEquals("(30.0 - (((90.0*x + 70.0) + 10.0) - 20.0))", complexExpr.print());
+	}
+
+	@Test
+	public void testBoxedCoefficientsOfIrregularNode() {
+		// boxed getter of function returns all coefficients of node, including unused one
+		Function linearFunc = new LinearFunc() {
+			@Override
+			public List<Double> getCoefficients(Expression expression) {
+				return expression.getCoefficientsOfNode();
+			}
+		};
+		Expression linear = new Expression(linearFunc).setCoefficientsOfNode(9.0, 7.0, 5.0).setChilds(list(variableExpr("x")));
+		Expression complexExpr = subExpr(linear, constantExpr(2));
+
+		assertTrue(Arrays.equals(new double[] { 9, 7, 2 }, complexExpr.getCoefficientsOfTreeArray()));
+	}
+
+	@Test
+	public void testPersistentReplaceNode() {
+		Expression varX = variableExpr("x");
+		Expression const1 = constantExpr(1);
+		Expression const2 = constantExpr(2);
+		Expression const3 = constantExpr(3);
+		Expression add = addExpr(varX, const1);
+		Expression sub = subExpr(add, const2);
+		Expression complexExpr = subExpr(const3, sub);
+
+		Expression replaced = complexExpr.replaceNode(5, constantExpr(7));
+		assertEquals("(3.0 - ((x + 7.0) - 2.0))", replaced.print());
+		assertEquals("(3.0 - ((x + 1.0) - 2.0))", complexExpr.print());
+
+		// only path from root to replaced node is copied
+		assertTrue(replaced != complexExpr);
+		assertSame(const3, replaced.getChilds().get(0));
+		assertSame(const2, replaced.getChilds().get(1).getChilds().get(1));
+		assertSame(varX, replaced.getChilds().get(1).getChilds().get(0).getChilds().get(0));
+		assertTrue(add != replaced.getChilds().get(1).getChilds().get(0));
+
+		assertSame(const1, complexExpr.replaceNode(0, const1));
+	}
+
+	@Test
+	public void testPersistentCoefficientsOfTree() {
+		Expression left = addExpr(variableExpr("x"), constantExpr(1));
+		Expression right = constantExpr(2);
+		Expression expr = subExpr(left, right);
+
+		Expression changed = expr.withCoefficientsOfTree(list(1.0, 5.0));
+		assertEquals("((x + 1.0) - 5.0)", changed.print());
+		assertEquals("((x + 1.0) - 2.0)", expr.print());
+		assertSame(left, changed.getChilds().get(0));
+
+		assertSame(expr, expr.withCoefficientsOfTree(list(1.0, 2.0)));
+	}
+
+	@Test
+	public void testEachNodeHasIndex() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+
+		for (int i = 0; i < 100; i++) {
+			Expression tree = SyntaxTreeUtils.createTree(6, context);
+			List<Expression> allNodes = tree.getAllNodesAsList();
+			assertEquals(allNodes.size(), tree.size());
+
+			Set<Expression> indexed = Collections.newSetFromMap(new IdentityHashMap<Expression, Boolean>());
+			for (int j = 0; j < tree.size(); j++) {
+				indexed.add(tree.getNode(j));
+			}
+			assertEquals(tree.size(), indexed.size());
+			for (int j = 0; j < tree.getLeavesCount(); j++) {
+				assertTrue(tree.getLeaf(j).getChilds().isEmpty());
+			}
+			for (int j = 0; j < (tree.size() - tree.getLeavesCount()); j++) {
+				assertTrue(!tree.getInternalNode(j).getChilds().isEmpty());
+			}
+			for (Expression node : allNodes) {
+				assertTrue(indexed.contains(node));
+			}
+		}
+	}
+
 	/**
 	 * F(x) = k*x + b <br/>
 	 * Coefficients, which can be optimized, are [k, b]
@@ -228,4 +372,67 @@ public class SyntaxTreeTest {
 			return 2;
 		}
 	}
+
+	@Test
+	public void testStructuralHash() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+
+		for (int i = 0; i < 100; i++) {
+			Expression tree = SyntaxTreeUtils.createTree(4, context);
+			assertEquals(tree.structuralHash(), tree.clone().structuralHash());
+		}
+
+		Expression const5 = constantExpr(5);
+		Expression expr = addExpr(variableExpr("x"), const5);
+		long hash = expr.structuralHash();
+		assertEquals(hash, addExpr(variableExpr("x"), constantExpr(5)).structuralHash());
+		assertTrue(hash != addExpr(variableExpr("y"), constantExpr(5)).structuralHash());
+		assertTrue(hash != subExpr(variableExpr("x"), const5.clone()).structuralHash());
+		assertEquals(hash, addExpr(const5.clone(), variableExpr("x")).structuralHash());
+
+		const5.setCoefficientsOfNode(list(6.0));
+		expr.invalidate();
+		assertTrue(hash != expr.structuralHash());
+		assertEquals(addExpr(variableExpr("x"), constantExpr(6)).structuralHash(), expr.structuralHash());
+	}
+
+	@Test
+	public void testStructuralEquality() {
+		Expression expr = addExpr(variableExpr("x"), constantExpr(5));
+
+		// childs of commutative function can be swapped
+		Expression swapped = addExpr(constantExpr(5), variableExpr("x"));
+		assertEquals(expr, swapped);
+		assertEquals(expr.hashCode(), swapped.hashCode());
+
+		// childs of non-commutative function can not
+		Expression sub = subExpr(variableExpr("x"), constantExpr(5));
+		assertTrue(!sub.equals(subExpr(constantExpr(5), variableExpr("x"))));
+		assertEquals(sub, sub.clone());
+
+		assertTrue(!expr.equals(addExpr(variableExpr("x"), constantExpr(6))));
+		assertTrue(!expr.equals(addExpr(variableExpr("y"), constantExpr(5))));
+		assertTrue(!expr.equals(sub));
+
+		Expression nested = subExpr(addExpr(variableExpr("x"), variableExpr("y")), addExpr(variableExpr("x"), variableExpr("x")));
+		Expression nestedSwapped = subExpr(addExpr(variableExpr("y"), variableExpr("x")), addExpr(variableExpr("x"), variableExpr("x")));
+		assertEquals(nested, nestedSwapped);
+		assertEquals(nested.structuralHash(), nestedSwapped.structuralHash());
+	}
+
+	@Test
+	public void testUnusedCoefficientsAreIgnored() {
+		// mutation may leave coefficients, which function does not use
+		Expression expr = addExpr(variableExpr("x"), constantExpr(5));
+		Expression irregular = addExpr(variableExpr("x"), constantExpr(5));
+		irregular.addCoefficient(7);
+		irregular.getChilds().get(1).addCoefficient(8);
+		assertEquals(expr, irregular);
+		assertEquals(expr.structuralHash(), irregular.structuralHash());
+
+		assertSame(irregular, irregular.withCoefficientsOfTree(list(5.0)));
+		Expression changed = irregular.withCoefficientsOfTree(list(6.0));
+		assertSame(irregular.getChilds().get(0), changed.getChilds().get(0));
+		assertEquals(addExpr(variableExpr("x"), constantExpr(6)), changed);
+	}
 }
@@ -25,6 +25,7 @@ import static com.lagodiuk.gp.symbolic.interpreter.TestUtils.variableExpr;
 import java.util.HashSet;
 import java.util.Set;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 
@@ -97,6 +98,60 @@ public class SyntaxTreeUtilsTest {
 		assertTrue(calculateDepth(cutExpr) == 1);
 	}
 
+	@Test
+	public void inPlaceEditingDropsCachesTest() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+		context.setVariable("x", 2);
+
+		Expression cutExpr = addExpr(variableExpr("x"), subExpr(constantExpr(3), addExpr(constantExpr(1), constantExpr(2))));
+		cutExpr.compile();
+		assertEquals(3, cutExpr.getDepth());
+		SyntaxTreeUtils.cutTree(cutExpr, context, 1);
+		assertEquals(1, cutExpr.getDepth());
+		assertEquals(cutExpr.clone().eval(context), cutExpr.eval(context), 0.0);
+
+		Expression simplifiedExpr = addExpr(variableExpr("x"), subExpr(constantExpr(3), constantExpr(1)));
+		simplifiedExpr.compile();
+		simplifiedExpr.structuralHash();
+		SyntaxTreeUtils.simplifyTree(simplifiedExpr, context);
+		assertEquals(4, simplifiedExpr.eval(context), 0.0);
+		assertEquals(addExpr(variableExpr("x"), constantExpr(2)).structuralHash(), simplifiedExpr.structuralHash());
+	}
+
+	@Test
+	public void persistentSimplifyTest() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+
+		Expression varX = variableExpr("x");
+		Expression const5 = constantExpr(5);
+		Expression left = addExpr(const5, varX);
+		Expression complexExpr = addExpr(left, subExpr(constantExpr(3), addExpr(constantExpr(1), constantExpr(2))));
+		String printed = complexExpr.print();
+
+		Expression simplifiedExpr = SyntaxTreeUtils.simplify(complexExpr, context);
+		assertEquals("((5.0 + x) + 0.0)", simplifiedExpr.print());
+		assertEquals(printed, complexExpr.print());
+		// unchanged subtree is shared
+		assertSame(left, simplifiedExpr.getChilds().get(0));
+		assertSame(left, SyntaxTreeUtils.simplify(left, context));
+	}
+
+	@Test
+	public void persistentCutTest() {
+		Context context = createContext(SymbolicRegressionFunctions.values());
+
+		Expression varX = variableExpr("x");
+		Expression deep = subExpr(constantExpr(3), addExpr(constantExpr(1), subExpr(constantExpr(4), constantExpr(2))));
+		Expression complexExpr = addExpr(varX, deep);
+		String printed = complexExpr.print();
+
+		Expression cutExpr = SyntaxTreeUtils.cut(complexExpr, context, 3);
+		assertTrue(calculateDepth(cutExpr) == 3);
+		assertEquals(printed, complexExpr.print());
+		assertSame(varX, cutExpr.getChilds().get(0));
+		assertSame(deep.getChilds().get(0), cutExpr.getChilds().get(1).getChilds().get(0));
+	}
+
 	@Test
 	public void generateRandomTreeTest() {
 		Context context = createContext(SymbolicRegressionFunctions.values());
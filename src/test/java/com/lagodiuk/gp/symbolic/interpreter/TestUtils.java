@@ -49,6 +49,22 @@ public class TestUtils {
 		return new Expression(SymbolicRegressionFunctions.POW).setChilds(list(left, right));
 	}
 
+	public static Expression mulExpr(Expression left, Expression right) {
+		return new Expression(SymbolicRegressionFunctions.MUL).setChilds(list(left, right));
+	}
+
+	public static Expression divExpr(Expression left, Expression right) {
+		return new Expression(SymbolicRegressionFunctions.DIV).setChilds(list(left, right));
+	}
+
+	public static Expression sinExpr(Expression arg) {
+		return new Expression(SymbolicRegressionFunctions.SIN).setChilds(list(arg));
+	}
+
+	public static Expression cosExpr(Expression arg) {
+		return new Expression(SymbolicRegressionFunctions.COS).setChilds(list(arg));
+	}
+
 	public static <T> List<T> list(T... elements) {
 		List<T> list = new LinkedList<>();
 		list.addAll(Arrays.asList(elements));